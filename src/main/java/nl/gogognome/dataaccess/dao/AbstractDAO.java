@@ -38,9 +38,23 @@ public class AbstractDAO {
      *             if a problem occurs
      */
     protected PreparedStatementWrapper prepareStatement(String query, Object... parameters) throws SQLException {
+        WriteBehind.flushBeforeStatement(query);
         return PreparedStatementWrapper.preparedStatement(getConnection(), query, parameters);
     }
 
+    /**
+     * Creates a batch writer for the query. The batch writer executes the rows in batches of bounded size.
+     *
+     * @param query
+     *            the query
+     * @return the batch writer
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    protected BatchWriter prepareBatchWriter(String query) throws SQLException {
+        return new BatchWriter(prepareStatement(query));
+    }
+
     /**
      * Creates a record in the database using name value pairs.
      *
@@ -66,7 +80,7 @@ public class AbstractDAO {
         }
     }
 
-    private String buildInsertStatement(String tableName, NameValuePairs nameValuePairs) {
+    String buildInsertStatement(String tableName, NameValuePairs nameValuePairs) {
         StringBuilder sb = new StringBuilder(1000);
         sb.append("insert into ").append(tableName).append(" (");
         for (Iterator<NameValuePair> iter = nameValuePairs.iterator(); iter.hasNext();) {
@@ -101,10 +115,15 @@ public class AbstractDAO {
     }
 
     protected void runScript(Reader reader, boolean autoCommit) throws SQLException, IOException {
+        WriteBehind.flushCurrentTransaction();
         new ScriptRunner(getConnection(), autoCommit, true).runScript(reader);
     }
 
-    private Connection getConnection() throws SQLException {
+    Object[] getConnectionParameters() {
+        return connectionParameters;
+    }
+
+    Connection getConnection() throws SQLException {
         return ((JdbcTransaction) CurrentTransaction.get()).getConnection(connectionParameters);
     }
 
@@ -1,5 +1,9 @@
 package nl.gogognome.dataaccess.dao;
 
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.NewTransaction;
+import nl.gogognome.dataaccess.transaction.RunnableWithReturnValue;
+
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -293,6 +297,24 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
         }
     }
 
+    /**
+     * Deletes the domain objects matching the where clause in chunks of rows ordered by primary key. Each chunk
+     * is deleted and committed in a new transaction, independent of the current transaction. Use this method
+     * instead of {@link #deleteWhere(NameValuePairs)} to purge many rows without locking them all until the end.
+     * The table must have a primary key of one column.
+     *
+     * @param nameValuePairs
+     *            the name value pairs used to create a where clause. <code>null</code> indicates that all rows of the table must be deleted
+     * @param chunking
+     *            determines the size of the chunks, the pause between chunks and the progress listener
+     * @return the number of records deleted
+     * @throws SQLException
+     *             if a problem occurs. The chunks committed before the problem occurred remain deleted
+     */
+    public long deleteWhereInChunks(NameValuePairs nameValuePairs, Chunking chunking) throws SQLException {
+        return executeInChunks("delete from " + tableName, nameValuePairs, chunking);
+    }
+
     /**
      * Deletes a domain object from the database. If the domain object does not exist a NoRecordFoundException is thrown.
      *
@@ -317,6 +339,15 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
         StringBuilder sb = new StringBuilder(100);
         sb.append("delete from ").append(tableName).append(" where ");
         appendColumns(sb, getCachedPkColumns(), nameValuePairs);
+
+        WriteBehind writeBehind = WriteBehind.getForCurrentTransaction();
+        if (writeBehind != null) {
+            List<NameValuePair> parameters = new ArrayList<>();
+            addColumnValues(parameters, getCachedPkColumns(), nameValuePairs);
+            writeBehind.queue(getConnectionParameters(), tableName, sb.toString(), parameters, true, nameValuePairs.toString());
+            return;
+        }
+
         try (PreparedStatementWrapper statement = prepareStatement(sb.toString())) {
             setColumnValues(statement, 1, getCachedPkColumns(), nameValuePairs);
             int nrOfRowsDeleted = statement.executeUpdate();
@@ -336,7 +367,24 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
      */
     public D create(D object) throws SQLException {
         NameValuePairs nvp = createAndReturnNameValuePairs(object);
-        return getObjectFromResultSet(convertNameValuePairsToResultSet(nvp));
+        return applyGeneratedValues(object, nvp);
+    }
+
+    /**
+     * Gets the domain object that is returned by {@link #create(Object)}. The default implementation
+     * converts the name value pairs used to create the object back to a domain object. Override this method
+     * to skip that conversion, for example by returning the original object with the generated primary key applied.
+     *
+     * @param object
+     *            the domain object that was passed to {@link #create(Object)}
+     * @param nameValuePairs
+     *            the name value pairs used to create the domain object, including generated values
+     * @return the created domain object
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    protected D applyGeneratedValues(D object, NameValuePairs nameValuePairs) throws SQLException {
+        return getObjectFromResultSet(convertNameValuePairsToResultSet(nameValuePairs));
     }
 
     /**
@@ -351,7 +399,19 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
     protected NameValuePairs createAndReturnNameValuePairs(D object) throws SQLException {
         NameValuePairs nameValuePairs = getNameValuePairs(object);
         addAutoGeneratedValues(nameValuePairs, object);
-        insert(tableName, nameValuePairs);
+
+        WriteBehind writeBehind = WriteBehind.getForCurrentTransaction();
+        if (writeBehind != null) {
+            List<NameValuePair> parameters = new ArrayList<>(nameValuePairs.size());
+            for (NameValuePair nvp : nameValuePairs) {
+                if (!nvp.getType().equals(Literal.class)) {
+                    parameters.add(nvp);
+                }
+            }
+            writeBehind.queue(getConnectionParameters(), tableName, buildInsertStatement(tableName, nameValuePairs), parameters, false, null);
+        } else {
+            insert(tableName, nameValuePairs);
+        }
         return nameValuePairs;
     }
 
@@ -404,6 +464,13 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
         NameValuePairs nameValuePairs = getNameValuePairs(object);
         NameValuePairs whereClause = nameValuePairs.getSubset(getCachedPkColumns());
 
+        WriteBehind writeBehind = WriteBehind.getForCurrentTransaction();
+        if (writeBehind != null) {
+            writeBehind.queue(getConnectionParameters(), tableName, buildUpdateStatement(nameValuePairs, whereClause),
+                    getUpdateParameters(nameValuePairs, whereClause), true, nameValuePairs.toString());
+            return;
+        }
+
         int nrRowsUpdated = updateWhere(nameValuePairs, whereClause);
 
         if (nrRowsUpdated != 1) {
@@ -422,6 +489,203 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
      * @throws SQLException
      */
     protected int updateWhere(NameValuePairs nameValuePairs, NameValuePairs whereClause) throws SQLException {
+        try (PreparedStatementWrapper statement = prepareStatement(buildUpdateStatement(nameValuePairs, whereClause))) {
+            int index = 1;
+            for (NameValuePair nvp : getUpdateParameters(nameValuePairs, whereClause)) {
+                DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
+                index++;
+            }
+
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Updates records selected by the where clause with a set clause that is evaluated by the database, for example
+     * <code>"counter = counter + ?"</code>. This avoids reading the records before updating them.
+     *
+     * @param setClause
+     *            the set clause without the keyword set
+     * @param whereClause
+     *            where clause specified by name value pairs. <code>null</code> indicates that all rows of the table must be updated
+     * @param parameters
+     *            the values of the question marks in the set clause
+     * @return the number of records that have been updated
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public int updateWhere(String setClause, NameValuePairs whereClause, Object... parameters) throws SQLException {
+        StringBuilder sb = new StringBuilder(200);
+        sb.append("update ").append(tableName).append(" set ").append(setClause);
+        if (whereClause != null && !whereClause.isEmpty()) {
+            DAOUtil.appendWhereClause(sb, whereClause);
+        }
+        try (PreparedStatementWrapper statement = prepareStatement(sb.toString())) {
+            int index = setParameters(statement, 1, parameters);
+            if (whereClause != null) {
+                DAOUtil.setWhereClauseValues(statement, whereClause, index);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Does the same as {@link #updateWhere(String, NameValuePairs, Object...)}, but updates the records in chunks of rows
+     * ordered by primary key. Each chunk is updated and committed in a new transaction, independent of the current
+     * transaction. The set clause must not change the primary key. The table must have a primary key of one column.
+     *
+     * @param setClause
+     *            the set clause without the keyword set
+     * @param whereClause
+     *            where clause specified by name value pairs. <code>null</code> indicates that all rows of the table must be updated
+     * @param chunking
+     *            determines the size of the chunks, the pause between chunks and the progress listener
+     * @param parameters
+     *            the values of the question marks in the set clause
+     * @return the number of records that have been updated
+     * @throws SQLException
+     *             if a problem occurs. The chunks committed before the problem occurred remain updated
+     */
+    public long updateWhereInChunks(String setClause, NameValuePairs whereClause, Chunking chunking, Object... parameters) throws SQLException {
+        return executeInChunks("update " + tableName + " set " + setClause, whereClause, chunking, parameters);
+    }
+
+    /**
+     * Executes a delete or update statement for chunks of rows that match the where clause. The primary keys of
+     * a chunk are selected starting after the last primary key of the previous chunk, so rows that have been
+     * processed are not scanned again.
+     */
+    private long executeInChunks(String statementPrefix, NameValuePairs whereClause, Chunking chunking, Object... parameters) throws SQLException {
+        if (getCachedPkColumns().size() != 1) {
+            throw new SQLException("Chunks require a primary key of one column but table " + tableName + " has " + getCachedPkColumns().size());
+        }
+        String pkColumn = getCachedPkColumns().get(0);
+        StringBuilder sb = new StringBuilder(200);
+        if (whereClause != null && !whereClause.isEmpty()) {
+            DAOUtil.appendWhereClause(sb, whereClause);
+            sb.append(" and ");
+        } else {
+            sb.append(" where ");
+        }
+        String conditions = sb.toString();
+
+        long totalNrRows = 0;
+        Object lastId = null;
+        while (true) {
+            Object previousLastId = lastId;
+            Chunk chunk = executeInNewTransaction(() -> executeChunk(statementPrefix, conditions, pkColumn, whereClause, chunking.getChunkSize(), previousLastId, parameters));
+            if (chunk.nrIds == 0) {
+                break;
+            }
+            totalNrRows += chunk.nrRows;
+            lastId = chunk.lastId;
+            if (chunking.getProgressListener() != null) {
+                chunking.getProgressListener().chunkCompleted(chunk.nrRows, totalNrRows);
+            }
+            if (chunk.nrIds < chunking.getChunkSize()) {
+                break;
+            }
+            pause(chunking.getPauseBetweenChunksMillis());
+        }
+        return totalNrRows;
+    }
+
+    private Chunk executeChunk(String statementPrefix, String conditions, String pkColumn, NameValuePairs whereClause,
+                               int chunkSize, Object lastId, Object[] parameters) throws SQLException {
+        List<Object> ids = new ArrayList<>(chunkSize);
+        String selectQuery = "select " + pkColumn + " from " + tableName + conditions
+                + (lastId != null ? pkColumn + ">?" : "1=1") + " order by " + pkColumn;
+        try (PreparedStatementWrapper statement = prepareStatement(selectQuery)) {
+            statement.setMaxRows(chunkSize);
+            int index = setWhereClauseValues(statement, whereClause, 1);
+            if (lastId != null) {
+                statement.setObject(index, lastId);
+            }
+            ResultSetWrapper result = statement.executeQuery();
+            while (result.next() && ids.size() < chunkSize) {
+                ids.add(result.getObject(1));
+            }
+        }
+        if (ids.isEmpty()) {
+            return new Chunk(null, 0, 0);
+        }
+
+        StringBuilder sb = new StringBuilder(200 + 2 * ids.size());
+        sb.append(statementPrefix).append(conditions).append(pkColumn).append(" in (");
+        for (int i = 0; i < ids.size(); i++) {
+            sb.append(i == 0 ? "?" : ",?");
+        }
+        sb.append(')');
+        try (PreparedStatementWrapper statement = prepareStatement(sb.toString())) {
+            int index = setParameters(statement, 1, parameters);
+            index = setWhereClauseValues(statement, whereClause, index);
+            setParameters(statement, index, ids.toArray());
+            return new Chunk(ids.get(ids.size() - 1), ids.size(), statement.executeUpdate());
+        }
+    }
+
+    private static Chunk executeInNewTransaction(RunnableWithReturnValue<Chunk> runnable) throws SQLException {
+        try {
+            return NewTransaction.returns(runnable);
+        } catch (DataAccessException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void pause(long millis) throws SQLException {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while pausing between chunks", e);
+            }
+        }
+    }
+
+    /**
+     * Sets parameters with {@link DAOUtil#setStatementValue(PreparedStatementWrapper, int, Object)}.
+     */
+    private static int setParameters(PreparedStatementWrapper statement, int index, Object[] parameters) throws SQLException {
+        for (Object parameter : parameters) {
+            DAOUtil.setStatementValue(statement, index, parameter);
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Does the same as {@link DAOUtil#setWhereClauseValues(PreparedStatementWrapper, NameValuePairs, int)}, but
+     * accepts <code>null</code> and returns the index of the next parameter.
+     */
+    private static int setWhereClauseValues(PreparedStatementWrapper statement, NameValuePairs whereClause, int index) throws SQLException {
+        if (whereClause != null) {
+            DAOUtil.setWhereClauseValues(statement, whereClause, index);
+            for (NameValuePair nvp : whereClause) {
+                if (nvp.getValue() != null && !(nvp.getValue() instanceof Iterable) && !nvp.getType().equals(Literal.class)) {
+                    index++;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static class Chunk {
+        private final Object lastId;
+        private final int nrIds;
+        private final int nrRows;
+
+        Chunk(Object lastId, int nrIds, int nrRows) {
+            this.lastId = lastId;
+            this.nrIds = nrIds;
+            this.nrRows = nrRows;
+        }
+    }
+
+    private String buildUpdateStatement(NameValuePairs nameValuePairs, NameValuePairs whereClause) {
         StringBuilder sb = new StringBuilder(1000);
         sb.append("update ").append(tableName).append(" set ");
 
@@ -434,20 +698,22 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
 
         sb.append(" where ");
         appendColumns(sb, whereClause.getNames(), whereClause);
-        try (PreparedStatementWrapper statement = prepareStatement(sb.toString())) {
-            int index = 1;
-            for (NameValuePair nvp : nameValuePairs) {
-                if (!getCachedPkColumns().contains(nvp.getName())) {
-                    DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
-                    index++;
-                }
-            }
-
-            setColumnValues(statement, index, whereClause.getNames(), whereClause);
+        return sb.toString();
+    }
 
-            return statement.executeUpdate();
+    /**
+     * Gets the parameters of the update statement built by {@link #buildUpdateStatement(NameValuePairs, NameValuePairs)}
+     * in the order of the question marks of the statement.
+     */
+    private List<NameValuePair> getUpdateParameters(NameValuePairs nameValuePairs, NameValuePairs whereClause) {
+        List<NameValuePair> parameters = new ArrayList<>(nameValuePairs.size() + whereClause.size());
+        for (NameValuePair nvp : nameValuePairs) {
+            if (!getCachedPkColumns().contains(nvp.getName())) {
+                parameters.add(nvp);
+            }
         }
-
+        addColumnValues(parameters, whereClause.getNames(), whereClause);
+        return parameters;
     }
 
     /**
@@ -590,11 +856,17 @@ public abstract class AbstractDomainClassDAO<D> extends AbstractDAO {
      *             if a problem occurs
      */
     private void setColumnValues(PreparedStatementWrapper statement, int index, Iterable<String> columnNames, NameValuePairs nameValuePairs) throws SQLException {
+        nameValuePairs.setStatementValues(statement, index, columnNames);
+    }
+
+    /**
+     * Adds the name value pairs with non-null values for the specified columns to a list of parameters.
+     */
+    private void addColumnValues(List<NameValuePair> parameters, Iterable<String> columnNames, NameValuePairs nameValuePairs) {
         for (String columnName : columnNames) {
             NameValuePair nvp = nameValuePairs.getNameValuePair(columnName);
             if (nvp.getValue() != null) {
-                DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
-                index++;
+                parameters.add(nvp);
             }
         }
     }
@@ -0,0 +1,433 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Base class for Data Access Objects (DAOs) of append-heavy tables, like event or audit tables, whose rows are stored
+ * in a table per period of time. A row is inserted in the partition table of the period that contains the value
+ * of the timestamp column. Queries for a range of time only read the partition tables that overlap the range.
+ *
+ * <p>Partition tables are created in advance with {@link #createPartitions(LocalDateTime, int)}, for example by
+ * a {@link nl.gogognome.dataaccess.migrations.CreatePartitionsMigration} and by a scheduled job. Old rows are removed
+ * by dropping their partition tables with {@link #dropPartitionsBefore(LocalDateTime)}, which is much cheaper than
+ * deleting the rows.
+ *
+ * <p>Range queries use the partition tables that were found the last time the database metadata was read, so that
+ * they do not need a metadata round trip. The cache is refreshed when partition tables are created or dropped by this
+ * DAO, when a query fails (for example because another process dropped a partition table) and when it is older
+ * than the cache time (see {@link #setPartitionCacheTime(long)}).
+ *
+ * @param <D> the type of the domain class
+ */
+public abstract class AbstractTimePartitionedDAO<D> extends AbstractDAO {
+
+    protected final String tableName;
+    protected final String timestampColumn;
+    protected final PartitionPeriod period;
+
+    private String allColumnNames = "*";
+    private long partitionCacheMillis = 60 * 1000;
+    private volatile CachedPartitions cachedPartitions;
+
+    /**
+     * Constructor.
+     * @param tableName the name of the partitioned table. It is the prefix of the names of the partition tables
+     * @param timestampColumn the column that determines the partition table of a row
+     * @param period the period of time of which the rows are stored in one partition table
+     * @param connectionParameters the parameters passed to the JdbcTransaction
+     */
+    protected AbstractTimePartitionedDAO(String tableName, String timestampColumn, PartitionPeriod period, Object... connectionParameters) {
+        super(connectionParameters);
+        this.tableName = tableName;
+        this.timestampColumn = timestampColumn;
+        this.period = period;
+    }
+
+    public void setAllColumnNames(String allColumnNames) {
+        this.allColumnNames = allColumnNames;
+    }
+
+    /**
+     * Sets the time that range queries use the cached partition tables. Partition tables created by other DAO
+     * instances or processes become visible to range queries of this DAO within this time. Default 1 minute.
+     * @param partitionCacheMillis the cache time in milliseconds. Use 0 to read the metadata for each query.
+     */
+    public void setPartitionCacheTime(long partitionCacheMillis) {
+        this.partitionCacheMillis = partitionCacheMillis;
+        this.cachedPartitions = null;
+    }
+
+    /**
+     * Creates a domain object in the partition table of the period that contains its timestamp.
+     *
+     * @param object
+     *            the domain object to be created in the database
+     * @return a new instance of the domain object with the values as stored in the database
+     * @throws SQLException
+     *             if a problem occurs, for example if the partition table does not exist
+     */
+    public D create(D object) throws SQLException {
+        NameValuePairs nameValuePairs = getNameValuePairs(object);
+        insert(getPartitionTableName(getTimestamp(nameValuePairs)), nameValuePairs);
+        return getObjectFromResultSet(new ResultSetWrapper(new NameValuePairsResultSet(nameValuePairs)));
+    }
+
+    /**
+     * Gets the domain objects whose timestamp lies in the range from (inclusive) to (exclusive).
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @return the domain objects
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public List<D> findBetween(LocalDateTime from, LocalDateTime to) throws SQLException {
+        return findBetween(from, to, null);
+    }
+
+    /**
+     * Gets the domain objects whose timestamp lies in the range from (inclusive) to (exclusive).
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param sortClause if not null, then this will be the column name used to sort the domain objects
+     * @return the domain objects
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public List<D> findBetween(LocalDateTime from, LocalDateTime to, String sortClause) throws SQLException {
+        return queryPartitions(partitions -> {
+            List<LocalDateTime> parameters = new ArrayList<>();
+            String query = buildUnionQuery("select " + allColumnNames + " from ", partitions, from, to, parameters);
+            List<D> list = new ArrayList<>(100);
+            if (query == null) {
+                return list;
+            }
+            if (sortClause != null) {
+                query += " order by " + sortClause;
+            }
+            try (PreparedStatementWrapper statement = prepareStatement(query)) {
+                setTimestampParameters(statement, parameters);
+                ResultSetWrapper result = statement.executeQuery();
+                while (result.next()) {
+                    list.add(getObjectFromResultSet(result));
+                }
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Gets the number of rows whose timestamp lies in the range from (inclusive) to (exclusive).
+     *
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @return the number of rows
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public long count(LocalDateTime from, LocalDateTime to) throws SQLException {
+        return queryPartitions(partitions -> {
+            List<LocalDateTime> parameters = new ArrayList<>();
+            String query = buildUnionQuery("select count(*) from ", partitions, from, to, parameters);
+            if (query == null) {
+                return 0L;
+            }
+            long count = 0;
+            try (PreparedStatementWrapper statement = prepareStatement(query)) {
+                setTimestampParameters(statement, parameters);
+                ResultSetWrapper result = statement.executeQuery();
+                while (result.next()) {
+                    count += result.getLong(1);
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Executes a query with the cached partition tables. If the query fails, the partition tables are read from
+     * the database metadata and the query is executed once more, because a partition table may have been dropped
+     * by another DAO instance or process.
+     */
+    private <T> T queryPartitions(PartitionQuery<T> query) throws SQLException {
+        CachedPartitions cached = cachedPartitions;
+        if (cached == null || System.nanoTime() - cached.loadedNanos > MILLISECONDS.toNanos(partitionCacheMillis)) {
+            return query.execute(getPartitions());
+        }
+        try {
+            return query.execute(cached.partitions);
+        } catch (SQLException e) {
+            cachedPartitions = null;
+            try {
+                return query.execute(getPartitions());
+            } catch (SQLException retryException) {
+                e.addSuppressed(retryException);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Builds a query that combines the partition tables that overlap the range with union all. The timestamp
+     * condition is left out for partition tables that lie completely inside the range.
+     * @return the query or null if no partition table overlaps the range
+     */
+    private String buildUnionQuery(String select, NavigableMap<LocalDateTime, String> partitions, LocalDateTime from, LocalDateTime to,
+                                   List<LocalDateTime> parameters) {
+        StringBuilder sb = new StringBuilder(200);
+        for (Map.Entry<LocalDateTime, String> partition : getPartitions(partitions, from, to).entrySet()) {
+            LocalDateTime start = partition.getKey();
+            LocalDateTime end = period.getNextStart(start);
+            if (sb.length() > 0) {
+                sb.append(" union all ");
+            }
+            sb.append(select).append(partition.getValue());
+            String keyword = " where ";
+            if (from.isAfter(start)) {
+                sb.append(keyword).append(timestampColumn).append(">=?");
+                parameters.add(from);
+                keyword = " and ";
+            }
+            if (to.isBefore(end)) {
+                sb.append(keyword).append(timestampColumn).append("<?");
+                parameters.add(to);
+            }
+        }
+        return sb.length() > 0 ? sb.toString() : null;
+    }
+
+    private void setTimestampParameters(PreparedStatementWrapper statement, List<LocalDateTime> parameters) throws SQLException {
+        int index = 1;
+        for (LocalDateTime parameter : parameters) {
+            DAOUtil.setStatementValue(statement, index, LocalDateTime.class, parameter);
+            index++;
+        }
+    }
+
+    /**
+     * Creates the partition tables for a number of consecutive periods, starting with the period that contains
+     * the specified timestamp. Partition tables that already exist are skipped.
+     *
+     * @param from a timestamp in the first period
+     * @param nrPeriods the number of periods
+     * @return the names of the partition tables that have been created
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public List<String> createPartitions(LocalDateTime from, int nrPeriods) throws SQLException {
+        NavigableMap<LocalDateTime, String> existingPartitions = getPartitions();
+        List<String> createdPartitions = new ArrayList<>();
+        LocalDateTime start = period.getStart(from);
+        try {
+            for (int i = 0; i < nrPeriods; i++) {
+                if (!existingPartitions.containsKey(start)) {
+                    String partitionTableName = getPartitionTableName(start);
+                    for (String statement : getCreatePartitionStatements(partitionTableName)) {
+                        execute(statement).ignoreResult();
+                    }
+                    createdPartitions.add(partitionTableName);
+                }
+                start = period.getNextStart(start);
+            }
+        } finally {
+            cachedPartitions = null;
+        }
+        return createdPartitions;
+    }
+
+    /**
+     * Drops the partition tables whose periods end at or before the specified timestamp. All rows of these
+     * tables have a timestamp before the specified timestamp.
+     *
+     * @param timestamp the timestamp
+     * @return the names of the partition tables that have been dropped
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public List<String> dropPartitionsBefore(LocalDateTime timestamp) throws SQLException {
+        List<String> droppedPartitions = new ArrayList<>();
+        try {
+            for (Map.Entry<LocalDateTime, String> partition : getPartitions().entrySet()) {
+                if (period.getNextStart(partition.getKey()).isAfter(timestamp)) {
+                    break;
+                }
+                execute("drop table " + partition.getValue()).ignoreResult();
+                droppedPartitions.add(partition.getValue());
+            }
+        } finally {
+            cachedPartitions = null;
+        }
+        return droppedPartitions;
+    }
+
+    /**
+     * Gets the partition tables that exist in the current catalog and schema of the connection. The result
+     * replaces the partition tables cached for range queries.
+     *
+     * @return the names of the partition tables by the start of their periods
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    public NavigableMap<LocalDateTime, String> getPartitions() throws SQLException {
+        Connection connection = getConnection();
+        DatabaseMetaData metaData = connection.getMetaData();
+        String tableNameInMetaData = tableName;
+        if (metaData.storesUpperCaseIdentifiers()) {
+            tableNameInMetaData = tableNameInMetaData.toUpperCase();
+        } else if (metaData.storesLowerCaseIdentifiers()) {
+            tableNameInMetaData = tableNameInMetaData.toLowerCase();
+        }
+        String escape = metaData.getSearchStringEscape();
+        String pattern = escapeSearchString(tableNameInMetaData + '_', escape) + '%';
+
+        NavigableMap<LocalDateTime, String> partitions = new TreeMap<>();
+        try (ResultSet tables = metaData.getTables(connection.getCatalog(), getSchema(connection), pattern, new String[] { "TABLE" })) {
+            while (tables.next()) {
+                String name = tables.getString("TABLE_NAME");
+                LocalDateTime start = period.parsePartitionTableName(tableName, name);
+                if (start != null) {
+                    partitions.put(start, name);
+                }
+            }
+        }
+        cachedPartitions = new CachedPartitions(Collections.unmodifiableNavigableMap(new TreeMap<>(partitions)));
+        return partitions;
+    }
+
+    /**
+     * Escapes the wildcards of a search string for {@link DatabaseMetaData}. The escape string itself
+     * is escaped too.
+     */
+    static String escapeSearchString(String value, String escape) {
+        if (escape == null || escape.isEmpty()) {
+            return value;
+        }
+        return value.replace(escape, escape + escape)
+                .replace("_", escape + '_')
+                .replace("%", escape + '%');
+    }
+
+    private static String getSchema(Connection connection) throws SQLException {
+        try {
+            return connection.getSchema();
+        } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets the partition tables that overlap the range from (inclusive) to (exclusive).
+     */
+    private NavigableMap<LocalDateTime, String> getPartitions(NavigableMap<LocalDateTime, String> partitions,
+                                                             LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            return new TreeMap<>();
+        }
+        return partitions.subMap(period.getStart(from), true, to, false);
+    }
+
+    /**
+     * @param timestamp a timestamp
+     * @return the name of the partition table that stores the rows of the timestamp
+     */
+    public String getPartitionTableName(LocalDateTime timestamp) {
+        return period.getPartitionTableName(tableName, timestamp);
+    }
+
+    private LocalDateTime getTimestamp(NameValuePairs nameValuePairs) throws SQLException {
+        Object value = nameValuePairs.getValue(timestampColumn);
+        if (value instanceof LocalDateTime) {
+            return (LocalDateTime) value;
+        }
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        if (value instanceof Date) {
+            // java.sql.Date and java.sql.Time do not support toInstant()
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(((Date) value).getTime()), StatementSettings.zoneId);
+        }
+        if (value instanceof Instant) {
+            return LocalDateTime.ofInstant((Instant) value, StatementSettings.zoneId);
+        }
+        if (value instanceof OffsetDateTime) {
+            return ((OffsetDateTime) value).atZoneSameInstant(StatementSettings.zoneId).toLocalDateTime();
+        }
+        if (value instanceof ZonedDateTime) {
+            return ((ZonedDateTime) value).withZoneSameInstant(StatementSettings.zoneId).toLocalDateTime();
+        }
+        if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay();
+        }
+        if (value == null) {
+            throw new SQLException("No value found for the timestamp column " + timestampColumn + " of table " + tableName);
+        }
+        throw new SQLException("Unsupported type " + value.getClass() + " for the timestamp column " + timestampColumn + " of table " + tableName);
+    }
+
+    /**
+     * Gets the statements that create a partition table, for example a create table statement followed by
+     * create index statements.
+     *
+     * @param partitionTableName
+     *            the name of the partition table
+     * @return the statements
+     */
+    protected abstract List<String> getCreatePartitionStatements(String partitionTableName);
+
+    /**
+     * Gets a domain object from a result set. Do not call <code>result.next()</code>.
+     *
+     * @param result
+     *            the result set
+     * @return the domain object
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    protected abstract D getObjectFromResultSet(ResultSetWrapper result) throws SQLException;
+
+    /**
+     * Gets name value pairs that represent the domain object. The names correspond to columns in the database table.
+     * The name value pairs must contain a value for the timestamp column.
+     *
+     * @param domainObject
+     *            the domain object
+     * @return the collection of name value pairs
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    protected abstract NameValuePairs getNameValuePairs(D domainObject) throws SQLException;
+
+    private interface PartitionQuery<T> {
+        T execute(NavigableMap<LocalDateTime, String> partitions) throws SQLException;
+    }
+
+    private static class CachedPartitions {
+
+        private final NavigableMap<LocalDateTime, String> partitions;
+        private final long loadedNanos = System.nanoTime();
+
+        private CachedPartitions(NavigableMap<LocalDateTime, String> partitions) {
+            this.partitions = partitions;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by {@link BatchWriter} when a row of a batch failed. The exception specifies the index of the offending row
+ * in the sequence of all rows added to the batch writer.
+ */
+public class BatchFailedException extends SQLException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long rowIndex;
+
+    public BatchFailedException(String reason, long rowIndex, SQLException cause) {
+        super(reason, cause.getSQLState(), cause.getErrorCode(), cause);
+        this.rowIndex = rowIndex;
+    }
+
+    /**
+     * @return the index (starting at 0) of the row that failed, or -1 if the driver did not report which row failed
+     */
+    public long getRowIndex() {
+        return rowIndex;
+    }
+}
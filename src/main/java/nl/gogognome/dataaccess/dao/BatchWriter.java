@@ -0,0 +1,223 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Writes rows in batches using a {@link PreparedStatementWrapper}. Rows are collected in a batch that is executed
+ * automatically as soon as the maximum number of rows or the maximum estimated number of bytes is reached.
+ * This way the memory used by the driver for the batch stays bounded, no matter how many rows are written.
+ *
+ * <p>Typical usage:
+ * <pre>
+ * try (BatchWriter writer = prepareBatchWriter("insert into author (id, name) values (?, ?)").withMaxRows(500)) {
+ *     for (Author author : authors) {
+ *         writer.addRow(author.getId(), author.getName());
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>Closing the writer executes the remaining rows and closes the statement.
+ */
+public class BatchWriter implements AutoCloseable {
+
+    private final PreparedStatementWrapper statement;
+
+    private int maxRows = 1000;
+    private long maxBytes;
+
+    private long nrRowsAdded;
+    private int nrRowsInBatch;
+    private long nrBytesInBatch;
+    private long nrUpdatedRows;
+
+    /**
+     * Constructor.
+     * @param statement the statement used to write the rows. It is closed when the batch writer is closed.
+     */
+    public BatchWriter(PreparedStatementWrapper statement) {
+        this.statement = statement;
+    }
+
+    /**
+     * Sets the maximum number of rows per batch.
+     * @param maxRows the maximum number of rows
+     * @return this batch writer
+     */
+    public BatchWriter withMaxRows(int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("maxRows must be at least 1");
+        }
+        this.maxRows = maxRows;
+        return this;
+    }
+
+    /**
+     * Sets the maximum estimated number of bytes of the parameters per batch.
+     * @param maxBytes the maximum number of bytes. 0 indicates that the number of bytes is not limited.
+     * @return this batch writer
+     */
+    public BatchWriter withMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Adds a row to the batch. The batch is executed if it is full. Values are bound with the {@link TypeBinder}
+     * registered for their class, like the values of {@link #addRow(NameValuePairs)}.
+     * @param values the values of the parameters of the statement
+     * @throws SQLException if a problem occurs
+     */
+    public void addRow(Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            DAOUtil.setStatementValue(statement, i + 1, values[i]);
+            if (maxBytes > 0) {
+                nrBytesInBatch += estimateSize(values[i]);
+            }
+        }
+        addBatch();
+    }
+
+    /**
+     * Adds a row to the batch. The batch is executed if it is full.
+     * @param nameValuePairs the values of the parameters of the statement in the order of the parameters.
+     *                       Literals are skipped.
+     * @throws SQLException if a problem occurs
+     */
+    public void addRow(NameValuePairs nameValuePairs) throws SQLException {
+        int index = 1;
+        for (NameValuePair nvp : nameValuePairs) {
+            if (!nvp.getType().equals(Literal.class)) {
+                DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
+                index++;
+                if (maxBytes > 0) {
+                    nrBytesInBatch += estimateSize(nvp.getValue());
+                }
+            }
+        }
+        addBatch();
+    }
+
+    private void addBatch() throws SQLException {
+        statement.addBatch();
+        nrRowsAdded++;
+        nrRowsInBatch++;
+        if (nrRowsInBatch >= maxRows || (maxBytes > 0 && nrBytesInBatch >= maxBytes)) {
+            flush();
+        }
+    }
+
+    private static long estimateSize(Object value) {
+        if (value instanceof String) {
+            return 2L * ((String) value).length();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8;
+    }
+
+    /**
+     * Executes the rows that have been added since the previous execution.
+     * @return the number of rows updated by this execution
+     * @throws BatchFailedException if one of the rows failed
+     * @throws SQLException if another problem occurs
+     */
+    public long flush() throws SQLException {
+        if (nrRowsInBatch == 0) {
+            return 0;
+        }
+
+        long firstRowIndexOfBatch = nrRowsAdded - nrRowsInBatch;
+        nrRowsInBatch = 0;
+        nrBytesInBatch = 0;
+        try {
+            long nrUpdatedRowsInBatch = sumOfUpdateCounts(statement.executeLargeBatch());
+            nrUpdatedRows += nrUpdatedRowsInBatch;
+            return nrUpdatedRowsInBatch;
+        } catch (SQLException e) {
+            BatchUpdateException batchUpdateException = findBatchUpdateException(e);
+            long rowIndex = -1;
+            if (batchUpdateException != null) {
+                rowIndex = firstRowIndexOfBatch + getIndexOfFailedRow(batchUpdateException);
+            }
+            throw new BatchFailedException("Row " + rowIndex + " of the batch failed: " + e.getMessage(), rowIndex, e);
+        }
+    }
+
+    private static long sumOfUpdateCounts(long[] updateCounts) {
+        long sum = 0;
+        for (long count : updateCounts) {
+            if (count > 0) {
+                sum += count;
+            }
+        }
+        return sum;
+    }
+
+    private static BatchUpdateException findBatchUpdateException(Throwable t) {
+        while (t != null) {
+            if (t instanceof BatchUpdateException) {
+                return (BatchUpdateException) t;
+            }
+            t = t.getCause();
+        }
+        return null;
+    }
+
+    /**
+     * Drivers either stop at the first failed row, in which case the update counts of the preceding rows are returned,
+     * or continue after the failed row, in which case the failed row has update count {@link Statement#EXECUTE_FAILED}.
+     */
+    private static int getIndexOfFailedRow(BatchUpdateException e) {
+        long[] updateCounts = e.getLargeUpdateCounts();
+        if (updateCounts == null) {
+            updateCounts = toLongArray(e.getUpdateCounts());
+        }
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                return i;
+            }
+        }
+        return updateCounts.length;
+    }
+
+    private static long[] toLongArray(int[] values) {
+        if (values == null) {
+            return new long[0];
+        }
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of rows added to this writer
+     */
+    public long getNrRowsAdded() {
+        return nrRowsAdded;
+    }
+
+    /**
+     * @return the total number of rows updated by all executed batches. Rows for which the driver did not report an update count are not counted.
+     */
+    public long getNrUpdatedRows() {
+        return nrUpdatedRows;
+    }
+
+    /**
+     * Executes the remaining rows and closes the statement.
+     * @throws SQLException if a problem occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            flush();
+        } finally {
+            statement.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package nl.gogognome.dataaccess.dao;
+
+/**
+ * Determines how {@link AbstractDomainClassDAO#deleteWhereInChunks(NameValuePairs, Chunking)} and
+ * {@link AbstractDomainClassDAO#updateWhereInChunks(String, NameValuePairs, Chunking, Object...)} split
+ * the matching rows in chunks. Each chunk is committed in its own transaction, so that locks are held shortly
+ * and the undo log stays small.
+ *
+ * <p>Example:
+ * <pre>
+ *     Chunking chunking = new Chunking()
+ *         .withChunkSize(5000)
+ *         .withPauseBetweenChunks(50)
+ *         .withProgressListener((nrRowsInChunk, totalNrRows) -&gt; LOGGER.info("Purged " + totalNrRows + " rows"));
+ *     auditDAO.deleteWhereInChunks(new NameValuePairs().add("expired", true), chunking);
+ * </pre>
+ */
+public class Chunking {
+
+    private int chunkSize = 1000;
+    private long pauseBetweenChunksMillis;
+    private ProgressListener progressListener;
+
+    /**
+     * Is notified after each chunk has been committed.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param nrRowsInChunk the number of rows deleted or updated in the chunk
+         * @param totalNrRows the number of rows deleted or updated in all chunks so far
+         */
+        void chunkCompleted(int nrRowsInChunk, long totalNrRows);
+    }
+
+    /**
+     * @param chunkSize the maximum number of rows per chunk. Default 1000
+     * @return this instance
+     */
+    public Chunking withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Throttles the operation to limit its impact on other users of the database.
+     * @param pauseBetweenChunksMillis the number of milliseconds to wait after a chunk has been committed. Default 0
+     * @return this instance
+     */
+    public Chunking withPauseBetweenChunks(long pauseBetweenChunksMillis) {
+        this.pauseBetweenChunksMillis = pauseBetweenChunksMillis;
+        return this;
+    }
+
+    /**
+     * @param progressListener the listener that is notified after each chunk or null
+     * @return this instance
+     */
+    public Chunking withProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    long getPauseBetweenChunksMillis() {
+        return pauseBetweenChunksMillis;
+    }
+
+    ProgressListener getProgressListener() {
+        return progressListener;
+    }
+}
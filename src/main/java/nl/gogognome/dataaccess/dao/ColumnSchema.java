@@ -0,0 +1,57 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.util.*;
+
+/**
+ * Immutable list of column names that assigns a slot index to each column. A single instance is
+ * typically shared by all {@link IndexedNameValuePairs} of a table.
+ */
+public final class ColumnSchema {
+
+    private final String[] names;
+    private final Map<String, Integer> nameToSlot;
+
+    private ColumnSchema(String[] names) {
+        this.names = names;
+        nameToSlot = new HashMap<>(names.length * 2);
+        for (int i = 0; i < names.length; i++) {
+            if (nameToSlot.put(names[i], i) != null) {
+                throw new IllegalArgumentException("Column " + names[i] + " occurs more than once");
+            }
+        }
+    }
+
+    public static ColumnSchema of(String... names) {
+        return new ColumnSchema(names.clone());
+    }
+
+    public static ColumnSchema of(List<String> names) {
+        return new ColumnSchema(names.toArray(new String[0]));
+    }
+
+    /**
+     * @param name the name of a column
+     * @return the slot index of the column or -1 if the column is not part of this schema
+     */
+    public int getSlot(String name) {
+        Integer slot = nameToSlot.get(name);
+        return slot != null ? slot : -1;
+    }
+
+    public String getName(int slot) {
+        return names[slot];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
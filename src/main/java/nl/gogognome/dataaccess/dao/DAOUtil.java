@@ -1,10 +1,7 @@
 package nl.gogognome.dataaccess.dao;
 
-import java.math.BigDecimal;
 import java.sql.SQLException;
-import java.sql.Timestamp;
 import java.sql.Types;
-import java.util.Date;
 import java.util.Iterator;
 
 public class DAOUtil {
@@ -51,66 +48,53 @@ public class DAOUtil {
     }
 
     /**
-     * Sets a value in a prepared statement.
+     * Sets a value in a prepared statement using the {@link TypeBinder} registered for the type at {@link TypeBinders}.
      *
      * @param statement
      *            the prepared statement
      * @param index
      *            the index
+     * @param type
+     *            the type of the value
      * @param value
      *            the value
      * @throws SQLException
      *             if a problem occurs
      */
     public static void setStatementValue(PreparedStatementWrapper statement, int index, Class<?> type, Object value) throws SQLException {
+        bind(statement, index, TypeBinders.getRequired(type), value);
+    }
+
+    /**
+     * Sets a parameter using the {@link TypeBinder} registered for its class, so that for example enums and
+     * java.time values are bound the same way as in {@link NameValuePairs}. Values of classes without a type binder
+     * are passed to the driver as is.
+     *
+     * @param statement
+     *            the statement
+     * @param index
+     *            the index
+     * @param value
+     *            the value
+     * @throws SQLException
+     *             if a problem occurs
+     */
+    static void setStatementValue(PreparedStatementWrapper statement, int index, Object value) throws SQLException {
         if (value == null) {
-            int sqlType;
-            if (type.equals(String.class)) {
-                sqlType = Types.VARCHAR;
-            } else if (type.equals(Timestamp.class)) {
-                sqlType = Types.TIMESTAMP;
-            } else if (type.equals(BigDecimal.class)) {
-                sqlType = Types.NUMERIC;
-            } else if (type.equals(Double.class)) {
-                sqlType = Types.NUMERIC;
-            } else if (type.equals(Integer.class)) {
-                sqlType = Types.NUMERIC;
-            } else if (type.equals(Long.class)) {
-                sqlType = Types.NUMERIC;
-            } else if (type.equals(Boolean.class)) {
-                sqlType = Types.NUMERIC;
-            } else if (type.equals(Date.class)) {
-                sqlType = Types.TIMESTAMP;
-            } else if (type.equals(byte[].class)) {
-                sqlType = Types.BINARY;
-            } else {
-                throw new SQLException("Value of type " + type + " is not supported.");
-            }
-            statement.setNull(index, sqlType);
+            statement.setNull(index, Types.NULL);
+        } else if (TypeBinders.get(value.getClass()) != null) {
+            setStatementValue(statement, index, value.getClass(), value);
         } else {
-            if (type.equals(String.class)) {
-                statement.setString(index, (String) value);
-            } else if (type.equals(Timestamp.class)) {
-                statement.setTimestamp(index, (Timestamp) value);
-            } else if (type.equals(BigDecimal.class)) {
-                statement.setBigDecimal(index, (BigDecimal) value);
-            } else if (type.equals(Double.class)) {
-                statement.setDouble(index, (Double) value);
-            } else if (type.equals(Float.class)) {
-                statement.setFloat(index, (Float) value);
-            } else if (type.equals(Integer.class)) {
-                statement.setInt(index, (Integer) value);
-            } else if (type.equals(Long.class)) {
-                statement.setLong(index, (Long) value);
-            } else if (type.equals(Boolean.class)) {
-                statement.setInt(index, (Boolean) value ? 1 : 0);
-            } else if (type.equals(Date.class)) {
-                statement.setDate(index, new java.sql.Date(((Date) value).getTime()));
-            } else if (type.equals(byte[].class)) {
-                statement.setBinary(index, (byte[]) value);
-            } else {
-                throw new SQLException("Value of type " + type + " is not supported.");
-            }
+            statement.setObject(index, value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void bind(PreparedStatementWrapper statement, int index, TypeBinder<T> binder, Object value) throws SQLException {
+        if (value == null) {
+            statement.setNull(index, binder.getSqlType());
+        } else {
+            binder.bind(statement, index, (T) value);
         }
     }
 }
@@ -0,0 +1,44 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Distributes shard keys over shards by the hash code of the key. Changing the number of shards moves
+ * most keys to another shard, so use a {@link RangeShardRouter} if shards are added over time.
+ * @param <K> the type of the shard key
+ */
+public class HashShardRouter<K> implements ShardRouter<K> {
+
+    private final List<String> shards;
+
+    /**
+     * Constructor.
+     * @param shards the names of the data sources of the shards
+     */
+    public HashShardRouter(String... shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("At least one shard must be specified");
+        }
+        if (new LinkedHashSet<>(asList(shards)).size() != shards.length) {
+            throw new IllegalArgumentException("The shards must be unique");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(asList(shards)));
+    }
+
+    @Override
+    public String getShard(K shardKey) {
+        int hash = shardKey.hashCode();
+        hash ^= hash >>> 16;
+        return shards.get(Math.floorMod(hash, shards.size()));
+    }
+
+    @Override
+    public List<String> getShards() {
+        return shards;
+    }
+}
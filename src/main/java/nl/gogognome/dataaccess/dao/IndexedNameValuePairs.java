@@ -0,0 +1,255 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link NameValuePairs} for wide rows. Values of columns that are part of the {@link ColumnSchema} are stored
+ * in slots, so looking up, replacing and removing a value does not require a scan over all values. Values of
+ * type int, long and double are stored without boxing and are bound with setInt(), setLong() and setDouble().
+ *
+ * <p>Values for names that are not part of the schema, and values added for a name that already has a value,
+ * are stored like in {@link NameValuePairs}. Like in {@link NameValuePairs}, iteration returns the values in the order
+ * in which they were added, so the columns of statements built from an instance do not depend on the class.
+ */
+public class IndexedNameValuePairs extends NameValuePairs {
+
+    private final static byte UNSET = 0;
+    private final static byte OBJECT = 1;
+    private final static byte INT = 2;
+    private final static byte LONG = 3;
+    private final static byte DOUBLE = 4;
+
+    private final ColumnSchema schema;
+    private final byte[] kinds;
+    private final Object[] values;
+    private final Class<?>[] types;
+    private long[] primitives;
+    private int nrSetSlots;
+
+    // The order in which values were added. Entry i refers to orderOthers[i] if that is not null, and otherwise
+    // to slot orderSlots[i] if positions[orderSlots[i]] == i. Entries of removed values are skipped.
+    private final int[] positions;
+    private int[] orderSlots;
+    private NameValuePair[] orderOthers;
+    private int orderSize;
+
+    public IndexedNameValuePairs(ColumnSchema schema) {
+        this.schema = schema;
+        kinds = new byte[schema.size()];
+        values = new Object[schema.size()];
+        types = new Class<?>[schema.size()];
+        positions = new int[schema.size()];
+        orderSlots = new int[schema.size() + 4];
+        orderOthers = new NameValuePair[orderSlots.length];
+    }
+
+    public ColumnSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public NameValuePairs add(String name, Class<?> type, Object value) {
+        int slot = getFreeSlot(name);
+        if (slot == -1) {
+            NameValuePair nvp = new NameValuePair(name, type, value);
+            super.add(nvp);
+            appendToOrder(-1, nvp);
+            return this;
+        }
+        kinds[slot] = OBJECT;
+        types[slot] = type;
+        values[slot] = value;
+        nrSetSlots++;
+        appendToOrder(slot, null);
+        return this;
+    }
+
+    @Override
+    public NameValuePairs add(String name, int value) {
+        return addPrimitive(name, INT, value) ? this : super.add(name, value);
+    }
+
+    @Override
+    public NameValuePairs add(String name, long value) {
+        return addPrimitive(name, LONG, value) ? this : super.add(name, value);
+    }
+
+    @Override
+    public NameValuePairs add(String name, double value) {
+        return addPrimitive(name, DOUBLE, Double.doubleToRawLongBits(value)) ? this : super.add(name, value);
+    }
+
+    private boolean addPrimitive(String name, byte kind, long value) {
+        int slot = getFreeSlot(name);
+        if (slot == -1) {
+            return false;
+        }
+        if (primitives == null) {
+            primitives = new long[kinds.length];
+        }
+        kinds[slot] = kind;
+        primitives[slot] = value;
+        nrSetSlots++;
+        appendToOrder(slot, null);
+        return true;
+    }
+
+    private void appendToOrder(int slot, NameValuePair other) {
+        if (orderSize == orderSlots.length) {
+            orderSlots = Arrays.copyOf(orderSlots, orderSize * 2);
+            orderOthers = Arrays.copyOf(orderOthers, orderSize * 2);
+        }
+        if (slot != -1) {
+            positions[slot] = orderSize;
+        }
+        orderSlots[orderSize] = slot;
+        orderOthers[orderSize] = other;
+        orderSize++;
+    }
+
+    private int getFreeSlot(String name) {
+        int slot = schema.getSlot(name);
+        return slot != -1 && kinds[slot] == UNSET ? slot : -1;
+    }
+
+    private int getSetSlot(String name) {
+        int slot = schema.getSlot(name);
+        return slot != -1 && kinds[slot] != UNSET ? slot : -1;
+    }
+
+    @Override
+    public void remove(String name) {
+        int slot = getSetSlot(name);
+        if (slot != -1) {
+            kinds[slot] = UNSET;
+            types[slot] = null;
+            values[slot] = null;
+            nrSetSlots--;
+        }
+        if (!super.isEmpty()) {
+            super.remove(name);
+            for (int i = 0; i < orderSize; i++) {
+                if (orderOthers[i] != null && orderOthers[i].getName().equals(name)) {
+                    orderOthers[i] = null;
+                    orderSlots[i] = -1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public NameValuePair getNameValuePair(String name) {
+        int slot = getSetSlot(name);
+        return slot != -1 ? getNameValuePair(slot) : super.getNameValuePair(name);
+    }
+
+    private NameValuePair getNameValuePair(int slot) {
+        return new NameValuePair(schema.getName(slot), getType(slot), getValue(slot));
+    }
+
+    @Override
+    public Object getValue(String name) {
+        int slot = getSetSlot(name);
+        return slot != -1 ? getValue(slot) : super.getValue(name);
+    }
+
+    private Object getValue(int slot) {
+        switch (kinds[slot]) {
+            case INT: return (int) primitives[slot];
+            case LONG: return primitives[slot];
+            case DOUBLE: return Double.longBitsToDouble(primitives[slot]);
+            default: return values[slot];
+        }
+    }
+
+    private Class<?> getType(int slot) {
+        switch (kinds[slot]) {
+            case INT: return Integer.class;
+            case LONG: return Long.class;
+            case DOUBLE: return Double.class;
+            default: return types[slot];
+        }
+    }
+
+    @Override
+    int setStatementValues(PreparedStatementWrapper statement, int index, Iterable<String> names) throws SQLException {
+        for (String name : names) {
+            int slot = getSetSlot(name);
+            if (slot == -1) {
+                NameValuePair nvp = super.getNameValuePair(name);
+                if (nvp.getValue() != null) {
+                    DAOUtil.setStatementValue(statement, index++, nvp.getType(), nvp.getValue());
+                }
+                continue;
+            }
+            switch (kinds[slot]) {
+                case INT:
+                    statement.setInt(index++, (int) primitives[slot]);
+                    break;
+                case LONG:
+                    statement.setLong(index++, primitives[slot]);
+                    break;
+                case DOUBLE:
+                    statement.setDouble(index++, Double.longBitsToDouble(primitives[slot]));
+                    break;
+                default:
+                    if (values[slot] != null) {
+                        DAOUtil.setStatementValue(statement, index++, types[slot], values[slot]);
+                    }
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public int size() {
+        return nrSetSlots + super.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return nrSetSlots == 0 && super.isEmpty();
+    }
+
+    @Override
+    public Iterator<NameValuePair> iterator() {
+        return new Iterator<NameValuePair>() {
+            private int nextPosition = findNextPosition(0);
+
+            @Override
+            public boolean hasNext() {
+                return nextPosition < orderSize;
+            }
+
+            @Override
+            public NameValuePair next() {
+                if (nextPosition >= orderSize) {
+                    throw new NoSuchElementException();
+                }
+                NameValuePair nvp = orderOthers[nextPosition] != null
+                        ? orderOthers[nextPosition] : getNameValuePair(orderSlots[nextPosition]);
+                nextPosition = findNextPosition(nextPosition + 1);
+                return nvp;
+            }
+        };
+    }
+
+    private int findNextPosition(int startPosition) {
+        int position = startPosition;
+        while (position < orderSize && !isPresent(position)) {
+            position++;
+        }
+        return position;
+    }
+
+    private boolean isPresent(int position) {
+        if (orderOthers[position] != null) {
+            return true;
+        }
+        int slot = orderSlots[position];
+        return slot != -1 && kinds[slot] != UNSET && positions[slot] == position;
+    }
+}
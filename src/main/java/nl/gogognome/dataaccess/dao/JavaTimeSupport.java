@@ -0,0 +1,69 @@
+package nl.gogognome.dataaccess.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which JDBC drivers support the JDBC 4.2 java.time types in setObject() and getObject().
+ * Drivers that do not support them fall back to {@link Timestamp}. Support is determined once per
+ * statement or result set class, i.e., once per driver.
+ */
+class JavaTimeSupport {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(JavaTimeSupport.class);
+
+    private final static Map<Class<?>, Boolean> UNSUPPORTED_CLASSES = new ConcurrentHashMap<>();
+
+    private JavaTimeSupport() {
+    }
+
+    static boolean isSupported(Object statementOrResultSet) {
+        return StatementSettings.useJavaTimeTypes && !UNSUPPORTED_CLASSES.containsKey(statementOrResultSet.getClass());
+    }
+
+    static void markUnsupported(Object statementOrResultSet, Throwable cause) {
+        if (UNSUPPORTED_CLASSES.put(statementOrResultSet.getClass(), Boolean.TRUE) == null) {
+            LOGGER.info("{} does not support java.time types; falling back to Timestamp: {}",
+                    statementOrResultSet.getClass().getName(), cause.getMessage());
+        }
+    }
+
+    static Timestamp toTimestamp(LocalDateTime localDateTime) {
+        return localDateTime != null ? Timestamp.valueOf(localDateTime) : null;
+    }
+
+    static Timestamp toTimestamp(Object value) throws SQLException {
+        if (value == null || value instanceof Timestamp) {
+            return (Timestamp) value;
+        } else if (value instanceof LocalDateTime) {
+            return toTimestamp((LocalDateTime) value);
+        } else if (value instanceof Instant) {
+            return toTimestamp(toLocalDateTime((Instant) value));
+        } else if (value instanceof OffsetDateTime) {
+            return toTimestamp(toLocalDateTime(((OffsetDateTime) value).toInstant()));
+        } else if (value instanceof java.util.Date) {
+            return new Timestamp(((java.util.Date) value).getTime());
+        }
+        throw new SQLException("Value of type " + value.getClass() + " cannot be converted to a timestamp.");
+    }
+
+    static LocalDateTime toLocalDateTime(Instant instant) {
+        return instant != null ? LocalDateTime.ofInstant(instant, StatementSettings.zoneId) : null;
+    }
+
+    static Instant toInstant(LocalDateTime localDateTime) {
+        return localDateTime != null ? localDateTime.atZone(StatementSettings.zoneId).toInstant() : null;
+    }
+
+    static OffsetDateTime toOffsetDateTime(LocalDateTime localDateTime) {
+        return localDateTime != null ? localDateTime.atZone(StatementSettings.zoneId).toOffsetDateTime() : null;
+    }
+}
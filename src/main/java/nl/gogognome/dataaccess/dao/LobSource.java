@@ -0,0 +1,165 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The source of the contents of a BLOB or CLOB column. Instead of loading the complete contents in a byte array,
+ * the contents are streamed to the database when the statement is executed.
+ *
+ * <p>Streams and channels passed to this class are closed when the statement to which the source is bound is closed.
+ */
+public final class LobSource {
+
+    private interface Opener {
+        Closeable open() throws IOException;
+    }
+
+    private final boolean characterData;
+    private final long length;
+    private final String description;
+    private final Opener opener;
+
+    private LobSource(boolean characterData, long length, String description, Opener opener) {
+        this.characterData = characterData;
+        this.length = length;
+        this.description = description;
+        this.opener = opener;
+    }
+
+    /**
+     * Creates a source for binary data.
+     * @param inputStream the input stream
+     * @param length the number of bytes or -1 if the length is unknown
+     * @return the source
+     */
+    public static LobSource of(InputStream inputStream, long length) {
+        return new LobSource(false, length, "binary stream", () -> inputStream);
+    }
+
+    /**
+     * Creates a source for binary data.
+     * @param channel the channel
+     * @param length the number of bytes or -1 if the length is unknown
+     * @return the source
+     */
+    public static LobSource of(ReadableByteChannel channel, long length) {
+        return new LobSource(false, length, "binary channel", () -> Channels.newInputStream(channel));
+    }
+
+    /**
+     * Creates a source for binary data. The buffer can be a {@link MappedByteBuffer} to stream a memory-mapped file.
+     * The data between the position and the limit of the buffer is used. The position of the buffer is not changed.
+     * @param buffer the buffer
+     * @return the source
+     */
+    public static LobSource of(ByteBuffer buffer) {
+        return new LobSource(false, buffer.remaining(), "binary buffer", () -> new ByteBufferInputStream(buffer.duplicate()));
+    }
+
+    /**
+     * Creates a source for binary data that reads the contents of a file. The file is opened when the
+     * source is bound to a statement and closed when the statement has been executed.
+     * @param file the file
+     * @return the source
+     * @throws IOException if the size of the file could not be determined
+     */
+    public static LobSource ofFile(Path file) throws IOException {
+        return new LobSource(false, Files.size(file), "file " + file, () -> Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ)));
+    }
+
+    /**
+     * Creates a source for character data.
+     * @param reader the reader
+     * @param length the number of characters or -1 if the length is unknown
+     * @return the source
+     */
+    public static LobSource of(Reader reader, long length) {
+        return new LobSource(true, length, "character stream", () -> reader);
+    }
+
+    /**
+     * @return true if this source contains character data (CLOB); false if it contains binary data (BLOB)
+     */
+    public boolean isCharacterData() {
+        return characterData;
+    }
+
+    /**
+     * @return the number of bytes or characters of this source or -1 if the length is unknown
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Opens the input stream of a binary source.
+     * @return the input stream
+     * @throws IOException if the stream could not be opened
+     */
+    InputStream openInputStream() throws IOException {
+        if (characterData) {
+            throw new IllegalStateException("The source contains character data");
+        }
+        return (InputStream) opener.open();
+    }
+
+    /**
+     * Opens the reader of a character source.
+     * @return the reader
+     * @throws IOException if the reader could not be opened
+     */
+    Reader openReader() throws IOException {
+        if (!characterData) {
+            throw new IllegalStateException("The source contains binary data");
+        }
+        return (Reader) opener.open();
+    }
+
+    @Override
+    public String toString() {
+        return '<' + description + (length >= 0 ? " of length " + length : "") + '>';
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int nrBytes = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, nrBytes);
+            return nrBytes;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -1,23 +1,32 @@
 package nl.gogognome.dataaccess.dao;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.OffsetDateTime;
 import java.util.*;
 
-import static java.util.stream.Collectors.toList;
-
 public class NameValuePairs implements Iterable<NameValuePair> {
 
     private final List<NameValuePair> nameValuePairs = new ArrayList<>();
 
     public NameValuePairs add(String name, Class<?> type, Object value) {
-        nameValuePairs.add(new NameValuePair(name, type, value));
+        add(new NameValuePair(name, type, value));
         return this;
     }
 
+    void add(NameValuePair nameValuePair) {
+        nameValuePairs.add(nameValuePair);
+    }
+
     public void replace(String name, Class<?> type, Object value) {
         remove(name);
         add(name, type, value);
@@ -28,8 +37,18 @@ public class NameValuePairs implements Iterable<NameValuePair> {
         return this;
     }
 
+    /**
+     * Adds an enum value. The value is stored as is, with the enum class as type, so that a type binder registered
+     * for the enum at {@link TypeBinders} is used. Without such a type binder the enum is stored by its name.
+     * A null value is stored with type <code>String.class</code>. Previously the name of the enum was stored;
+     * code that casts {@link #getValue(String)} to <code>String</code> must call <code>name()</code> instead.
+     *
+     * @param name the name
+     * @param value the value
+     * @return this instance
+     */
     public NameValuePairs add(String name, Enum<?> value) {
-        return add(name, String.class, value != null ? value.name() : null);
+        return add(name, value != null ? value.getDeclaringClass() : String.class, value);
     }
 
     public NameValuePairs addEmptyStringToNull(String name, String value) {
@@ -42,21 +61,36 @@ public class NameValuePairs implements Iterable<NameValuePair> {
         return this;
     }
 
+    /**
+     * Adds a local date time. The value is stored as is, with type <code>LocalDateTime.class</code>, and is bound
+     * natively if the JDBC driver supports java.time types. Previously the value was converted to a
+     * {@link Timestamp}; code that casts {@link #getValue(String)} to <code>Timestamp</code> must use
+     * {@link #addTimestamp(String, Date)} instead.
+     *
+     * @param name the name
+     * @param localDatetime the value
+     * @return this instance
+     */
     public NameValuePairs add(String name, LocalDateTime localDatetime) {
-        Timestamp timestamp = null;
-        if (localDatetime != null) {
-            Instant instant = localDatetime.atZone(ZoneId.systemDefault()).toInstant();
-            timestamp = new Timestamp(instant.toEpochMilli());
-        }
-        return add(name, Timestamp.class, timestamp);
+        return add(name, LocalDateTime.class, localDatetime);
     }
 
+    /**
+     * Adds an instant. The value is stored as is, with type <code>Instant.class</code>, and is bound as a local
+     * date time in the zone {@link StatementSettings#zoneId}. Previously the value was converted to a
+     * {@link Timestamp}; code that casts {@link #getValue(String)} to <code>Timestamp</code> must use
+     * {@link #addTimestamp(String, Date)} instead.
+     *
+     * @param name the name
+     * @param instant the value
+     * @return this instance
+     */
     public NameValuePairs add(String name, Instant instant) {
-        Timestamp timestamp = null;
-        if (instant != null) {
-            timestamp = new Timestamp(instant.toEpochMilli());
-        }
-        return add(name, Timestamp.class, timestamp);
+        return add(name, Instant.class, instant);
+    }
+
+    public NameValuePairs add(String name, OffsetDateTime offsetDateTime) {
+        return add(name, OffsetDateTime.class, offsetDateTime);
     }
 
     public NameValuePairs add(String name, int value) {
@@ -104,6 +138,83 @@ public class NameValuePairs implements Iterable<NameValuePair> {
         return this;
     }
 
+    /**
+     * Adds a BLOB or CLOB value whose contents are streamed to the database when the statement is executed.
+     *
+     * @param name the name
+     * @param lobSource the source of the contents
+     * @return this instance
+     */
+    public NameValuePairs add(String name, LobSource lobSource) {
+        add(name, LobSource.class, lobSource);
+        return this;
+    }
+
+    /**
+     * Adds a BLOB value that is read from a stream when the statement is executed. The stream is closed
+     * after the statement has been executed, so it can be used for a single statement only.
+     *
+     * @param name the name
+     * @param inputStream the stream or null
+     * @param length the number of bytes or -1 if the length is unknown
+     * @return this instance
+     */
+    public NameValuePairs add(String name, InputStream inputStream, long length) {
+        return add(name, inputStream != null ? LobSource.of(inputStream, length) : null);
+    }
+
+    /**
+     * Adds a BLOB value that is read from a channel when the statement is executed. The channel is closed
+     * after the statement has been executed, so it can be used for a single statement only.
+     *
+     * @param name the name
+     * @param channel the channel or null
+     * @param length the number of bytes or -1 if the length is unknown
+     * @return this instance
+     */
+    public NameValuePairs add(String name, ReadableByteChannel channel, long length) {
+        return add(name, channel != null ? LobSource.of(channel, length) : null);
+    }
+
+    /**
+     * Adds a BLOB value containing the bytes between the position and the limit of the buffer. The buffer can be
+     * a {@link java.nio.MappedByteBuffer} to stream a memory-mapped file. The position of the buffer is not changed,
+     * so the instance can be used for multiple statements.
+     *
+     * @param name the name
+     * @param buffer the buffer or null
+     * @return this instance
+     */
+    public NameValuePairs add(String name, ByteBuffer buffer) {
+        return add(name, buffer != null ? LobSource.of(buffer) : null);
+    }
+
+    /**
+     * Adds a CLOB value that is read from a reader when the statement is executed. The reader is closed
+     * after the statement has been executed, so it can be used for a single statement only.
+     *
+     * @param name the name
+     * @param reader the reader or null
+     * @param length the number of characters or -1 if the length is unknown
+     * @return this instance
+     */
+    public NameValuePairs add(String name, Reader reader, long length) {
+        return add(name, reader != null ? LobSource.of(reader, length) : null);
+    }
+
+    /**
+     * Adds a BLOB value containing the contents of a file. The file is opened when the value is bound to a statement
+     * and closed afterwards, so the instance can be used for multiple statements.
+     *
+     * @param name the name
+     * @param file the file or null
+     * @return this instance
+     * @throws IOException if the size of the file could not be determined
+     */
+    public NameValuePairs addFile(String name, Path file) throws IOException {
+        return add(name, file != null ? LobSource.ofFile(file) : null);
+    }
+
     public NameValuePairs add(String name, Object... values) {
         List<String> strings = new ArrayList<>(values.length);
         for (Object value : values) {
@@ -157,11 +268,11 @@ public class NameValuePairs implements Iterable<NameValuePair> {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(1000);
-        for (int i = 0; i < nameValuePairs.size(); i++) {
-            sb.append(nameValuePairs.get(i));
-            if (i + 1 < nameValuePairs.size()) {
+        for (NameValuePair nvp : this) {
+            if (sb.length() > 0) {
                 sb.append(',');
             }
+            sb.append(nvp);
         }
         return sb.toString();
     }
@@ -196,7 +307,11 @@ public class NameValuePairs implements Iterable<NameValuePair> {
     }
 
     public List<String> getNames() {
-        return nameValuePairs.stream().map(NameValuePair::getName).collect(toList());
+        List<String> names = new ArrayList<>(size());
+        for (NameValuePair nvp : this) {
+            names.add(nvp.getName());
+        }
+        return names;
     }
 
     /**
@@ -206,13 +321,35 @@ public class NameValuePairs implements Iterable<NameValuePair> {
      *            the names of the pairs to be copied in the subset
      * @return the subset
      */
+    @SuppressWarnings("unchecked")
     public NameValuePairs getSubset(Collection<String> names) {
+        Set<String> nameSet = names instanceof Set ? (Set<String>) names : new HashSet<>(names);
         NameValuePairs subset = new NameValuePairs();
-        for (NameValuePair nvp : this.nameValuePairs) {
-            if (names.contains(nvp.getName())) {
+        for (NameValuePair nvp : this) {
+            if (nameSet.contains(nvp.getName())) {
                 subset.nameValuePairs.add(nvp);
             }
         }
         return subset;
     }
+
+    /**
+     * Sets the non-null values of the specified names as parameters of a prepared statement.
+     *
+     * @param statement the prepared statement
+     * @param index the index of the first parameter
+     * @param names the names of the values
+     * @return the index of the parameter following the last parameter that was set
+     * @throws SQLException if a problem occurs
+     */
+    int setStatementValues(PreparedStatementWrapper statement, int index, Iterable<String> names) throws SQLException {
+        for (String name : names) {
+            NameValuePair nvp = getNameValuePair(name);
+            if (nvp.getValue() != null) {
+                DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
+                index++;
+            }
+        }
+        return index;
+    }
 }
\ No newline at end of file
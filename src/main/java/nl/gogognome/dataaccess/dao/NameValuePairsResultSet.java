@@ -3,17 +3,144 @@ package nl.gogognome.dataaccess.dao;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.URL;
 import java.sql.*;
 import java.sql.Date;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.util.*;
 
 class NameValuePairsResultSet implements ResultSet {
 
-	private final NameValuePairs nameValuePairs;
+	private final String[] labels;
+	private final Object[] values;
+	private final Map<String, Integer> labelToIndex;
+	private boolean wasNull;
 
 	public NameValuePairsResultSet(NameValuePairs nameValuePairs) {
-		this.nameValuePairs = nameValuePairs;
+		int size = nameValuePairs.size();
+		labels = new String[size];
+		values = new Object[size];
+		labelToIndex = new HashMap<>(size * 2);
+		int index = 0;
+		for (NameValuePair nvp : nameValuePairs) {
+			labels[index] = nvp.getName();
+			values[index] = nvp.getValue();
+			index++;
+			labelToIndex.putIfAbsent(nvp.getName(), index);
+		}
+	}
+
+	private Object getValue(int columnIndex) throws SQLException {
+		if (columnIndex < 1 || columnIndex > values.length) {
+			throw new SQLException("Invalid column index " + columnIndex);
+		}
+		Object value = values[columnIndex - 1];
+		wasNull = value == null;
+		return value;
+	}
+
+	private Object getValue(String columnLabel) throws SQLException {
+		int index = getIndex(columnLabel);
+		if (index == -1) {
+			wasNull = true;
+			return null;
+		}
+		return getValue(index);
+	}
+
+	private int getIndex(String columnLabel) {
+		Integer index = labelToIndex.get(columnLabel);
+		if (index != null) {
+			return index;
+		}
+		for (int i = 0; i < labels.length; i++) {
+			if (labels[i].equalsIgnoreCase(columnLabel)) {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	private static String toString(Object value) {
+		return value instanceof Enum ? ((Enum<?>) value).name() : (String) value;
+	}
+
+	private static boolean toBoolean(Object value) {
+		if (value instanceof Number) {
+			return ((Number) value).intValue() != 0;
+		}
+		return value != null ? (Boolean) value : false;
+	}
+
+	private static Number toNumber(Object value) {
+		return value != null ? (Number) value : 0;
+	}
+
+	private static BigDecimal toBigDecimal(Object value) {
+		if (value == null || value instanceof BigDecimal) {
+			return (BigDecimal) value;
+		}
+		return new BigDecimal(value.toString());
+	}
+
+	private static Date toDate(Object value) throws SQLException {
+		Timestamp timestamp = JavaTimeSupport.toTimestamp(value);
+		return timestamp != null ? new Date(timestamp.getTime()) : null;
+	}
+
+	private static <T> T convert(Object value, Class<T> type) throws SQLException {
+		if (value == null || type.isInstance(value)) {
+			return type.cast(value);
+		}
+		if (type.equals(LocalDateTime.class)) {
+			return type.cast(JavaTimeSupport.toTimestamp(value).toLocalDateTime());
+		}
+		if (type.equals(OffsetDateTime.class)) {
+			return type.cast(JavaTimeSupport.toOffsetDateTime(JavaTimeSupport.toTimestamp(value).toLocalDateTime()));
+		}
+		if (type.equals(String.class) && value instanceof Enum) {
+			return type.cast(((Enum<?>) value).name());
+		}
+		if (value instanceof Number) {
+			Object number = convertNumber((Number) value, type);
+			if (number != null) {
+				return type.cast(number);
+			}
+		}
+		throw new SQLException("Value of type " + value.getClass() + " cannot be converted to " + type);
+	}
+
+	private static Object convertNumber(Number value, Class<?> type) {
+		if (type.equals(Long.class)) {
+			return value.longValue();
+		}
+		if (type.equals(Integer.class)) {
+			return value.intValue();
+		}
+		if (type.equals(Short.class)) {
+			return value.shortValue();
+		}
+		if (type.equals(Byte.class)) {
+			return value.byteValue();
+		}
+		if (type.equals(Double.class)) {
+			return value.doubleValue();
+		}
+		if (type.equals(Float.class)) {
+			return value.floatValue();
+		}
+		if (type.equals(BigDecimal.class)) {
+			return toBigDecimal(value);
+		}
+		if (type.equals(BigInteger.class)) {
+			return toBigDecimal(value).toBigInteger();
+		}
+		if (type.equals(Boolean.class)) {
+			return toBoolean(value);
+		}
+		return null;
 	}
 
 	@Override
@@ -36,47 +163,47 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public boolean wasNull() throws SQLException {
-		throw new SQLException("Not supported");
+		return wasNull;
 	}
 
 	@Override
 	public String getString(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toString(getValue(columnIndex));
 	}
 
 	@Override
 	public boolean getBoolean(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toBoolean(getValue(columnIndex));
 	}
 
 	@Override
 	public byte getByte(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).byteValue();
 	}
 
 	@Override
 	public short getShort(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).shortValue();
 	}
 
 	@Override
 	public int getInt(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).intValue();
 	}
 
 	@Override
 	public long getLong(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).longValue();
 	}
 
 	@Override
 	public float getFloat(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).floatValue();
 	}
 
 	@Override
 	public double getDouble(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnIndex)).doubleValue();
 	}
 
 	@Override
@@ -86,12 +213,12 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public byte[] getBytes(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return (byte[]) getValue(columnIndex);
 	}
 
 	@Override
 	public Date getDate(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toDate(getValue(columnIndex));
 	}
 
 	@Override
@@ -101,7 +228,7 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public Timestamp getTimestamp(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return JavaTimeSupport.toTimestamp(getValue(columnIndex));
 	}
 
 	@Override
@@ -121,47 +248,42 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public String getString(String columnLabel) throws SQLException {
-		return (String) nameValuePairs.getValue(columnLabel);
+		return toString(getValue(columnLabel));
 	}
 
 	@Override
 	public boolean getBoolean(String columnLabel) throws SQLException {
-		Boolean value = (Boolean) nameValuePairs.getValue(columnLabel);
-		return value != null ? value : false;
+		return toBoolean(getValue(columnLabel));
 	}
 
 	@Override
 	public byte getByte(String columnLabel) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnLabel)).byteValue();
 	}
 
 	@Override
 	public short getShort(String columnLabel) throws SQLException {
-		throw new SQLException("Not supported");
+		return toNumber(getValue(columnLabel)).shortValue();
 	}
 
 	@Override
 	public int getInt(String columnLabel) throws SQLException {
-		Integer value = (Integer) nameValuePairs.getValue(columnLabel);
-		return value != null ? value : 0;
+		return toNumber(getValue(columnLabel)).intValue();
 	}
 
 	@Override
 	public long getLong(String columnLabel) throws SQLException {
-		Long value = (Long) nameValuePairs.getValue(columnLabel);
-		return value != null ? value : 0;
+		return toNumber(getValue(columnLabel)).longValue();
 	}
 
 	@Override
 	public float getFloat(String columnLabel) throws SQLException {
-		Float value = (Float) nameValuePairs.getValue(columnLabel);
-		return value != null ? value : 0;
+		return toNumber(getValue(columnLabel)).floatValue();
 	}
 
 	@Override
 	public double getDouble(String columnLabel) throws SQLException {
-		Double value = (Double) nameValuePairs.getValue(columnLabel);
-		return value != null ? value : 0;
+		return toNumber(getValue(columnLabel)).doubleValue();
 	}
 
 	@Override
@@ -171,13 +293,12 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public byte[] getBytes(String columnLabel) throws SQLException {
-		return (byte[]) nameValuePairs.getNameValuePair(columnLabel).getValue();
+		return (byte[]) getValue(columnLabel);
 	}
 
 	@Override
 	public Date getDate(String columnLabel) throws SQLException {
-		java.util.Date date = (java.util.Date) nameValuePairs.getValue(columnLabel);
-		return date != null ? new Date(date.getTime()) : null;
+		return toDate(getValue(columnLabel));
 	}
 
 	@Override
@@ -187,7 +308,7 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public Timestamp getTimestamp(String columnLabel) throws SQLException {
-		return (Timestamp) nameValuePairs.getValue(columnLabel);
+		return JavaTimeSupport.toTimestamp(getValue(columnLabel));
 	}
 
 	@Override
@@ -227,17 +348,21 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public Object getObject(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return getValue(columnIndex);
 	}
 
 	@Override
 	public Object getObject(String columnLabel) throws SQLException {
-		return nameValuePairs.getValue(columnLabel);
+		return getValue(columnLabel);
 	}
 
 	@Override
 	public int findColumn(String columnLabel) throws SQLException {
-		throw new SQLException("Not supported");
+		int index = getIndex(columnLabel);
+		if (index == -1) {
+			throw new SQLException("Column " + columnLabel + " not found");
+		}
+		return index;
 	}
 
 	@Override
@@ -252,12 +377,12 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-		throw new SQLException("Not supported");
+		return toBigDecimal(getValue(columnIndex));
 	}
 
 	@Override
 	public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
-		return (BigDecimal) nameValuePairs.getValue(columnLabel);
+		return toBigDecimal(getValue(columnLabel));
 	}
 
 	@Override
@@ -1049,12 +1174,12 @@ class NameValuePairsResultSet implements ResultSet {
 
 	@Override
 	public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
-		throw new SQLException("Not supported");
+		return convert(getValue(columnIndex), type);
 	}
 
 	@Override
 	public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
-		throw new SQLException("Not supported");
+		return convert(getValue(columnLabel), type);
 	}
 
 }
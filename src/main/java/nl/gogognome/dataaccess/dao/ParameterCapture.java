@@ -0,0 +1,17 @@
+package nl.gogognome.dataaccess.dao;
+
+/**
+ * Specifies which parameters of a {@link PreparedStatementWrapper} are captured. Captured parameters are shown
+ * by {@link PreparedStatementWrapper#toString()}, which is used for logging and for the messages of exceptions.
+ */
+public enum ParameterCapture {
+
+    /** No parameters are captured. Setting parameters does not allocate memory. */
+    OFF,
+
+    /** Parameters of the current row and of the last {@link StatementSettings#maxCapturedBatchRows} batch rows are captured. */
+    LAST_BATCH_ROWS,
+
+    /** Parameters of the current row and of all batch rows are captured. */
+    FULL
+}
@@ -0,0 +1,99 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * The period of time of which the rows are stored in one partition table of an {@link AbstractTimePartitionedDAO}.
+ * The name of a partition table consists of the name of the table followed by an underscore and the start
+ * of the period, for example <code>event_20240131</code> for a day or <code>event_202401</code> for a month.
+ */
+public enum PartitionPeriod {
+
+    DAY("yyyyMMdd") {
+        @Override
+        public LocalDateTime getStart(LocalDateTime timestamp) {
+            return timestamp.truncatedTo(ChronoUnit.DAYS);
+        }
+
+        @Override
+        public LocalDateTime getNextStart(LocalDateTime start) {
+            return start.plusDays(1);
+        }
+
+        @Override
+        LocalDateTime parse(String suffix) {
+            return LocalDate.parse(suffix, formatter).atStartOfDay();
+        }
+    },
+
+    MONTH("yyyyMM") {
+        @Override
+        public LocalDateTime getStart(LocalDateTime timestamp) {
+            return timestamp.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        }
+
+        @Override
+        public LocalDateTime getNextStart(LocalDateTime start) {
+            return start.plusMonths(1);
+        }
+
+        @Override
+        LocalDateTime parse(String suffix) {
+            return YearMonth.parse(suffix, formatter).atDay(1).atStartOfDay();
+        }
+    };
+
+    final DateTimeFormatter formatter;
+    private final int suffixLength;
+
+    PartitionPeriod(String pattern) {
+        this.formatter = DateTimeFormatter.ofPattern(pattern);
+        this.suffixLength = pattern.length();
+    }
+
+    /**
+     * @param timestamp a timestamp
+     * @return the start of the period that contains the timestamp
+     */
+    public abstract LocalDateTime getStart(LocalDateTime timestamp);
+
+    /**
+     * @param start the start of a period
+     * @return the start of the next period
+     */
+    public abstract LocalDateTime getNextStart(LocalDateTime start);
+
+    abstract LocalDateTime parse(String suffix);
+
+    /**
+     * @param tableName the name of the partitioned table
+     * @param timestamp a timestamp
+     * @return the name of the partition table that stores the rows of the timestamp
+     */
+    public String getPartitionTableName(String tableName, LocalDateTime timestamp) {
+        return tableName + '_' + formatter.format(getStart(timestamp));
+    }
+
+    /**
+     * Determines the start of the period of a partition table.
+     * @param tableName the name of the partitioned table
+     * @param partitionTableName the name of a table
+     * @return the start of the period or null if the table is not a partition table of the partitioned table
+     */
+    public LocalDateTime parsePartitionTableName(String tableName, String partitionTableName) {
+        if (partitionTableName.length() != tableName.length() + 1 + suffixLength
+                || !partitionTableName.regionMatches(true, 0, tableName + '_', 0, tableName.length() + 1)) {
+            return null;
+        }
+        try {
+            return parse(partitionTableName.substring(tableName.length() + 1));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
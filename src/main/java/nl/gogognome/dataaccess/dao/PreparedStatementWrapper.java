@@ -1,19 +1,33 @@
 package nl.gogognome.dataaccess.dao;
 
+import nl.gogognome.dataaccess.transaction.CompositeDatasourceTransaction;
+import nl.gogognome.dataaccess.transaction.ConcurrencyLimiter;
+import nl.gogognome.dataaccess.transaction.TransactionWatchdog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.math.BigDecimal;
 import java.sql.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * This class wraps a {@link PreparedStatement}. This class has two advantages over using the {@link PreparedStatement} directly:
  *
  * <ul>
- * <li>Its {@link #toString()} method returns the query that was used to create the statement
- * <li>Its finalizer logs a message if the statement was not closed
+ * <li>Its {@link #toString()} method returns the query that was used to create the statement. Depending on
+ * {@link StatementSettings#parameterCapture} the query includes the parameter values.
+ * <li>A sample of the statements is tracked to log statements that are garbage collected without having been closed.
+ * See {@link StatementSettings#leakDetectionSamplingRate}.
  * </ul>
  */
 public class PreparedStatementWrapper implements AutoCloseable {
@@ -22,11 +36,26 @@ public class PreparedStatementWrapper implements AutoCloseable {
 
     private final PreparedStatement wrappedStatement;
     private final String query;
-    private boolean closed;
+    private final StatementLeakDetector.Tracker leakTracker;
     private long startTimeNano;
 
-    private final List<Object> parameters = new ArrayList<>(10);
-    private List<List<Object>> batchParameters;
+    /** The limiter of the data source to which the latency of executions is reported. Is <code>null</code> if there is none. */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    private final ParameterCapture parameterCapture = StatementSettings.parameterCapture;
+
+    /** The captured parameters of the current row. Is <code>null</code> if parameters are not captured. */
+    private Object[] parameters;
+    private int nrParameters;
+
+    /** The captured parameters of batch rows. Is <code>null</code> if parameters are not captured. */
+    private ArrayDeque<Object[]> batchParameters;
+    private int nrBatchRows;
+
+    private boolean largeBatchSupported = true;
+
+    /** Streams opened for LOB parameters. They are closed after each execution and when this statement is closed. */
+    private List<Closeable> streamsToClose;
 
     /**
      * Constructor.
@@ -37,12 +66,22 @@ public class PreparedStatementWrapper implements AutoCloseable {
      *            the query used to create the wrapped statement. Used for logging only.
      * @param startTimeNano
      *            the creation time (in nanoseconds) of the prepared statement
+     * @param concurrencyLimiter
+     *            the limiter of the data source of the connection or <code>null</code>
      */
-    private PreparedStatementWrapper(PreparedStatement wrappedStatement, String query, long startTimeNano) {
+    private PreparedStatementWrapper(PreparedStatement wrappedStatement, String query, long startTimeNano,
+                                     ConcurrencyLimiter concurrencyLimiter) {
         super();
         this.wrappedStatement = wrappedStatement;
         this.query = query;
         this.startTimeNano = startTimeNano;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.leakTracker = StatementLeakDetector.track(this, wrappedStatement, query);
+        TransactionWatchdog.statementPrepared(wrappedStatement, query);
+        if (parameterCapture != ParameterCapture.OFF) {
+            parameters = new Object[10];
+            batchParameters = new ArrayDeque<>();
+        }
         try {
             wrappedStatement.setFetchSize(100);
         } catch (SQLException e) {
@@ -66,7 +105,8 @@ public class PreparedStatementWrapper implements AutoCloseable {
 
         query = fillInPivots(query, parameters);
         PreparedStatement wrappedStatement = connection.prepareStatement(query);
-        PreparedStatementWrapper wrapper = new PreparedStatementWrapper(wrappedStatement, query, startTimeNano);
+        PreparedStatementWrapper wrapper = new PreparedStatementWrapper(wrappedStatement, query, startTimeNano,
+                CompositeDatasourceTransaction.getConcurrencyLimiter(connection));
         wrapper.setQueryParameters(parameters);
         return wrapper;
     }
@@ -92,15 +132,26 @@ public class PreparedStatementWrapper implements AutoCloseable {
 
     public void addBatch() throws SQLException {
         wrappedStatement.addBatch();
-        if (batchParameters == null) {
-            batchParameters = new ArrayList<>();
+        nrBatchRows++;
+        if (parameters != null) {
+            if (parameterCapture == ParameterCapture.LAST_BATCH_ROWS) {
+                while (!batchParameters.isEmpty() && batchParameters.size() >= StatementSettings.maxCapturedBatchRows) {
+                    batchParameters.removeFirst();
+                }
+                if (StatementSettings.maxCapturedBatchRows > 0) {
+                    batchParameters.addLast(Arrays.copyOf(parameters, nrParameters));
+                }
+            } else {
+                batchParameters.addLast(Arrays.copyOf(parameters, nrParameters));
+            }
+            Arrays.fill(parameters, 0, nrParameters, null);
+            nrParameters = 0;
         }
-        batchParameters.add(new ArrayList<>(parameters));
-        parameters.clear();
     }
 
     public boolean execute() throws SQLException {
         logStatement();
+        long executionStartNano = System.nanoTime();
         try {
             return wrappedStatement.execute();
         } catch (SQLException e) {
@@ -109,11 +160,14 @@ public class PreparedStatementWrapper implements AutoCloseable {
         } finally {
             long endTimeNano = System.nanoTime();
             logStatement(startTimeNano, endTimeNano);
+            statementExecuted(executionStartNano, endTimeNano);
+            closeStreams();
         }
     }
 
     public ResultSetWrapper executeQuery() throws SQLException {
         logStatement();
+        long executionStartNano = System.nanoTime();
         try {
             return new ResultSetWrapper(wrappedStatement.executeQuery());
         } catch (SQLException e) {
@@ -122,11 +176,14 @@ public class PreparedStatementWrapper implements AutoCloseable {
         } finally {
             long endTimeNano = System.nanoTime();
             logStatement(startTimeNano, endTimeNano);
+            statementExecuted(executionStartNano, endTimeNano);
+            closeStreams();
         }
     }
 
     public int executeUpdate() throws SQLException {
         logStatement();
+        long executionStartNano = System.nanoTime();
         try {
             return wrappedStatement.executeUpdate();
         } catch (SQLException e) {
@@ -135,6 +192,8 @@ public class PreparedStatementWrapper implements AutoCloseable {
         } finally {
             long endTimeNano = System.nanoTime();
             logStatement(startTimeNano, endTimeNano);
+            statementExecuted(executionStartNano, endTimeNano);
+            closeStreams();
         }
     }
 
@@ -150,63 +209,214 @@ public class PreparedStatementWrapper implements AutoCloseable {
     }
 
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setBigDecimal(parameterIndex, x);
     }
 
     public void setBinary(int parameterIndex, byte[] bytes) throws SQLException {
-        addParameter(parameterIndex, bytes);
+        if (parameters != null) {
+            addParameter(parameterIndex, bytes);
+        }
         wrappedStatement.setBytes(parameterIndex, bytes);
     }
 
+    public void setBinaryStream(int parameterIndex, InputStream x, long length) throws SQLException {
+        if (parameters != null) {
+            addParameter(parameterIndex, "<binary stream>");
+        }
+        if (length >= 0) {
+            wrappedStatement.setBinaryStream(parameterIndex, x, length);
+        } else {
+            wrappedStatement.setBinaryStream(parameterIndex, x);
+        }
+    }
+
+    public void setCharacterStream(int parameterIndex, Reader x, long length) throws SQLException {
+        if (parameters != null) {
+            addParameter(parameterIndex, "<character stream>");
+        }
+        if (length >= 0) {
+            wrappedStatement.setCharacterStream(parameterIndex, x, length);
+        } else {
+            wrappedStatement.setCharacterStream(parameterIndex, x);
+        }
+    }
+
+    /**
+     * Sets a BLOB or CLOB parameter. The contents are streamed from the source when the statement is executed.
+     * The stream opened for the source is closed when the statement or batch has been executed, or when this
+     * statement is closed without being executed.
+     *
+     * @param parameterIndex the index of the parameter
+     * @param lobSource the source of the contents
+     * @throws SQLException if a problem occurs
+     */
+    public void setLob(int parameterIndex, LobSource lobSource) throws SQLException {
+        if (streamsToClose == null) {
+            streamsToClose = new ArrayList<>(2);
+        }
+        try {
+            if (lobSource.isCharacterData()) {
+                Reader reader = lobSource.openReader();
+                streamsToClose.add(reader);
+                setCharacterStream(parameterIndex, reader, lobSource.getLength());
+            } else {
+                InputStream inputStream = lobSource.openInputStream();
+                streamsToClose.add(inputStream);
+                setBinaryStream(parameterIndex, inputStream, lobSource.getLength());
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not open " + lobSource + ": " + e.getMessage(), e);
+        }
+        if (parameters != null) {
+            addParameter(parameterIndex, lobSource);
+        }
+    }
+
     public void setDate(int parameterIndex, Date x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setDate(parameterIndex, x);
     }
 
     public void setDouble(int parameterIndex, double x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setDouble(parameterIndex, x);
     }
 
     public void setFloat(int parameterIndex, float x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setFloat(parameterIndex, x);
     }
 
     public void setInt(int parameterIndex, int x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setInt(parameterIndex, x);
     }
 
     public void setLong(int parameterIndex, long x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setLong(parameterIndex, x);
     }
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
-        addParameter(parameterIndex, null);
+        if (parameters != null) {
+            addParameter(parameterIndex, null);
+        }
         wrappedStatement.setNull(parameterIndex, sqlType);
     }
     public void setObject(int parameterIndex, Object x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setObject(parameterIndex, x);
     }
     public void setString(int parameterIndex, String x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setString(parameterIndex, x);
     }
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-        addParameter(parameterIndex, x);
+        if (parameters != null) {
+            addParameter(parameterIndex, x);
+        }
         wrappedStatement.setTimestamp(parameterIndex, x);
     }
 
+    public void setLocalDateTime(int parameterIndex, LocalDateTime x) throws SQLException {
+        if (x == null) {
+            setNull(parameterIndex, Types.TIMESTAMP);
+        } else {
+            setJavaTimeObject(parameterIndex, x);
+        }
+    }
+
+    /**
+     * Sets an instant. The instant is stored as a local date time in the zone {@link StatementSettings#zoneId}.
+     * @param parameterIndex the index of the parameter
+     * @param x the instant
+     * @throws SQLException if a problem occurs
+     */
+    public void setInstant(int parameterIndex, Instant x) throws SQLException {
+        setLocalDateTime(parameterIndex, JavaTimeSupport.toLocalDateTime(x));
+    }
+
+    public void setOffsetDateTime(int parameterIndex, OffsetDateTime x) throws SQLException {
+        if (x == null) {
+            setNull(parameterIndex, Types.TIMESTAMP_WITH_TIMEZONE);
+        } else {
+            setJavaTimeObject(parameterIndex, x);
+        }
+    }
+
+    /**
+     * Sets a java.time value with setObject() if the driver supports it, or else as a {@link Timestamp}.
+     * The driver is marked as not supporting java.time types only if setObject() is not implemented, or if
+     * setObject() fails while setting the timestamp succeeds. Other exceptions, like an invalid parameter index,
+     * are thrown unchanged. The {@link Timestamp} is only created if it is needed.
+     */
+    private void setJavaTimeObject(int parameterIndex, Object x) throws SQLException {
+        if (JavaTimeSupport.isSupported(wrappedStatement)) {
+            try {
+                wrappedStatement.setObject(parameterIndex, x);
+                if (parameters != null) {
+                    addParameter(parameterIndex, x);
+                }
+                return;
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                JavaTimeSupport.markUnsupported(wrappedStatement, e);
+            } catch (SQLException e) {
+                try {
+                    setTimestamp(parameterIndex, JavaTimeSupport.toTimestamp(x));
+                } catch (SQLException timestampException) {
+                    throw e;
+                }
+                JavaTimeSupport.markUnsupported(wrappedStatement, e);
+                return;
+            }
+        }
+        setTimestamp(parameterIndex, JavaTimeSupport.toTimestamp(x));
+    }
+
     @Override
     public void close() throws SQLException {
-        wrappedStatement.close();
-        closed = true;
+        if (leakTracker != null) {
+            leakTracker.close();
+        }
+        TransactionWatchdog.statementClosed(wrappedStatement);
+        try {
+            wrappedStatement.close();
+        } finally {
+            closeStreams();
+        }
+    }
+
+    private void closeStreams() {
+        if (streamsToClose != null) {
+            for (Closeable stream : streamsToClose) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Ignored exception while closing stream: " + e.getMessage(), e);
+                }
+            }
+            streamsToClose = null;
+        }
     }
     public int[] executeBatch() throws SQLException {
         logStatement();
+        long executionStartNano = System.nanoTime();
         try {
             return wrappedStatement.executeBatch();
         } catch (SQLException e) {
@@ -215,13 +425,81 @@ public class PreparedStatementWrapper implements AutoCloseable {
         } finally {
             long endTimeNano = System.nanoTime();
             logStatement(startTimeNano, endTimeNano);
+            statementExecuted(executionStartNano, endTimeNano);
+            closeStreams();
+            clearBatchParameters();
+        }
+    }
+
+    /**
+     * Executes the batch using {@link PreparedStatement#executeLargeBatch()}. If the driver does not support
+     * large batches then {@link PreparedStatement#executeBatch()} is used instead.
+     *
+     * @return the update counts of the batch rows
+     * @throws SQLException if a problem occurs
+     */
+    public long[] executeLargeBatch() throws SQLException {
+        if (!largeBatchSupported) {
+            return toLongArray(executeBatch());
+        }
+
+        logStatement();
+        long executionStartNano = System.nanoTime();
+        try {
+            return wrappedStatement.executeLargeBatch();
+        } catch (UnsupportedOperationException | SQLFeatureNotSupportedException e) {
+            largeBatchSupported = false;
+            try {
+                return toLongArray(wrappedStatement.executeBatch());
+            } catch (SQLException e2) {
+                throwModifiedException(e2);
+                return null; // unreachable code
+            }
+        } catch (SQLException e) {
+            throwModifiedException(e);
+            return null; // unreachable code
+        } finally {
+            long endTimeNano = System.nanoTime();
+            logStatement(startTimeNano, endTimeNano);
+            statementExecuted(executionStartNano, endTimeNano);
+            closeStreams();
+            clearBatchParameters();
+        }
+    }
+
+    private static long[] toLongArray(int[] values) {
+        long[] result = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
         }
+        return result;
+    }
+
+    /**
+     * The driver clears its batch when the batch is executed. Therefore the captured batch parameters are cleared too.
+     */
+    private void clearBatchParameters() {
+        nrBatchRows = 0;
+        if (batchParameters != null) {
+            batchParameters.clear();
+        }
+    }
+
+    /**
+     * @return the class of the wrapped statement, which identifies the driver
+     */
+    Class<?> getWrappedStatementClass() {
+        return wrappedStatement.getClass();
     }
 
     public Connection getConnection() throws SQLException {
             return wrappedStatement.getConnection();
     }
 
+    public void setMaxRows(int max) throws SQLException {
+        wrappedStatement.setMaxRows(max);
+    }
+
     /**
      * Logs a statement.
      *
@@ -246,8 +524,14 @@ public class PreparedStatementWrapper implements AutoCloseable {
         startTimeNano = end;
     }
 
+    private void statementExecuted(long executionStartNano, long endNano) {
+        if (concurrencyLimiter != null) {
+            concurrencyLimiter.statementExecuted(endNano - executionStartNano);
+        }
+    }
+
     /**
-     * Stores the parameter in the {@link #parameters} list.
+     * Stores the parameter in the {@link #parameters} array. Must only be called if parameters are captured.
      *
      * @param index
      *            the index of the parameter in the query
@@ -256,52 +540,46 @@ public class PreparedStatementWrapper implements AutoCloseable {
      */
     private void addParameter(int index, Object parameter) {
         index -= 1; // parameter indexes start at 1 instead of 0.
-        if (parameters.size() > index) {
-            parameters.set(index, parameter);
-        } else {
-            while (parameters.size() < index) {
-                parameters.add(null);
-            }
-            parameters.add(parameter);
-        }
-    }
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        if (!closed) {
-            LOGGER.error("PreparedStatement " + this + " was not closed before finalization!");
-            close();
+        if (index >= parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(index + 1, parameters.length * 2));
         }
+        parameters[index] = parameter;
+        nrParameters = Math.max(nrParameters, index + 1);
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder(query.length() + 100);
-        if (batchParameters == null) {
-            appendQueryIncludingParameters(sb, parameters);
+        if (nrBatchRows == 0) {
+            appendQueryIncludingParameters(sb, parameters, nrParameters);
+        } else if (batchParameters == null || batchParameters.isEmpty()) {
+            sb.append(query).append(" [batch of ").append(nrBatchRows).append(" rows]");
         } else {
+            int nrOmittedRows = nrBatchRows - batchParameters.size();
+            if (nrOmittedRows > 0) {
+                sb.append('[').append(nrOmittedRows).append(" batch rows omitted] ");
+            }
             boolean first = true;
-            for (List<Object> tempParameters : batchParameters) {
+            for (Object[] tempParameters : batchParameters) {
                 if (!first) {
                     sb.append("; ");
                 }
                 first = false;
 
-                appendQueryIncludingParameters(sb, tempParameters);
+                appendQueryIncludingParameters(sb, tempParameters, tempParameters.length);
             }
         }
         return sb.toString();
     }
 
-    private void appendQueryIncludingParameters(StringBuilder sb, List<Object> parameters) {
+    private void appendQueryIncludingParameters(StringBuilder sb, Object[] parameters, int nrParameters) {
         int paramIndex = 0;
         int index = query.indexOf('?');
         int prevIndex = 0;
         while (index != -1) {
             sb.append(query.substring(prevIndex, index));
-            if (paramIndex < parameters.size()) {
-                Object value = parameters.get(paramIndex);
+            if (parameters != null && paramIndex < nrParameters) {
+                Object value = parameters[paramIndex];
                 if (value instanceof String) {
                     sb.append("'").append(value).append("'");
                 } else {
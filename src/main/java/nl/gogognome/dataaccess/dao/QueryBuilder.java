@@ -257,6 +257,7 @@ public class QueryBuilder {
      *             if a problem occurs
      */
     private PreparedStatementWrapper prepareStatement(String query, Object... parameters) throws SQLException {
+        WriteBehind.flushBeforeStatement(query);
         Connection connection = ((JdbcTransaction) CurrentTransaction.get()).getConnection(connectionParameters);
         return PreparedStatementWrapper.preparedStatement(connection, query, parameters);
     }
@@ -0,0 +1,48 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Maps ranges of shard keys to shards. Each range starts at a lower bound (inclusive) and ends at the next
+ * lower bound (exclusive):
+ * <pre>
+ *     new RangeShardRouter&lt;Long&gt;().withRange(0L, "tenants1").withRange(10_000L, "tenants2")
+ * </pre>
+ * @param <K> the type of the shard key
+ */
+public class RangeShardRouter<K extends Comparable<? super K>> implements ShardRouter<K> {
+
+    private final TreeMap<K, String> lowerBoundToShard = new TreeMap<>();
+    private List<String> shards = Collections.emptyList();
+
+    /**
+     * Adds a range.
+     * @param lowerBound the lowest key of the range
+     * @param shard the name of the data source of the shard
+     * @return this router
+     */
+    public RangeShardRouter<K> withRange(K lowerBound, String shard) {
+        lowerBoundToShard.put(lowerBound, shard);
+        shards = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(lowerBoundToShard.values())));
+        return this;
+    }
+
+    @Override
+    public String getShard(K shardKey) {
+        Map.Entry<K, String> entry = lowerBoundToShard.floorEntry(shardKey);
+        if (entry == null) {
+            throw new IllegalArgumentException("No shard has been configured for key " + shardKey);
+        }
+        return entry.getValue();
+    }
+
+    @Override
+    public List<String> getShards() {
+        return shards;
+    }
+}
@@ -1,13 +1,23 @@
 package nl.gogognome.dataaccess.dao;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.sql.Date;
 import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.*;
 
@@ -1026,19 +1036,220 @@ public class ResultSetWrapper implements ResultSet {
     }
 
     public LocalDateTime getLocalDateTime(String columnLabel) throws SQLException {
-        return toLocalDateTime(wrappedResultSet.getTimestamp(columnLabel));
+        return getJavaTimeObject(() -> wrappedResultSet.getObject(columnLabel, LocalDateTime.class),
+                () -> toLocalDateTime(wrappedResultSet.getTimestamp(columnLabel)));
     }
 
     public LocalDateTime getLocalDateTime(int columnIndex) throws SQLException {
-        return toLocalDateTime(wrappedResultSet.getTimestamp(columnIndex));
+        return getJavaTimeObject(() -> wrappedResultSet.getObject(columnIndex, LocalDateTime.class),
+                () -> toLocalDateTime(wrappedResultSet.getTimestamp(columnIndex)));
     }
 
+    /**
+     * Gets an instant. The column is interpreted as a local date time in the zone {@link StatementSettings#zoneId}.
+     * @param columnLabel the label of the column
+     * @return the instant or null
+     * @throws SQLException if a problem occurs
+     */
     public Instant getInstant(String columnLabel) throws SQLException {
-        return toInstant(wrappedResultSet.getTimestamp(columnLabel));
+        return JavaTimeSupport.toInstant(getLocalDateTime(columnLabel));
     }
 
+    /**
+     * Gets an instant. The column is interpreted as a local date time in the zone {@link StatementSettings#zoneId}.
+     * @param columnIndex the index of the column
+     * @return the instant or null
+     * @throws SQLException if a problem occurs
+     */
     public Instant getInstant(int columnIndex) throws SQLException {
-        return toInstant(wrappedResultSet.getTimestamp(columnIndex));
+        return JavaTimeSupport.toInstant(getLocalDateTime(columnIndex));
+    }
+
+    public OffsetDateTime getOffsetDateTime(String columnLabel) throws SQLException {
+        return getJavaTimeObject(() -> wrappedResultSet.getObject(columnLabel, OffsetDateTime.class),
+                () -> JavaTimeSupport.toOffsetDateTime(toLocalDateTime(wrappedResultSet.getTimestamp(columnLabel))));
+    }
+
+    public OffsetDateTime getOffsetDateTime(int columnIndex) throws SQLException {
+        return getJavaTimeObject(() -> wrappedResultSet.getObject(columnIndex, OffsetDateTime.class),
+                () -> JavaTimeSupport.toOffsetDateTime(toLocalDateTime(wrappedResultSet.getTimestamp(columnIndex))));
+    }
+
+    /**
+     * Gets a java.time value with getObject() if the driver supports it, or else from a {@link Timestamp}.
+     * The driver is marked as not supporting java.time types only if getObject() is not implemented, or if
+     * getObject() fails while reading the value as a timestamp succeeds. Other exceptions, like an unknown
+     * column label, are thrown unchanged.
+     */
+    private <T> T getJavaTimeObject(ValueReader<T> javaTimeReader, ValueReader<T> timestampReader) throws SQLException {
+        if (JavaTimeSupport.isSupported(wrappedResultSet)) {
+            try {
+                return javaTimeReader.read();
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                JavaTimeSupport.markUnsupported(wrappedResultSet, e);
+            } catch (SQLException e) {
+                T value;
+                try {
+                    value = timestampReader.read();
+                } catch (SQLException timestampException) {
+                    throw e;
+                }
+                JavaTimeSupport.markUnsupported(wrappedResultSet, e);
+                return value;
+            }
+        }
+        return timestampReader.read();
+    }
+
+    private interface ValueReader<T> {
+        T read() throws SQLException;
+    }
+
+    /**
+     * Streams the contents of a binary column (e.g. a BLOB) to a channel without loading the complete contents in memory.
+     * @param columnLabel the label of the column
+     * @param target the channel to which the contents are written. The channel is not closed.
+     * @return the number of bytes written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferBinaryStream(String columnLabel, WritableByteChannel target) throws SQLException {
+        return transfer(wrappedResultSet.getBinaryStream(columnLabel), target);
+    }
+
+    /**
+     * Streams the contents of a binary column (e.g. a BLOB) to a channel without loading the complete contents in memory.
+     * @param columnIndex the index of the column
+     * @param target the channel to which the contents are written. The channel is not closed.
+     * @return the number of bytes written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferBinaryStream(int columnIndex, WritableByteChannel target) throws SQLException {
+        return transfer(wrappedResultSet.getBinaryStream(columnIndex), target);
+    }
+
+    /**
+     * Streams the contents of a binary column (e.g. a BLOB) to a file without loading the complete contents in memory.
+     * An existing file is overwritten. If the column is null, the file is not created.
+     * @param columnLabel the label of the column
+     * @param target the file
+     * @return the number of bytes written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferBinaryStream(String columnLabel, Path target) throws SQLException {
+        return transfer(wrappedResultSet.getBinaryStream(columnLabel), target);
+    }
+
+    /**
+     * Streams the contents of a binary column (e.g. a BLOB) to a file without loading the complete contents in memory.
+     * An existing file is overwritten. If the column is null, the file is not created.
+     * @param columnIndex the index of the column
+     * @param target the file
+     * @return the number of bytes written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferBinaryStream(int columnIndex, Path target) throws SQLException {
+        return transfer(wrappedResultSet.getBinaryStream(columnIndex), target);
+    }
+
+    /**
+     * Streams the contents of a character column (e.g. a CLOB) to a writer without loading the complete contents in memory.
+     * @param columnLabel the label of the column
+     * @param target the writer to which the contents are written. The writer is not closed.
+     * @return the number of characters written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferCharacterStream(String columnLabel, Writer target) throws SQLException {
+        return transfer(wrappedResultSet.getCharacterStream(columnLabel), target);
+    }
+
+    /**
+     * Streams the contents of a character column (e.g. a CLOB) to a writer without loading the complete contents in memory.
+     * @param columnIndex the index of the column
+     * @param target the writer to which the contents are written. The writer is not closed.
+     * @return the number of characters written or -1 if the column is null
+     * @throws SQLException if a problem occurs
+     */
+    public long transferCharacterStream(int columnIndex, Writer target) throws SQLException {
+        return transfer(wrappedResultSet.getCharacterStream(columnIndex), target);
+    }
+
+    private static long transfer(InputStream inputStream, WritableByteChannel target) throws SQLException {
+        if (inputStream == null) {
+            return -1;
+        }
+        try (ReadableByteChannel source = Channels.newChannel(inputStream)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long nrBytes = 0;
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    nrBytes += target.write(buffer);
+                }
+                buffer.clear();
+            }
+            return nrBytes;
+        } catch (IOException e) {
+            throw new SQLException("Failed to transfer binary stream: " + e.getMessage(), e);
+        }
+    }
+
+    private static long transfer(InputStream inputStream, Path target) throws SQLException {
+        if (inputStream == null) {
+            return -1;
+        }
+        try (ReadableByteChannel source = Channels.newChannel(inputStream);
+             FileChannel fileChannel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            long nrBytes;
+            while ((nrBytes = fileChannel.transferFrom(source, position, 1024 * 1024)) > 0) {
+                position += nrBytes;
+            }
+            return position;
+        } catch (IOException e) {
+            throw new SQLException("Failed to transfer binary stream to " + target + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static long transfer(Reader reader, Writer target) throws SQLException {
+        if (reader == null) {
+            return -1;
+        }
+        try (Reader source = reader) {
+            char[] buffer = new char[8 * 1024];
+            long nrChars = 0;
+            int n;
+            while ((n = source.read(buffer)) != -1) {
+                target.write(buffer, 0, n);
+                nrChars += n;
+            }
+            return nrChars;
+        } catch (IOException e) {
+            throw new SQLException("Failed to transfer character stream: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Gets a value using the {@link TypeBinder} registered for the type at {@link TypeBinders}.
+     * @param type the type of the value
+     * @param columnLabel the label of the column
+     * @param <T> the type of the value
+     * @return the value or null
+     * @throws SQLException if a problem occurs or no type binder exists for the type
+     */
+    public <T> T get(Class<T> type, String columnLabel) throws SQLException {
+        return TypeBinders.getRequired(type).read(this, columnLabel);
+    }
+
+    /**
+     * Gets a value using the {@link TypeBinder} registered for the type at {@link TypeBinders}.
+     * @param type the type of the value
+     * @param columnIndex the index of the column
+     * @param <T> the type of the value
+     * @return the value or null
+     * @throws SQLException if a problem occurs or no type binder exists for the type
+     */
+    public <T> T get(Class<T> type, int columnIndex) throws SQLException {
+        return TypeBinders.getRequired(type).read(this, columnIndex);
     }
 
     public <E extends Enum<E>> E getEnum(Class<E> enumClass, String columnLabel) throws SQLException {
@@ -1061,6 +1272,9 @@ public class ResultSetWrapper implements ResultSet {
         if (date == null) {
             return null;
         }
+        if (date instanceof Timestamp) {
+            return ((Timestamp) date).toLocalDateTime();
+        }
         return LocalDateTime.ofInstant(date.toInstant(), ZoneId.systemDefault());
     }
 
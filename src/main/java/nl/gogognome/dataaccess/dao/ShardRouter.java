@@ -0,0 +1,21 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.util.List;
+
+/**
+ * Determines the shard, that is, the name of the registered data source, that stores the rows for a shard key.
+ * @param <K> the type of the shard key
+ */
+public interface ShardRouter<K> {
+
+    /**
+     * @param shardKey the shard key
+     * @return the name of the data source that stores the rows of the shard key
+     */
+    String getShard(K shardKey);
+
+    /**
+     * @return the names of the data sources of all shards, without duplicates
+     */
+    List<String> getShards();
+}
@@ -0,0 +1,230 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.RequireTransaction;
+import nl.gogognome.dataaccess.transaction.TransactionPropagation;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Routes DAO calls to the shard that stores the rows of a shard key. For each shard a DAO is created that uses
+ * the data source of the shard:
+ * <pre>
+ *     ShardedDAO&lt;Long, InvoiceDAO&gt; invoiceDAO = new ShardedDAO&lt;&gt;(
+ *             new HashShardRouter&lt;&gt;("invoices1", "invoices2", "invoices3", "invoices4"), InvoiceDAO::new);
+ *
+ *     Invoice invoice = invoiceDAO.forKey(tenantId).get(invoiceId);
+ *     List&lt;Invoice&gt; overdue = invoiceDAO.onAllShards(dao -&gt; dao.findOverdue());
+ * </pre>
+ *
+ * <p>A transaction only gets connections for the shards that are used. Calls on all shards run in parallel
+ * in the current transaction, or in a new transaction if there is none. Each shard uses its own connection.
+ *
+ * @param <K> the type of the shard key
+ * @param <DAO> the type of the DAO
+ */
+public class ShardedDAO<K, DAO extends AbstractDAO> {
+
+    private final static ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "sharded-dao");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ShardRouter<K> router;
+    private final Map<String, DAO> shardToDAO = new LinkedHashMap<>();
+    private ExecutorService executor = DEFAULT_EXECUTOR;
+
+    /**
+     * A call on the DAO of a shard.
+     * @param <DAO> the type of the DAO
+     * @param <T> the type of the result
+     */
+    public interface ShardCall<DAO, T> {
+        T call(DAO dao) throws SQLException;
+    }
+
+    /**
+     * Constructor.
+     * @param router the router
+     * @param daoFactory creates the DAO for a shard, given the name of the data source of the shard
+     */
+    public ShardedDAO(ShardRouter<K> router, Function<String, DAO> daoFactory) {
+        this.router = router;
+        for (String shard : router.getShards()) {
+            shardToDAO.put(shard, daoFactory.apply(shard));
+        }
+    }
+
+    /**
+     * @param executor the executor that runs the calls on all shards in parallel
+     * @return this instance
+     */
+    public ShardedDAO<K, DAO> withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * @param shardKey the shard key
+     * @return the DAO of the shard that stores the rows of the shard key
+     */
+    public DAO forKey(K shardKey) {
+        return forShard(router.getShard(shardKey));
+    }
+
+    /**
+     * @param shard the name of the data source of the shard
+     * @return the DAO of the shard
+     */
+    public DAO forShard(String shard) {
+        DAO dao = shardToDAO.get(shard);
+        if (dao == null) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+        return dao;
+    }
+
+    /**
+     * Calls all shards in parallel and concatenates their results in the order of the shards.
+     * @param call the call
+     * @param <T> the type of the elements of the result
+     * @return the results of all shards
+     * @throws SQLException if a problem occurs
+     */
+    public <T> List<T> onAllShards(ShardCall<DAO, List<T>> call) throws SQLException {
+        List<T> result = new ArrayList<>();
+        for (List<T> shardResult : scatter(call)) {
+            result.addAll(shardResult);
+        }
+        return result;
+    }
+
+    /**
+     * Calls all shards in parallel and merges their sorted results into one sorted list.
+     * @param call the call; it must return a list sorted according to the comparator
+     * @param comparator the comparator
+     * @param <T> the type of the elements of the result
+     * @return the results of all shards, sorted
+     * @throws SQLException if a problem occurs
+     */
+    public <T> List<T> onAllShardsSorted(ShardCall<DAO, List<T>> call, Comparator<? super T> comparator) throws SQLException {
+        return mergeSorted(scatter(call), comparator);
+    }
+
+    /**
+     * Calls all shards in parallel. If a call fails, the calls that have not started yet are skipped and
+     * the exception is thrown after the running calls have completed.
+     * @param call the call
+     * @param <T> the type of the result
+     * @return the results of the shards in the order of the shards
+     * @throws SQLException if a problem occurs
+     */
+    public <T> List<T> scatter(ShardCall<DAO, T> call) throws SQLException {
+        try {
+            return RequireTransaction.returns(() -> {
+                // The calls run on other threads that join the current transaction, so execute the statements
+                // queued by this thread before they can be seen by the calls.
+                WriteBehind.flushCurrentTransaction();
+                AtomicBoolean failed = new AtomicBoolean();
+                List<Future<T>> futures = new ArrayList<>(shardToDAO.size());
+                try {
+                    for (DAO dao : shardToDAO.values()) {
+                        futures.add(executor.submit(TransactionPropagation.joinCurrent(() -> failed.get() ? null : call.call(dao))));
+                    }
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (Future<T> future : futures) {
+                        results.add(future.get());
+                    }
+                    return results;
+                } finally {
+                    failed.set(true);
+                    awaitCompletion(futures);
+                }
+            });
+        } catch (DataAccessException e) {
+            Throwable cause = e.getCause() instanceof ExecutionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof DataAccessException) {
+                throw (DataAccessException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all calls have completed, so that no other thread uses the current transaction after
+     * {@link #scatter(ShardCall)} has returned. Calls that have not started yet are skipped.
+     */
+    private static void awaitCompletion(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | CancellationException e) {
+                // the first failure has been thrown already
+            }
+        }
+    }
+
+    /**
+     * Merges sorted lists into one sorted list. Elements that are equal according to the comparator keep
+     * the order of the lists.
+     */
+    static <T> List<T> mergeSorted(List<List<T>> sortedLists, Comparator<? super T> comparator) {
+        int size = 0;
+        PriorityQueue<Head<T>> heads = new PriorityQueue<>(Math.max(1, sortedLists.size()), (h1, h2) -> {
+            int result = comparator.compare(h1.value, h2.value);
+            return result != 0 ? result : Integer.compare(h1.listIndex, h2.listIndex);
+        });
+        for (int i = 0; i < sortedLists.size(); i++) {
+            List<T> list = sortedLists.get(i);
+            size += list.size();
+            Iterator<T> iterator = list.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head<>(iterator.next(), iterator, i));
+            }
+        }
+
+        List<T> result = new ArrayList<>(size);
+        while (!heads.isEmpty()) {
+            Head<T> head = heads.poll();
+            result.add(head.value);
+            if (head.iterator.hasNext()) {
+                heads.add(new Head<>(head.iterator.next(), head.iterator, head.listIndex));
+            }
+        }
+        return result;
+    }
+
+    private static class Head<T> {
+
+        private final T value;
+        private final Iterator<T> iterator;
+        private final int listIndex;
+
+        private Head(T value, Iterator<T> iterator, int listIndex) {
+            this.value = value;
+            this.iterator = iterator;
+            this.listIndex = listIndex;
+        }
+    }
+}
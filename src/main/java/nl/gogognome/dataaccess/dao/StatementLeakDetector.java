@@ -0,0 +1,107 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.util.CreationStack;
+import nl.gogognome.dataaccess.util.SqlFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects {@link PreparedStatementWrapper}s that are garbage collected without having been closed.
+ *
+ * <p>Only one in {@link StatementSettings#leakDetectionSamplingRate} statements is tracked. For tracked statements
+ * a phantom reference is registered, so unlike a finalizer the garbage collector does not need to do extra work for
+ * statements that are not tracked. Leaked statements are reported the next time a statement is tracked or when
+ * {@link #reportLeakedStatements()} is called.
+ */
+class StatementLeakDetector {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(StatementLeakDetector.class);
+
+    private final static ReferenceQueue<PreparedStatementWrapper> QUEUE = new ReferenceQueue<>();
+
+    /** Keeps the phantom references reachable until their statement has been closed or reported as leaked. */
+    private final static Set<Tracker> TRACKERS = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final static AtomicLong COUNTER = new AtomicLong();
+
+    private StatementLeakDetector() {
+    }
+
+    /**
+     * Starts tracking a statement if it is sampled.
+     *
+     * @param wrapper the statement wrapper
+     * @param wrappedStatement the statement wrapped by the wrapper
+     * @param query the query of the statement
+     * @return a tracker that must be closed when the statement is closed, or <code>null</code> if the statement is not sampled
+     */
+    static Tracker track(PreparedStatementWrapper wrapper, PreparedStatement wrappedStatement, String query) {
+        int samplingRate = StatementSettings.leakDetectionSamplingRate;
+        if (samplingRate <= 0 || COUNTER.getAndIncrement() % samplingRate != 0) {
+            return null;
+        }
+
+        reportLeakedStatements();
+        Tracker tracker = new Tracker(wrapper, wrappedStatement, query);
+        TRACKERS.add(tracker);
+        return tracker;
+    }
+
+    /**
+     * Logs and closes all statements that have been garbage collected without being closed.
+     */
+    static void reportLeakedStatements() {
+        Reference<? extends PreparedStatementWrapper> reference;
+        while ((reference = QUEUE.poll()) != null) {
+            Tracker tracker = (Tracker) reference;
+            if (TRACKERS.remove(tracker)) {
+                tracker.reportLeak();
+            }
+        }
+    }
+
+    /* visible for testing */ static int getNrTrackedStatements() {
+        return TRACKERS.size();
+    }
+
+    static class Tracker extends PhantomReference<PreparedStatementWrapper> {
+
+        private final PreparedStatement wrappedStatement;
+        private final String query;
+        private final CreationStack creationStack;
+
+        private Tracker(PreparedStatementWrapper wrapper, PreparedStatement wrappedStatement, String query) {
+            super(wrapper, QUEUE);
+            this.wrappedStatement = wrappedStatement;
+            this.query = query;
+            this.creationStack = new CreationStack(4); // skip this constructor, track() and the wrapper's constructor and factory method
+        }
+
+        /**
+         * Must be called when the statement has been closed.
+         */
+        void close() {
+            TRACKERS.remove(this);
+            clear();
+        }
+
+        private void reportLeak() {
+            LOGGER.error("PreparedStatement " + SqlFingerprint.of(query) + " was not closed. It was created at:\n" + creationStack);
+            try {
+                wrappedStatement.close();
+            } catch (SQLException e) {
+                LOGGER.warn("Ignored exception while closing leaked statement: " + e.getMessage(), e);
+            }
+        }
+    }
+}
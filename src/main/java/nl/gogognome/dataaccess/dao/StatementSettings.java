@@ -0,0 +1,37 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.time.ZoneId;
+
+public class StatementSettings {
+
+    /**
+     * One in this many prepared statements is tracked for leak detection. A statement that is garbage collected without
+     * having been closed is logged together with its SQL fingerprint and the location where it was created.
+     * Use 1 to track all statements and 0 to disable leak detection.
+     */
+    public static int leakDetectionSamplingRate = 100;
+
+    /**
+     * Specifies which parameters of prepared statements are captured for logging and exception messages.
+     */
+    public static ParameterCapture parameterCapture = ParameterCapture.OFF;
+
+    /**
+     * The maximum number of batch rows whose parameters are captured in case {@link #parameterCapture} is
+     * {@link ParameterCapture#LAST_BATCH_ROWS}.
+     */
+    public static int maxCapturedBatchRows = 10;
+
+    /**
+     * Indicates whether java.time values are passed to the JDBC driver as is (JDBC 4.2). Drivers that do not
+     * support this are detected automatically; for those drivers values are converted to timestamps.
+     */
+    public static boolean useJavaTimeTypes = true;
+
+    /**
+     * The time zone used to convert between {@link java.time.Instant}s and the local date times stored in the database.
+     * It is determined once instead of for every value.
+     */
+    public static ZoneId zoneId = ZoneId.systemDefault();
+
+}
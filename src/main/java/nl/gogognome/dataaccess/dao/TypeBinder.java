@@ -0,0 +1,31 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Binds values of a Java type to prepared statement parameters and reads them from result sets.
+ * Type binders are registered at {@link TypeBinders}.
+ *
+ * @param <T> the Java type
+ */
+public interface TypeBinder<T> {
+
+    /**
+     * @return the SQL type (see {@link java.sql.Types}) used to bind null values
+     */
+    int getSqlType();
+
+    /**
+     * Binds a value to a parameter.
+     * @param statement the statement
+     * @param index the index of the parameter
+     * @param value the value; never null
+     * @throws SQLException if a problem occurs
+     */
+    void bind(PreparedStatementWrapper statement, int index, T value) throws SQLException;
+
+    T read(ResultSetWrapper resultSet, String columnLabel) throws SQLException;
+
+    T read(ResultSetWrapper resultSet, int columnIndex) throws SQLException;
+
+}
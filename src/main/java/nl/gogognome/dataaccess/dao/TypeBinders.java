@@ -0,0 +1,212 @@
+package nl.gogognome.dataaccess.dao;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of {@link TypeBinder}s. The registry determines which Java types can be used in {@link NameValuePairs}
+ * and how they are bound to parameters of prepared statements. Enums without a registered type binder are stored
+ * by their name. A type binder registered for an enum also applies to its constants that have a body.
+ *
+ * <p>Example of registering a type binder for UUIDs that are stored as strings:
+ * <pre>
+ *     TypeBinders.register(UUID.class, TypeBinders.of(Types.VARCHAR,
+ *         (statement, index, value) -&gt; statement.setString(index, value.toString()),
+ *         (resultSet, columnLabel) -&gt; toUUID(resultSet.getString(columnLabel)),
+ *         (resultSet, columnIndex) -&gt; toUUID(resultSet.getString(columnIndex))));
+ * </pre>
+ */
+public class TypeBinders {
+
+    public interface Binder<T> {
+        void bind(PreparedStatementWrapper statement, int index, T value) throws SQLException;
+    }
+
+    public interface LabelReader<T> {
+        T read(ResultSetWrapper resultSet, String columnLabel) throws SQLException;
+    }
+
+    public interface IndexReader<T> {
+        T read(ResultSetWrapper resultSet, int columnIndex) throws SQLException;
+    }
+
+    private final static Map<Class<?>, TypeBinder<?>> REGISTERED_BINDERS = new ConcurrentHashMap<>();
+
+    /**
+     * Incremented each time the registry changes. A binder found for a class is cached together with the version
+     * of the registry, because a change for one class can affect other classes, like the constants with a body
+     * of an enum.
+     */
+    private final static AtomicInteger VERSION = new AtomicInteger();
+
+    private final static ClassValue<VersionedBinder> BINDERS = new ClassValue<VersionedBinder>() {
+        @Override
+        protected VersionedBinder computeValue(Class<?> type) {
+            int version = VERSION.get();
+            TypeBinder<?> binder = REGISTERED_BINDERS.get(type);
+            if (binder == null && Enum.class.isAssignableFrom(type) && type != Enum.class) {
+                // constants with a body are instances of an anonymous subclass of the enum
+                Class<?> enumClass = type.isEnum() ? type : type.getSuperclass();
+                binder = REGISTERED_BINDERS.get(enumClass);
+                if (binder == null) {
+                    binder = createEnumBinder(enumClass);
+                }
+            }
+            return new VersionedBinder(version, binder);
+        }
+    };
+
+    static {
+        register(String.class, of(Types.VARCHAR, PreparedStatementWrapper::setString,
+                ResultSetWrapper::getString, ResultSetWrapper::getString));
+        register(Timestamp.class, of(Types.TIMESTAMP, PreparedStatementWrapper::setTimestamp,
+                ResultSetWrapper::getTimestamp, ResultSetWrapper::getTimestamp));
+        register(LocalDateTime.class, of(Types.TIMESTAMP, PreparedStatementWrapper::setLocalDateTime,
+                ResultSetWrapper::getLocalDateTime, ResultSetWrapper::getLocalDateTime));
+        register(Instant.class, of(Types.TIMESTAMP, PreparedStatementWrapper::setInstant,
+                ResultSetWrapper::getInstant, ResultSetWrapper::getInstant));
+        register(OffsetDateTime.class, of(Types.TIMESTAMP_WITH_TIMEZONE, PreparedStatementWrapper::setOffsetDateTime,
+                ResultSetWrapper::getOffsetDateTime, ResultSetWrapper::getOffsetDateTime));
+        register(BigDecimal.class, of(Types.NUMERIC, PreparedStatementWrapper::setBigDecimal,
+                ResultSetWrapper::getBigDecimal, ResultSetWrapper::getBigDecimal));
+        register(Double.class, of(Types.NUMERIC, PreparedStatementWrapper::setDouble,
+                (r, c) -> r.getObject(c, Double.class), (r, c) -> r.getObject(c, Double.class)));
+        register(Float.class, of(Types.NUMERIC, PreparedStatementWrapper::setFloat,
+                (r, c) -> r.getObject(c, Float.class), (r, c) -> r.getObject(c, Float.class)));
+        register(Integer.class, of(Types.NUMERIC, PreparedStatementWrapper::setInt,
+                (r, c) -> r.getObject(c, Integer.class), (r, c) -> r.getObject(c, Integer.class)));
+        register(Long.class, of(Types.NUMERIC, PreparedStatementWrapper::setLong,
+                (r, c) -> r.getObject(c, Long.class), (r, c) -> r.getObject(c, Long.class)));
+        register(Boolean.class, of(Types.NUMERIC, (s, i, v) -> s.setInt(i, v ? 1 : 0),
+                (r, c) -> r.getObject(c, Boolean.class), (r, c) -> r.getObject(c, Boolean.class)));
+        register(Date.class, of(Types.TIMESTAMP, (s, i, v) -> s.setDate(i, new java.sql.Date(v.getTime())),
+                ResultSetWrapper::getTimestamp, ResultSetWrapper::getTimestamp));
+        register(byte[].class, of(Types.BINARY, PreparedStatementWrapper::setBinary,
+                ResultSetWrapper::getBytes, ResultSetWrapper::getBytes));
+        register(LobSource.class, of(Types.BLOB, PreparedStatementWrapper::setLob,
+                TypeBinders::readLobSource, TypeBinders::readLobSource));
+        register(InputStream.class, of(Types.BLOB, (s, i, v) -> s.setLob(i, LobSource.of(v, -1)),
+                ResultSetWrapper::getBinaryStream, ResultSetWrapper::getBinaryStream));
+        register(Reader.class, of(Types.CLOB, (s, i, v) -> s.setLob(i, LobSource.of(v, -1)),
+                ResultSetWrapper::getCharacterStream, ResultSetWrapper::getCharacterStream));
+    }
+
+    private TypeBinders() {
+    }
+
+    /**
+     * Registers a type binder. A type binder registered earlier for the same type is replaced.
+     * @param type the type
+     * @param binder the type binder
+     * @param <T> the type
+     */
+    public static <T> void register(Class<T> type, TypeBinder<T> binder) {
+        REGISTERED_BINDERS.put(type, binder);
+        VERSION.incrementAndGet();
+    }
+
+    /**
+     * Removes the type binder registered for a type. Enums are stored by their name again.
+     * @param type the type
+     */
+    public static void unregister(Class<?> type) {
+        REGISTERED_BINDERS.remove(type);
+        VERSION.incrementAndGet();
+    }
+
+    /**
+     * Gets the type binder for a type.
+     * @param type the type
+     * @param <T> the type
+     * @return the type binder or null if no type binder exists for the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TypeBinder<T> get(Class<T> type) {
+        VersionedBinder versionedBinder = BINDERS.get(type);
+        if (versionedBinder.version != VERSION.get()) {
+            BINDERS.remove(type);
+            versionedBinder = BINDERS.get(type);
+        }
+        return (TypeBinder<T>) versionedBinder.binder;
+    }
+
+    /**
+     * Gets the type binder for a type.
+     * @param type the type
+     * @param <T> the type
+     * @return the type binder
+     * @throws SQLException if no type binder exists for the type
+     */
+    public static <T> TypeBinder<T> getRequired(Class<T> type) throws SQLException {
+        TypeBinder<T> binder = get(type);
+        if (binder == null) {
+            throw new SQLException("Value of type " + type + " is not supported.");
+        }
+        return binder;
+    }
+
+    /**
+     * Creates a type binder.
+     * @param sqlType the SQL type used to bind null values
+     * @param binder binds non-null values to a parameter
+     * @param labelReader reads a value from the column with a specified label
+     * @param indexReader reads a value from the column with a specified index
+     * @param <T> the type
+     * @return the type binder
+     */
+    public static <T> TypeBinder<T> of(int sqlType, Binder<T> binder, LabelReader<T> labelReader, IndexReader<T> indexReader) {
+        return new TypeBinder<T>() {
+            @Override
+            public int getSqlType() {
+                return sqlType;
+            }
+
+            @Override
+            public void bind(PreparedStatementWrapper statement, int index, T value) throws SQLException {
+                binder.bind(statement, index, value);
+            }
+
+            @Override
+            public T read(ResultSetWrapper resultSet, String columnLabel) throws SQLException {
+                return labelReader.read(resultSet, columnLabel);
+            }
+
+            @Override
+            public T read(ResultSetWrapper resultSet, int columnIndex) throws SQLException {
+                return indexReader.read(resultSet, columnIndex);
+            }
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static TypeBinder<?> createEnumBinder(Class enumClass) {
+        return of(Types.VARCHAR, (s, i, v) -> s.setString(i, ((Enum<?>) v).name()),
+                (r, c) -> r.getEnum(enumClass, c), (r, c) -> r.getEnum(enumClass, c));
+    }
+
+    private static LobSource readLobSource(ResultSetWrapper resultSet, Object column) throws SQLException {
+        throw new SQLException("LobSource values cannot be read. Use ResultSetWrapper.transferBinaryStream() instead.");
+    }
+
+    private static class VersionedBinder {
+
+        private final int version;
+        private final TypeBinder<?> binder;
+
+        private VersionedBinder(int version, TypeBinder<?> binder) {
+            this.version = version;
+            this.binder = binder;
+        }
+    }
+}
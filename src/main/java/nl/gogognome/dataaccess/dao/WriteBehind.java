@@ -0,0 +1,339 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.transaction.CompositeTransaction;
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.JdbcTransaction;
+import nl.gogognome.dataaccess.transaction.NestedTransactionListener;
+import nl.gogognome.dataaccess.transaction.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Write-behind buffer for the current transaction. When write-behind is enabled for the current transaction,
+ * creates, updates and deletes of {@link AbstractDomainClassDAO}s are not executed immediately. Instead they are queued
+ * per statement and executed as JDBC batches:
+ *
+ * <ul>
+ * <li>before a statement is executed that refers to a table for which statements are queued,
+ * <li>before the transaction is committed,
+ * <li>when the number of queued rows reaches the maximum.
+ * </ul>
+ *
+ * <p>Statements for the same table are executed in the order in which they were queued. Statements for different
+ * tables may be executed in a different order. If an update or delete does not find its record, a
+ * {@link NoRecordFoundException} is thrown when the queued statements are executed. If that happens during
+ * commit, the exception is thrown as the cause of a {@link nl.gogognome.dataaccess.DataAccessException} with the same
+ * message, which is exactly what {@link nl.gogognome.dataaccess.transaction.NewTransaction} throws if the statement
+ * fails without write-behind. Statements that are queued when a statement fails remain queued. The queued statements
+ * are discarded when the transaction is rolled back.
+ *
+ * <p>Some drivers report {@link Statement#SUCCESS_NO_INFO} instead of the number of modified rows of a batch. For these
+ * drivers, updates and deletes that must modify exactly one row are executed one by one, so that a missing record
+ * is still detected. The first batch executed with such a driver is rolled back to a savepoint and executed again
+ * one by one; if the driver does not support savepoints, the batch fails.
+ *
+ * <p>The queue is thread safe, so it can be used by threads that joined the transaction with
+ * {@link nl.gogognome.dataaccess.transaction.TransactionPropagation}.
+ */
+public class WriteBehind implements NestedTransactionListener {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(WriteBehind.class);
+
+    /** Indicates per statement class whether the driver reports the update counts of batches. */
+    private final static Map<Class<?>, Boolean> REPORTS_BATCH_UPDATE_COUNTS = new ConcurrentHashMap<>();
+
+    private final Transaction transaction;
+    private final int maxPendingRows;
+
+    private final List<PendingBatch> pendingBatches = new ArrayList<>();
+    private int nrPendingRows;
+
+    private WriteBehind(Transaction transaction, int maxPendingRows) {
+        this.transaction = transaction;
+        this.maxPendingRows = maxPendingRows;
+    }
+
+    /**
+     * Enables write-behind for the current transaction with a maximum of 1000 queued rows.
+     */
+    public static void enable() {
+        enable(1000);
+    }
+
+    /**
+     * Enables write-behind for the current transaction.
+     * @param maxPendingRows the maximum number of queued rows. When this number is reached, the queued rows are executed.
+     * @throws IllegalStateException if the current transaction does not support write-behind
+     */
+    public static void enable(int maxPendingRows) {
+        CompositeTransaction transaction = getCurrentCompositeTransaction();
+        if (transaction == null) {
+            throw new IllegalStateException("Write-behind is only supported for a CompositeTransaction");
+        }
+        if (transaction.getResource(WriteBehind.class) == null) {
+            WriteBehind writeBehind = new WriteBehind(transaction, maxPendingRows);
+            transaction.bindResource(WriteBehind.class, writeBehind);
+            transaction.beforeCommit(writeBehind::flush);
+            transaction.afterRollback(writeBehind::discard);
+        }
+    }
+
+    /**
+     * @return true if write-behind is enabled for the current transaction; false otherwise
+     */
+    public static boolean isEnabled() {
+        return getForCurrentTransaction() != null;
+    }
+
+    /**
+     * Executes all queued statements of the current transaction.
+     * @throws SQLException if a problem occurs
+     */
+    public static void flushCurrentTransaction() throws SQLException {
+        WriteBehind writeBehind = getForCurrentTransaction();
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    static WriteBehind getForCurrentTransaction() {
+        CompositeTransaction transaction = getCurrentCompositeTransaction();
+        return transaction != null ? transaction.getResource(WriteBehind.class) : null;
+    }
+
+    private static CompositeTransaction getCurrentCompositeTransaction() {
+        if (!CurrentTransaction.hasTransaction()) {
+            return null;
+        }
+        Transaction transaction = CurrentTransaction.get();
+        return transaction instanceof CompositeTransaction ? (CompositeTransaction) transaction : null;
+    }
+
+    /**
+     * Executes the queued statements if the statement that is about to be executed refers to a table
+     * for which statements are queued.
+     * @param query the statement that is about to be executed
+     * @throws SQLException if a problem occurs
+     */
+    static void flushBeforeStatement(String query) throws SQLException {
+        WriteBehind writeBehind = getForCurrentTransaction();
+        if (writeBehind != null && writeBehind.refersToPendingTable(query)) {
+            writeBehind.flush();
+        }
+    }
+
+    private synchronized boolean refersToPendingTable(String query) {
+        for (PendingBatch batch : pendingBatches) {
+            if (batch.tablePattern.matcher(query).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues a statement.
+     * @param connectionParameters the connection parameters of the DAO
+     * @param tableName the table modified by the statement
+     * @param sql the statement
+     * @param parameters the parameters of the statement in order of the question marks in the statement
+     * @param expectOneRow true if the statement must modify exactly one row
+     * @param description describes the record for the message of the {@link NoRecordFoundException}
+     * @throws SQLException if queued statements had to be executed and a problem occurred
+     */
+    synchronized void queue(Object[] connectionParameters, String tableName, String sql, List<NameValuePair> parameters,
+               boolean expectOneRow, String description) throws SQLException {
+        PendingBatch batch = findBatchToAppendTo(connectionParameters, tableName, sql);
+        if (batch == null) {
+            batch = new PendingBatch(connectionParameters, tableName, sql, expectOneRow);
+            pendingBatches.add(batch);
+        }
+        batch.rows.add(parameters);
+        batch.descriptions.add(description);
+        nrPendingRows++;
+
+        if (nrPendingRows >= maxPendingRows) {
+            flush();
+        }
+    }
+
+    /**
+     * Finds the batch with the same statement, starting at the last batch. A batch for another statement
+     * on the same table ends the search, so that statements on the same table keep their order.
+     */
+    private PendingBatch findBatchToAppendTo(Object[] connectionParameters, String tableName, String sql) {
+        for (int i = pendingBatches.size() - 1; i >= 0; i--) {
+            PendingBatch batch = pendingBatches.get(i);
+            if (batch.sql.equals(sql) && Arrays.equals(batch.connectionParameters, connectionParameters)) {
+                return batch;
+            }
+            if (batch.tableName.equalsIgnoreCase(tableName)) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Executes all queued statements. A batch is removed from the queue just before it is executed, so if a batch
+     * fails, the batches after it remain queued until they are executed by the next flush or discarded by a rollback.
+     * @throws SQLException if a problem occurs
+     */
+    public synchronized void flush() throws SQLException {
+        while (!pendingBatches.isEmpty()) {
+            PendingBatch batch = pendingBatches.remove(0);
+            nrPendingRows -= batch.rows.size();
+            batch.execute(((JdbcTransaction) transaction));
+        }
+    }
+
+    /**
+     * Executes the queued statements, so that a rollback of the nested transaction does not undo them.
+     * @throws SQLException if a problem occurs
+     */
+    @Override
+    public void beforeNestedTransaction() throws SQLException {
+        flush();
+    }
+
+    /**
+     * Discards the statements that were queued by the nested transaction. The queue was empty when the nested
+     * transaction started.
+     */
+    @Override
+    public void afterNestedTransactionRollback() {
+        discard();
+    }
+
+    private synchronized void discard() {
+        pendingBatches.clear();
+        nrPendingRows = 0;
+    }
+
+    private static class PendingBatch {
+        private final Object[] connectionParameters;
+        private final String tableName;
+        private final Pattern tablePattern;
+        private final String sql;
+        private final boolean expectOneRow;
+        private final List<List<NameValuePair>> rows = new ArrayList<>();
+        private final List<String> descriptions = new ArrayList<>();
+
+        PendingBatch(Object[] connectionParameters, String tableName, String sql, boolean expectOneRow) {
+            this.connectionParameters = connectionParameters;
+            this.tableName = tableName;
+            this.tablePattern = Pattern.compile("\\b" + Pattern.quote(tableName) + "\\b", Pattern.CASE_INSENSITIVE);
+            this.sql = sql;
+            this.expectOneRow = expectOneRow;
+        }
+
+        void execute(JdbcTransaction transaction) throws SQLException {
+            Connection connection = transaction.getConnection(connectionParameters);
+            try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(connection, sql)) {
+                if (!expectOneRow) {
+                    executeBatch(statement);
+                    return;
+                }
+
+                Class<?> statementClass = statement.getWrappedStatementClass();
+                Boolean reportsUpdateCounts = REPORTS_BATCH_UPDATE_COUNTS.get(statementClass);
+                if (Boolean.FALSE.equals(reportsUpdateCounts)) {
+                    executeRowByRow(statement);
+                    return;
+                }
+
+                Savepoint savepoint = reportsUpdateCounts == null ? setSavepoint(connection) : null;
+                int[] updateCounts = executeBatch(statement);
+                if (!containsNoInfo(updateCounts)) {
+                    REPORTS_BATCH_UPDATE_COUNTS.putIfAbsent(statementClass, Boolean.TRUE);
+                    releaseSavepoint(connection, savepoint);
+                    checkUpdateCounts(updateCounts);
+                    return;
+                }
+
+                if (REPORTS_BATCH_UPDATE_COUNTS.put(statementClass, Boolean.FALSE) != Boolean.FALSE) {
+                    LOGGER.info("{} does not report update counts of batches; statements that must modify one row "
+                            + "are executed one by one", statementClass.getName());
+                }
+                if (savepoint == null) {
+                    throw new SQLException("The driver did not report the update counts of the batch for table " + tableName
+                            + ", so it could not be verified that each record was found");
+                }
+                connection.rollback(savepoint);
+                executeRowByRow(statement);
+            }
+        }
+
+        private int[] executeBatch(PreparedStatementWrapper statement) throws SQLException {
+            for (List<NameValuePair> row : rows) {
+                setParameters(statement, row);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        }
+
+        private void executeRowByRow(PreparedStatementWrapper statement) throws SQLException {
+            for (int i = 0; i < rows.size(); i++) {
+                setParameters(statement, rows.get(i));
+                if (statement.executeUpdate() != 1) {
+                    throw new NoRecordFoundException("Table " + tableName + " has no record with id " + descriptions.get(i));
+                }
+            }
+        }
+
+        private void setParameters(PreparedStatementWrapper statement, List<NameValuePair> row) throws SQLException {
+            int index = 1;
+            for (NameValuePair nvp : row) {
+                DAOUtil.setStatementValue(statement, index, nvp.getType(), nvp.getValue());
+                index++;
+            }
+        }
+
+        private void checkUpdateCounts(int[] updateCounts) throws NoRecordFoundException {
+            for (int i = 0; i < updateCounts.length; i++) {
+                if (updateCounts[i] != 1) {
+                    throw new NoRecordFoundException("Table " + tableName + " has no record with id " + descriptions.get(i));
+                }
+            }
+        }
+
+        private static boolean containsNoInfo(int[] updateCounts) {
+            for (int updateCount : updateCounts) {
+                if (updateCount == Statement.SUCCESS_NO_INFO) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static Savepoint setSavepoint(Connection connection) throws SQLException {
+            try {
+                return connection.setSavepoint();
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                return null;
+            }
+        }
+
+        private static void releaseSavepoint(Connection connection, Savepoint savepoint) {
+            if (savepoint != null) {
+                try {
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    // ignore; the savepoint will be released when the transaction ends
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package nl.gogognome.dataaccess.migrations;
+
+import nl.gogognome.dataaccess.dao.AbstractTimePartitionedDAO;
+import nl.gogognome.dataaccess.dao.StatementSettings;
+
+import java.time.LocalDateTime;
+
+/**
+ * Migration that creates the partition tables of an {@link AbstractTimePartitionedDAO} for the current period
+ * and a number of upcoming periods. Subclasses must have a constructor with a single long parameter (the id
+ * of the migration), so that they can be listed in a migrations file:
+ *
+ * <pre>
+ * public class CreateEventPartitions extends CreatePartitionsMigration {
+ *
+ *     public CreateEventPartitions(long id) {
+ *         super(id, 3);
+ *     }
+ *
+ *     protected AbstractTimePartitionedDAO&lt;?&gt; createDAO(Object... connectionParameters) {
+ *         return new EventDAO(connectionParameters);
+ *     }
+ * }
+ * </pre>
+ *
+ * <p>A migration is applied only once. Call {@link AbstractTimePartitionedDAO#createPartitions(LocalDateTime, int)}
+ * regularly, for example from a scheduled job, to keep creating partition tables for upcoming periods.
+ */
+public abstract class CreatePartitionsMigration implements Migration {
+
+    private final long id;
+    private final int nrUpcomingPeriods;
+
+    /**
+     * Constructor.
+     * @param id the id of the migration
+     * @param nrUpcomingPeriods the number of periods after the current period for which partition tables are created
+     */
+    protected CreatePartitionsMigration(long id, int nrUpcomingPeriods) {
+        this.id = id;
+        this.nrUpcomingPeriods = nrUpcomingPeriods;
+    }
+
+    @Override
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public void applyChanges(Object... connectionParameters) throws Exception {
+        createDAO(connectionParameters).createPartitions(LocalDateTime.now(StatementSettings.zoneId), nrUpcomingPeriods + 1);
+    }
+
+    /**
+     * Creates the DAO of the partitioned table.
+     * @param connectionParameters the connection parameters of the migration
+     * @return the DAO
+     */
+    protected abstract AbstractTimePartitionedDAO<?> createDAO(Object... connectionParameters);
+}
@@ -0,0 +1,524 @@
+package nl.gogognome.dataaccess.pool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Lightweight connection pool. Wrap the data source of a database in a pool and register the pool
+ * instead of the data source:
+ * <pre>
+ *     CompositeDatasourceTransaction.registerDataSource("mydb", new ConnectionPool(dataSource).withMaxSize(20));
+ * </pre>
+ *
+ * <p>Borrowing a connection does not take a lock. A semaphore limits the number of connections in use. A thread
+ * first tries the connection it used last (thread affinity), then scans the shared list of connections for an
+ * idle one using compare-and-set, and creates a new connection if the maximum size has not been reached.
+ * Thread affinity is skipped for virtual threads, as these are typically used only once.
+ *
+ * <p>A daemon thread closes connections that have been idle longer than the idle timeout, while keeping at least
+ * the minimum number of connections. Connections that have been idle for longer than the validation interval are
+ * validated with {@link Connection#isValid(int)} before they are handed out.
+ *
+ * <p>The pool caches auto-commit, transaction isolation, read-only and schema of its connections and restores them
+ * when a connection is returned. Transactions that are neither committed nor rolled back are rolled back then.
+ */
+public class ConnectionPool implements DataSource, AutoCloseable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(ConnectionPool.class);
+
+    private final static MethodHandle IS_VIRTUAL = findIsVirtualMethod();
+
+    private final DataSource dataSource;
+
+    private int minSize = 0;
+    private int maxSize = 10;
+    private long idleTimeoutMillis = 10 * 60 * 1000;
+    private long maxWaitMillis = 30 * 1000;
+    private long validationIntervalMillis = 1000;
+    private int validationTimeoutSeconds = 5;
+    private boolean threadAffinity = true;
+    private Boolean defaultAutoCommit;
+    private Integer defaultTransactionIsolation;
+
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nrConnections = new AtomicInteger();
+    private Semaphore permits = new Semaphore(maxSize);
+    private final ThreadLocal<WeakReference<PoolEntry>> lastUsedEntry = new ThreadLocal<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private ScheduledExecutorService housekeeper;
+
+    private final LongAdder nrBorrows = new LongAdder();
+    private final LongAdder nrAffinityHits = new LongAdder();
+    private final LongAdder nrCreatedConnections = new LongAdder();
+    private final LongAdder nrEvictedConnections = new LongAdder();
+    private final LongAdder nrValidationFailures = new LongAdder();
+    private final LongAdder nrTimeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final LongAdder nrSkippedStateChanges = new LongAdder();
+
+    public ConnectionPool(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @param minSize the number of connections that is kept open, even if they are idle. Default 0.
+     * @return this pool
+     */
+    public ConnectionPool withMinSize(int minSize) {
+        checkNotStarted();
+        if (minSize < 0) {
+            throw new IllegalArgumentException("Minimum size must not be negative");
+        }
+        this.minSize = minSize;
+        return this;
+    }
+
+    /**
+     * @param maxSize the maximum number of connections. Default 10.
+     * @return this pool
+     */
+    public ConnectionPool withMaxSize(int maxSize) {
+        checkNotStarted();
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Maximum size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        permits = new Semaphore(maxSize);
+        return this;
+    }
+
+    /**
+     * @param idleTimeoutMillis the time after which an idle connection is closed. Use 0 to never close idle connections.
+     *                          Default 10 minutes.
+     * @return this pool
+     */
+    public ConnectionPool withIdleTimeout(long idleTimeoutMillis) {
+        checkNotStarted();
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param maxWaitMillis the maximum time to wait for a connection if all connections are in use. Default 30 seconds.
+     * @return this pool
+     */
+    public ConnectionPool withMaxWait(long maxWaitMillis) {
+        checkNotStarted();
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     * @param validationIntervalMillis connections that have been idle for longer than this are validated before
+     *                                 they are handed out. Default 1 second.
+     * @param validationTimeoutSeconds the timeout passed to {@link Connection#isValid(int)}. Default 5 seconds.
+     * @return this pool
+     */
+    public ConnectionPool withValidation(long validationIntervalMillis, int validationTimeoutSeconds) {
+        checkNotStarted();
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        return this;
+    }
+
+    /**
+     * @param threadAffinity indicates whether a platform thread first tries to borrow the connection it used last. Default true.
+     * @return this pool
+     */
+    public ConnectionPool withThreadAffinity(boolean threadAffinity) {
+        checkNotStarted();
+        this.threadAffinity = threadAffinity;
+        return this;
+    }
+
+    /**
+     * Sets the auto-commit mode of new connections. Configure the mode that the users of the pool use, so that
+     * it does not have to be changed each time a connection is borrowed. For use with
+     * {@link nl.gogognome.dataaccess.transaction.CompositeDatasourceTransaction} specify false.
+     * By default the driver's default is kept.
+     * @param autoCommit the auto-commit mode
+     * @return this pool
+     */
+    public ConnectionPool withDefaultAutoCommit(boolean autoCommit) {
+        checkNotStarted();
+        this.defaultAutoCommit = autoCommit;
+        return this;
+    }
+
+    /**
+     * Sets the transaction isolation of new connections. By default the driver's default is kept.
+     * @param transactionIsolation the transaction isolation (see {@link Connection#setTransactionIsolation(int)})
+     * @return this pool
+     */
+    public ConnectionPool withDefaultTransactionIsolation(int transactionIsolation) {
+        checkNotStarted();
+        this.defaultTransactionIsolation = transactionIsolation;
+        return this;
+    }
+
+    private void checkNotStarted() {
+        if (started.get()) {
+            throw new IllegalStateException("The pool cannot be configured after the first connection has been borrowed");
+        }
+    }
+
+    private void ensureStarted() throws SQLException {
+        if (started.get()) {
+            return;
+        }
+        // Validated before the pool is marked as started, so that the configuration can still be corrected.
+        if (minSize > maxSize) {
+            throw new SQLException("The minimum size " + minSize + " exceeds the maximum size " + maxSize);
+        }
+        if (started.compareAndSet(false, true)) {
+            if (idleTimeoutMillis > 0 || minSize > 0) {
+                long intervalMillis = idleTimeoutMillis > 0 ? Math.max(1000, Math.min(idleTimeoutMillis / 2, 30 * 1000)) : 30 * 1000;
+                housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ConnectionPool housekeeper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                housekeeper.scheduleWithFixedDelay(this::houseKeeping, 0, intervalMillis, MILLISECONDS);
+            }
+        }
+    }
+
+    private void houseKeeping() {
+        try {
+            evictIdleConnections();
+            fillToMinimumSize();
+        } catch (Exception e) {
+            LOGGER.warn("Housekeeping of connection pool failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been closed");
+        }
+        ensureStarted();
+
+        long startNanos = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, MILLISECONDS)) {
+                nrTimeouts.increment();
+                throw new SQLTransientConnectionException("No connection available within " + maxWaitMillis + " ms; "
+                        + getActiveConnections() + " connections are in use");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+        totalWaitNanos.add(System.nanoTime() - startNanos);
+
+        try {
+            PoolEntry entry = borrow();
+            nrBorrows.increment();
+            return new PooledConnection(this, entry);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PoolEntry borrow() throws SQLException {
+        if (useThreadAffinity()) {
+            WeakReference<PoolEntry> reference = lastUsedEntry.get();
+            PoolEntry entry = reference != null ? reference.get() : null;
+            if (entry != null && entry.compareAndSetState(PoolEntry.IDLE, PoolEntry.IN_USE) && isUsable(entry)) {
+                nrAffinityHits.increment();
+                return entry;
+            }
+        }
+
+        // Holding a permit guarantees that an idle connection exists or that a new connection may be created.
+        // Spinning is only needed while another thread is returning or evicting a connection.
+        while (true) {
+            for (PoolEntry entry : entries) {
+                if (entry.compareAndSetState(PoolEntry.IDLE, PoolEntry.IN_USE) && isUsable(entry)) {
+                    return entry;
+                }
+            }
+            PoolEntry entry = createEntry(maxSize);
+            if (entry != null) {
+                return entry;
+            }
+            Thread.yield();
+        }
+    }
+
+    private boolean isUsable(PoolEntry entry) {
+        if (System.nanoTime() - entry.getLastReturnedNanos() < MILLISECONDS.toNanos(validationIntervalMillis)) {
+            return true;
+        }
+        try {
+            if (entry.getConnection().isValid(validationTimeoutSeconds)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            LOGGER.debug("Validation of connection failed: " + e.getMessage(), e);
+        }
+        nrValidationFailures.increment();
+        remove(entry);
+        return false;
+    }
+
+    /**
+     * Creates a new connection if less than the specified number of connections exist.
+     * @return the entry for the new connection (in use) or null if the limit has been reached
+     */
+    private PoolEntry createEntry(int limit) throws SQLException {
+        int current;
+        do {
+            current = nrConnections.get();
+            if (current >= limit) {
+                return null;
+            }
+        } while (!nrConnections.compareAndSet(current, current + 1));
+
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            PoolEntry entry = new PoolEntry(connection, nrSkippedStateChanges);
+            entry.initialize(defaultAutoCommit, defaultTransactionIsolation);
+            entries.add(entry);
+            nrCreatedConnections.increment();
+            return entry;
+        } catch (SQLException | RuntimeException e) {
+            nrConnections.decrementAndGet();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            throw e;
+        }
+    }
+
+    void release(PoolEntry entry) {
+        try {
+            if (closed || entry.getConnection().isClosed()) {
+                remove(entry);
+            } else {
+                entry.reset();
+                entry.setLastReturnedNanos(System.nanoTime());
+                if (useThreadAffinity()) {
+                    lastUsedEntry.set(new WeakReference<>(entry));
+                }
+                entry.setState(PoolEntry.IDLE);
+            }
+        } catch (SQLException e) {
+            remove(entry);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void remove(PoolEntry entry) {
+        entry.setState(PoolEntry.REMOVED);
+        if (entries.remove(entry)) {
+            nrConnections.decrementAndGet();
+        }
+        try {
+            entry.getConnection().close();
+        } catch (SQLException e) {
+            LOGGER.debug("Ignored exception while closing connection: " + e.getMessage(), e);
+        }
+    }
+
+    /* visible for testing */ void evictIdleConnections() {
+        if (idleTimeoutMillis <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (PoolEntry entry : entries) {
+            if (nrConnections.get() <= minSize) {
+                return;
+            }
+            if (now - entry.getLastReturnedNanos() > MILLISECONDS.toNanos(idleTimeoutMillis)
+                    && entry.compareAndSetState(PoolEntry.IDLE, PoolEntry.REMOVED)) {
+                remove(entry);
+                nrEvictedConnections.increment();
+            }
+        }
+    }
+
+    /* visible for testing */ void fillToMinimumSize() throws SQLException {
+        while (!closed) {
+            PoolEntry entry = createEntry(minSize);
+            if (entry == null) {
+                return;
+            }
+            entry.setState(PoolEntry.IDLE);
+        }
+    }
+
+    private boolean useThreadAffinity() {
+        return threadAffinity && !isVirtual(Thread.currentThread());
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    private static MethodHandle findIsVirtualMethod() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Closes the pool. Idle connections are closed immediately; connections in use are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        for (PoolEntry entry : entries) {
+            if (entry.compareAndSetState(PoolEntry.IDLE, PoolEntry.REMOVED)) {
+                remove(entry);
+            }
+        }
+    }
+
+    public int getTotalConnections() {
+        return nrConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return countEntries(PoolEntry.IDLE);
+    }
+
+    public int getActiveConnections() {
+        return countEntries(PoolEntry.IN_USE);
+    }
+
+    private int countEntries(int state) {
+        int count = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getNrThreadsAwaitingConnection() {
+        return permits.getQueueLength();
+    }
+
+    public long getNrBorrows() {
+        return nrBorrows.sum();
+    }
+
+    /**
+     * @return the number of borrows that returned the connection that the thread used last
+     */
+    public long getNrAffinityHits() {
+        return nrAffinityHits.sum();
+    }
+
+    public long getNrCreatedConnections() {
+        return nrCreatedConnections.sum();
+    }
+
+    public long getNrEvictedConnections() {
+        return nrEvictedConnections.sum();
+    }
+
+    public long getNrValidationFailures() {
+        return nrValidationFailures.sum();
+    }
+
+    public long getNrTimeouts() {
+        return nrTimeouts.sum();
+    }
+
+    /**
+     * @return the number of times that auto-commit, transaction isolation, read-only or schema were set to the
+     *         value they already had, without a call to the driver
+     */
+    public long getNrSkippedStateChanges() {
+        return nrSkippedStateChanges.sum();
+    }
+
+    public long getTotalWaitTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("A connection pool does not support connections for other users");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+}
@@ -0,0 +1,226 @@
+package nl.gogognome.dataaccess.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A physical connection managed by a {@link ConnectionPool}. The state is changed with compare-and-set,
+ * so an idle entry is borrowed by exactly one thread without locking.
+ *
+ * <p>The entry keeps track of the auto-commit, transaction isolation, read-only and schema settings of the
+ * connection, so that setting them to the value they already have does not cause a round trip to the database.
+ * When the connection is returned to the pool, the settings are restored to the values they had when
+ * the connection was created. Statements that the borrower left open are closed then as well.
+ */
+class PoolEntry {
+
+    final static int IDLE = 0;
+    final static int IN_USE = 1;
+    final static int REMOVED = 2;
+
+    private final Connection connection;
+    private final AtomicInteger state = new AtomicInteger(IN_USE);
+    private volatile long lastReturnedNanos;
+    private final LongAdder nrSkippedStateChanges;
+    private final List<Statement> statements = new ArrayList<>();
+
+    private boolean autoCommit;
+    private int transactionIsolation;
+    private boolean readOnly;
+    private String schema;
+    private boolean schemaKnown;
+    private boolean transactionPending;
+
+    private boolean defaultAutoCommit;
+    private int defaultTransactionIsolation;
+    private boolean defaultReadOnly;
+    private String defaultSchema;
+
+    PoolEntry(Connection connection, LongAdder nrSkippedStateChanges) {
+        this.connection = connection;
+        this.nrSkippedStateChanges = nrSkippedStateChanges;
+        lastReturnedNanos = System.nanoTime();
+    }
+
+    /**
+     * Reads the current settings of the connection and applies the configured defaults.
+     * @param configuredAutoCommit the auto-commit mode for connections of the pool or null to keep the driver default
+     * @param configuredTransactionIsolation the transaction isolation for connections of the pool or null to keep the driver default
+     * @throws SQLException if a problem occurs
+     */
+    void initialize(Boolean configuredAutoCommit, Integer configuredTransactionIsolation) throws SQLException {
+        autoCommit = connection.getAutoCommit();
+        transactionIsolation = connection.getTransactionIsolation();
+        readOnly = connection.isReadOnly();
+        try {
+            schema = connection.getSchema();
+            schemaKnown = true;
+        } catch (SQLException | AbstractMethodError e) {
+            schemaKnown = false;
+        }
+
+        if (configuredAutoCommit != null) {
+            setAutoCommit(configuredAutoCommit);
+        }
+        if (configuredTransactionIsolation != null) {
+            setTransactionIsolation(configuredTransactionIsolation);
+        }
+
+        defaultAutoCommit = autoCommit;
+        defaultTransactionIsolation = transactionIsolation;
+        defaultReadOnly = readOnly;
+        defaultSchema = schema;
+    }
+
+    /**
+     * Closes the statements that are still open, rolls back a pending transaction and restores the settings
+     * that the connection had after initialization.
+     * @throws SQLException if a problem occurs
+     */
+    void reset() throws SQLException {
+        closeStatements();
+        if (transactionPending && !autoCommit) {
+            connection.rollback();
+        }
+        transactionPending = false;
+        if (transactionIsolation != defaultTransactionIsolation) {
+            setTransactionIsolation(defaultTransactionIsolation);
+        }
+        if (readOnly != defaultReadOnly) {
+            setReadOnly(defaultReadOnly);
+        }
+        if (schemaKnown && !Objects.equals(schema, defaultSchema)) {
+            setSchema(defaultSchema);
+        }
+        if (autoCommit != defaultAutoCommit) {
+            setAutoCommit(defaultAutoCommit);
+        }
+    }
+
+    /**
+     * Registers a statement created by the borrower of the connection, so that it is closed when the connection
+     * is returned to the pool. Statements that the borrower closed already are dropped regularly, so that
+     * a borrower that creates many statements does not keep all of them in memory.
+     * @param statement the statement
+     */
+    void addStatement(Statement statement) {
+        if (!statements.isEmpty() && statements.size() % 32 == 0) {
+            statements.removeIf(PoolEntry::isClosed);
+        }
+        statements.add(statement);
+    }
+
+    private static boolean isClosed(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void closeStatements() throws SQLException {
+        SQLException exception = null;
+        for (Statement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        statements.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    boolean getAutoCommit() {
+        return autoCommit;
+    }
+
+    void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (this.autoCommit == autoCommit) {
+            nrSkippedStateChanges.increment();
+            return;
+        }
+        connection.setAutoCommit(autoCommit);
+        this.autoCommit = autoCommit;
+        transactionPending = false;
+    }
+
+    int getTransactionIsolation() {
+        return transactionIsolation;
+    }
+
+    void setTransactionIsolation(int transactionIsolation) throws SQLException {
+        if (this.transactionIsolation == transactionIsolation) {
+            nrSkippedStateChanges.increment();
+            return;
+        }
+        connection.setTransactionIsolation(transactionIsolation);
+        this.transactionIsolation = transactionIsolation;
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    void setReadOnly(boolean readOnly) throws SQLException {
+        if (this.readOnly == readOnly) {
+            nrSkippedStateChanges.increment();
+            return;
+        }
+        connection.setReadOnly(readOnly);
+        this.readOnly = readOnly;
+    }
+
+    String getSchema() throws SQLException {
+        return schemaKnown ? schema : connection.getSchema();
+    }
+
+    void setSchema(String schema) throws SQLException {
+        if (schemaKnown && Objects.equals(this.schema, schema)) {
+            nrSkippedStateChanges.increment();
+            return;
+        }
+        connection.setSchema(schema);
+        this.schema = schema;
+    }
+
+    void setTransactionPending(boolean transactionPending) {
+        this.transactionPending = transactionPending;
+    }
+
+    boolean compareAndSetState(int expectedState, int newState) {
+        return state.compareAndSet(expectedState, newState);
+    }
+
+    int getState() {
+        return state.get();
+    }
+
+    void setState(int newState) {
+        state.set(newState);
+    }
+
+    long getLastReturnedNanos() {
+        return lastReturnedNanos;
+    }
+
+    void setLastReturnedNanos(long lastReturnedNanos) {
+        this.lastReturnedNanos = lastReturnedNanos;
+    }
+}
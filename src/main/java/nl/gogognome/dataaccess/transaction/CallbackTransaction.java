@@ -0,0 +1,56 @@
+package nl.gogognome.dataaccess.transaction;
+
+/**
+ * A transaction on which callbacks can be registered that are executed around its completion.
+ * Use {@link CurrentTransaction#getWithCallbacks()} to get the current transaction as a CallbackTransaction.
+ */
+public interface CallbackTransaction extends Transaction {
+
+    /**
+     * Registers an action that is executed each time before this transaction is committed. If the action fails,
+     * the transaction is not committed and the exception is thrown by {@link #commit()}. The caller must then
+     * roll back the transaction, as {@link CurrentTransaction#close(boolean)} does.
+     * @param action the action
+     */
+    void beforeCommit(RunnableWithoutReturnValue action);
+
+    /**
+     * Registers an action that is executed each time after this transaction has been committed successfully.
+     * Use it for work that must only happen if the changes are stored, like invalidating caches or publishing events.
+     * A failing action does not undo the commit; its exception is logged.
+     * @param action the action
+     * @param async if true the action is executed by {@link TransactionSettings#callbackExecutor}, so that it does
+     *              not delay the release of the connections
+     */
+    void afterCommit(RunnableWithoutReturnValue action, boolean async);
+
+    /**
+     * Registers an action that is executed synchronously each time after this transaction has been committed successfully.
+     * @param action the action
+     */
+    default void afterCommit(RunnableWithoutReturnValue action) {
+        afterCommit(action, false);
+    }
+
+    /**
+     * Registers an action that is executed each time after this transaction has been rolled back.
+     * @param action the action
+     */
+    void afterRollback(RunnableWithoutReturnValue action);
+
+    /**
+     * Registers an action that is executed when this transaction is closed, after its connections have been closed.
+     * The action is told whether the transaction was committed. A failing action is logged.
+     * @param action the action
+     * @param async if true the action is executed by {@link TransactionSettings#callbackExecutor}
+     */
+    void afterCompletion(TransactionCompletionAction action, boolean async);
+
+    /**
+     * Registers an action that is executed synchronously when this transaction is closed.
+     * @param action the action
+     */
+    default void afterCompletion(TransactionCompletionAction action) {
+        afterCompletion(action, false);
+    }
+}
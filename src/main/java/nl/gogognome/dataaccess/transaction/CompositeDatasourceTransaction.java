@@ -5,21 +5,113 @@ import nl.gogognome.dataaccess.DataAccessException;
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
 
 public class CompositeDatasourceTransaction extends CompositeTransaction implements JdbcTransaction {
 
     private final Map<String, Connection> nameToConnection = new HashMap<>(4);
+    private final boolean readOnly;
+
+    private final static DataSourceRegistry DATA_SOURCE_REGISTRY = new DataSourceRegistry();
+    private final static Map<String, Replicas> NAME_TO_REPLICAS = new ConcurrentHashMap<>();
+    private final static Map<String, ConcurrencyLimiter> NAME_TO_CONCURRENCY_LIMITER = new ConcurrentHashMap<>();
+    private final static Map<Connection, ConcurrencyLimiter> CONNECTION_TO_CONCURRENCY_LIMITER = new ConcurrentHashMap<>();
 
-    private final static Map<String, DataSource> NAME_TO_DATA_SOURCE = new HashMap<>();
+    public CompositeDatasourceTransaction() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * @param readOnly true if the connections of this transaction must be read-only. Read-only connections are
+     *                 obtained from a replica if replicas have been registered for the data source.
+     */
+    public CompositeDatasourceTransaction(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
 
     public static DataSource getDataSource(String database) throws DataAccessException {
-        return NAME_TO_DATA_SOURCE.get(database);
+        return DATA_SOURCE_REGISTRY.get(database);
     }
 
+    /**
+     * Registers a data source. A data source that was registered before under the same name is replaced:
+     * transactions keep the connections they got from it, but new connections come from the new data source.
+     * This method can be called while transactions are running.
+     * @param name the name of the data source
+     * @param dataSource the data source
+     */
     static public void registerDataSource(String name, DataSource dataSource) {
-        NAME_TO_DATA_SOURCE.put(name, dataSource);
+        DATA_SOURCE_REGISTRY.register(name, dataSource);
+    }
+
+    /**
+     * Replaces a data source, for example after a fail-over. Transactions keep the connections they got from the
+     * old data source, but new connections come from the new data source. When the last connection from the old
+     * data source has been closed, the old data source is closed if it implements {@link AutoCloseable}.
+     * @param name the name of the data source
+     * @param dataSource the new data source
+     * @return a future that is completed when the old data source has been drained
+     */
+    static public CompletableFuture<Void> replaceDataSource(String name, DataSource dataSource) {
+        return DATA_SOURCE_REGISTRY.replace(name, dataSource);
+    }
+
+    /**
+     * Registers replicas of a data source. Read-only transactions get connections for the data source
+     * from one of the replicas; other transactions keep using the data source itself.
+     * @param name the name of the data source
+     * @param selector selects the replica for each connection
+     * @param replicas the replicas
+     */
+    static public void registerReplicas(String name, ReplicaSelector selector, DataSource... replicas) {
+        if (replicas.length == 0) {
+            NAME_TO_REPLICAS.remove(name);
+        } else {
+            NAME_TO_REPLICAS.put(name, new Replicas(selector, unmodifiableList(new ArrayList<>(asList(replicas)))));
+        }
+    }
+
+    /**
+     * Registers a limiter for the number of connections of a data source that are used at the same time.
+     * The limit also applies to connections obtained from replicas of the data source.
+     * @param name the name of the data source
+     * @param limiter the limiter or null to remove the limiter
+     */
+    static public void registerConcurrencyLimiter(String name, ConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            NAME_TO_CONCURRENCY_LIMITER.remove(name);
+        } else {
+            NAME_TO_CONCURRENCY_LIMITER.put(name, limiter);
+        }
+    }
+
+    public static ConcurrencyLimiter getConcurrencyLimiter(String name) {
+        return NAME_TO_CONCURRENCY_LIMITER.get(name);
+    }
+
+    /**
+     * Gets the limiter that limits the connections of the data source of a connection, so that the latency
+     * of statements executed on the connection can be reported to it.
+     * @param connection a connection obtained from a transaction
+     * @return the limiter or null if the data source of the connection has no limiter
+     */
+    public static ConcurrencyLimiter getConcurrencyLimiter(Connection connection) {
+        return CONNECTION_TO_CONCURRENCY_LIMITER.get(connection);
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
     }
 
     @Override
@@ -40,7 +132,10 @@ public class CompositeDatasourceTransaction extends CompositeTransaction impleme
     }
 
     /**
-     * Gets a connection to the database.
+     * Gets a connection to the database. This method is thread safe because tasks that join this
+     * transaction from other threads (see {@link TransactionPropagation}) may request connections concurrently.
+     * Waiting for a permit of the {@link ConcurrencyLimiter} or for a connection of the data source does not
+     * block other threads that use connections this transaction already has.
      *
      * @param datasourceName
      *            Name of the datasource
@@ -48,28 +143,210 @@ public class CompositeDatasourceTransaction extends CompositeTransaction impleme
      * @throws DataAccessException
      */
     public Connection getConnection(String datasourceName) throws DataAccessException {
-        Connection connection = nameToConnection.get(datasourceName);
-        if (connection != null) {
-            return connection;
+        synchronized (this) {
+            Connection connection = nameToConnection.get(datasourceName);
+            if (connection != null) {
+                return connection;
+            }
         }
 
+        ConcurrencyLimiter limiter = NAME_TO_CONCURRENCY_LIMITER.get(datasourceName);
+        ConcurrencyLimiter.Permit permit = null;
+        Replicas replicas = null;
+        DataSource replica = null;
+        DataSourceRegistry.Registration registration = null;
+        Connection connection;
         try {
-            connection = getDataSource(datasourceName).getConnection();
-        } catch (SQLException e) {
+            permit = limiter != null ? limiter.acquire() : null;
+            replicas = readOnly ? NAME_TO_REPLICAS.get(datasourceName) : null;
+            replica = replicas != null ? replicas.selector.select(replicas.dataSources) : null;
+            if (replica != null) {
+                connection = replica.getConnection();
+            } else {
+                registration = DATA_SOURCE_REGISTRY.acquire(datasourceName);
+                if (registration == null) {
+                    throw new DataAccessException("No data source has been registered with the name " + datasourceName);
+                }
+                connection = registration.getDataSource().getConnection();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (replica != null) {
+                replicas.selector.released(replica);
+            }
+            if (registration != null) {
+                registration.release();
+            }
+            if (permit != null) {
+                limiter.release(permit);
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
             throw new DataAccessException("Failed to get connection from data source " + datasourceName, e);
         }
 
-        nameToConnection.put(datasourceName, connection);
-        addTransaction(new ConnectionTransaction(connection));
-
+        ReleasingConnectionTransaction transaction = new ReleasingConnectionTransaction(connection, replica != null || readOnly,
+                limiter, permit, replica != null ? replicas.selector : null, replica, registration);
         try {
+            if (readOnly && !connection.isReadOnly()) {
+                connection.setReadOnly(true);
+            }
             if (connection.getTransactionIsolation() != Connection.TRANSACTION_READ_COMMITTED) {
                 connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
             }
-            connection.setAutoCommit(false);
+            if (connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+            }
         } catch (SQLException e) {
-            throw new DataAccessException("Failed to configure the connection for data source " + datasourceName, e);
+            DataAccessException dataAccessException = new DataAccessException("Failed to configure the connection for data source " + datasourceName, e);
+            closeUnusedConnection(transaction, dataAccessException);
+            throw dataAccessException;
+        }
+
+        synchronized (this) {
+            Connection existingConnection = nameToConnection.get(datasourceName);
+            if (existingConnection == null) {
+                nameToConnection.put(datasourceName, connection);
+                if (limiter != null) {
+                    CONNECTION_TO_CONCURRENCY_LIMITER.put(connection, limiter);
+                }
+                TransactionWatchdog.connectionObtained(this, datasourceName);
+                addTransaction(transaction);
+                return connection;
+            }
+            connection = existingConnection;
         }
+        // another thread of this transaction obtained a connection for the data source in the meantime
+        closeUnusedConnection(transaction, null);
         return connection;
     }
-}
\ No newline at end of file
+
+    private static void closeUnusedConnection(ReleasingConnectionTransaction transaction, Exception exception) {
+        try {
+            transaction.close();
+        } catch (DataAccessException e) {
+            if (exception != null) {
+                exception.addSuppressed(e);
+            }
+        }
+    }
+
+    /**
+     * Sets a savepoint on each connection that has been obtained by this transaction.
+     * @return the savepoints per data source name or null if the driver of one of the connections does not
+     *         support savepoints; in that case no savepoints are set
+     * @throws DataAccessException if a savepoint could not be set
+     */
+    synchronized Map<String, Savepoint> setSavepoints() throws DataAccessException {
+        Map<String, Savepoint> savepoints = new HashMap<>(nameToConnection.size() * 2);
+        for (Map.Entry<String, Connection> entry : nameToConnection.entrySet()) {
+            try {
+                savepoints.put(entry.getKey(), entry.getValue().setSavepoint());
+            } catch (SQLFeatureNotSupportedException | AbstractMethodError e) {
+                releaseSavepoints(savepoints);
+                return null;
+            } catch (SQLException e) {
+                releaseSavepoints(savepoints);
+                throw new DataAccessException("Failed to set savepoint for data source " + entry.getKey(), e);
+            }
+        }
+        return savepoints;
+    }
+
+    /**
+     * Releases savepoints that were set by {@link #setSavepoints()}. Drivers that do not support releasing
+     * savepoints release them at the end of the transaction.
+     * @param savepoints the savepoints per data source name
+     */
+    synchronized void releaseSavepoints(Map<String, Savepoint> savepoints) {
+        for (Map.Entry<String, Savepoint> entry : savepoints.entrySet()) {
+            try {
+                nameToConnection.get(entry.getKey()).releaseSavepoint(entry.getValue());
+            } catch (SQLException e) {
+                // ignore; the savepoint will be released when the transaction ends
+            }
+        }
+    }
+
+    /**
+     * Rolls back the work done after {@link #setSavepoints()} was called. Connections that were obtained after that
+     * are rolled back completely.
+     * @param savepoints the savepoints per data source name
+     * @throws DataAccessException if a problem occurs
+     */
+    synchronized void rollbackToSavepoints(Map<String, Savepoint> savepoints) throws DataAccessException {
+        DataAccessException dataAccessException = null;
+        for (Map.Entry<String, Connection> entry : nameToConnection.entrySet()) {
+            try {
+                Savepoint savepoint = savepoints.get(entry.getKey());
+                if (savepoint != null) {
+                    entry.getValue().rollback(savepoint);
+                } else {
+                    entry.getValue().rollback();
+                }
+            } catch (SQLException e) {
+                dataAccessException = new DataAccessException("Failed to roll back to savepoint for data source " + entry.getKey(), e);
+            }
+        }
+        if (dataAccessException != null) {
+            throw dataAccessException;
+        }
+    }
+
+    private static class Replicas {
+
+        private final ReplicaSelector selector;
+        private final List<DataSource> dataSources;
+
+        private Replicas(ReplicaSelector selector, List<DataSource> dataSources) {
+            this.selector = selector;
+            this.dataSources = dataSources;
+        }
+    }
+
+    /**
+     * Connection transaction that, after closing the connection, releases the permit of the concurrency limiter,
+     * notifies the replica selector and releases the registration of the data source.
+     */
+    private static class ReleasingConnectionTransaction extends ConnectionTransaction {
+
+        private final Connection connection;
+        private final ConcurrencyLimiter limiter;
+        private final ConcurrencyLimiter.Permit permit;
+        private final ReplicaSelector selector;
+        private final DataSource replica;
+        private final DataSourceRegistry.Registration registration;
+
+        private ReleasingConnectionTransaction(Connection connection, boolean readOnly, ConcurrencyLimiter limiter,
+                                               ConcurrencyLimiter.Permit permit, ReplicaSelector selector, DataSource replica,
+                                               DataSourceRegistry.Registration registration) {
+            super(connection, readOnly);
+            this.connection = connection;
+            this.limiter = limiter;
+            this.permit = permit;
+            this.selector = selector;
+            this.replica = replica;
+            this.registration = registration;
+        }
+
+        @Override
+        public void close() throws DataAccessException {
+            if (permit != null) {
+                CONNECTION_TO_CONCURRENCY_LIMITER.remove(connection, limiter);
+            }
+            try {
+                super.close();
+            } finally {
+                if (replica != null) {
+                    selector.released(replica);
+                }
+                if (registration != null) {
+                    registration.release();
+                }
+                if (permit != null) {
+                    limiter.release(permit);
+                }
+            }
+        }
+    }
+}
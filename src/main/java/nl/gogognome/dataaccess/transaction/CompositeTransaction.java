@@ -5,10 +5,21 @@ import nl.gogognome.dataaccess.util.CreationStack;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
-public class CompositeTransaction implements Transaction {
+public class CompositeTransaction implements CallbackTransaction {
 
-    protected List<Transaction> wrappedTransactions = new ArrayList<>();
+    protected List<Transaction> wrappedTransactions = new CopyOnWriteArrayList<>();
+
+    private final Map<Object, Object> resources = new ConcurrentHashMap<>();
+    private final TransactionCallbacks callbacks = new TransactionCallbacks();
 
     private CreationStack creationStack;
 
@@ -22,33 +33,80 @@ public class CompositeTransaction implements Transaction {
         wrappedTransactions.add(transaction);
     }
 
-    public void commit() throws DataAccessException {
-        DataAccessException dataAccessException = null;
-        for (Transaction t : wrappedTransactions) {
-            try {
-                t.commit();
-            } catch (DataAccessException e) {
-                dataAccessException = e;
-            } catch (Exception e) {
-                dataAccessException = new DataAccessException("Committing transaction failed: " + e.getMessage(), e);
+    /**
+     * Gets a resource that is bound to this transaction.
+     * @param key the key of the resource
+     * @param <T> the type of the resource
+     * @return the resource or null if no resource is bound for the key
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getResource(Object key) {
+        return (T) resources.get(key);
+    }
+
+    /**
+     * Binds a resource to this transaction. The resource is discarded when the transaction is closed.
+     * Resources can be bound and retrieved by threads that joined this transaction.
+     * @param key the key of the resource
+     * @param resource the resource; must not be null
+     */
+    public void bindResource(Object key, Object resource) {
+        resources.put(key, resource);
+    }
+
+    /**
+     * @return the bound resources that implement {@link NestedTransactionListener}
+     */
+    List<NestedTransactionListener> getNestedTransactionListeners() {
+        List<NestedTransactionListener> listeners = new ArrayList<>();
+        for (Object resource : resources.values()) {
+            if (resource instanceof NestedTransactionListener) {
+                listeners.add((NestedTransactionListener) resource);
             }
         }
+        return listeners;
+    }
 
+    @Override
+    public void beforeCommit(RunnableWithoutReturnValue action) {
+        callbacks.beforeCommit(action);
+    }
+
+    @Override
+    public void afterCommit(RunnableWithoutReturnValue action, boolean async) {
+        callbacks.afterCommit(action, async);
+    }
+
+    @Override
+    public void afterRollback(RunnableWithoutReturnValue action) {
+        callbacks.afterRollback(action);
+    }
+
+    @Override
+    public void afterCompletion(TransactionCompletionAction action, boolean async) {
+        callbacks.afterCompletion(action, async);
+    }
+
+    public void commit() throws DataAccessException {
+        try {
+            callbacks.runBeforeCommitActions();
+        } catch (Exception e) {
+            TransactionExceptionHandler.handleException(e);
+        }
+
+        DataAccessException dataAccessException = completeWrappedTransactions(Transaction::commit, "Committing transaction failed: ");
         if (dataAccessException != null) {
             throw dataAccessException;
         }
+        callbacks.runAfterCommitActions();
     }
 
     public void rollback() throws DataAccessException {
-        DataAccessException dataAccessException = null;
-        for (Transaction t : wrappedTransactions) {
-            try {
-                t.rollback();
-            } catch (DataAccessException e) {
-                dataAccessException = e;
-            } catch (Exception e) {
-                dataAccessException = new DataAccessException("Rolling back transaction failed: " + e.getMessage(), e);
-            }
+        DataAccessException dataAccessException = completeWrappedTransactions(Transaction::rollback, "Rolling back transaction failed: ");
+
+        DataAccessException callbackException = callbacks.runAfterRollbackActions();
+        if (dataAccessException == null) {
+            dataAccessException = callbackException;
         }
 
         if (dataAccessException != null) {
@@ -57,24 +115,85 @@ public class CompositeTransaction implements Transaction {
     }
 
     public void close() throws DataAccessException {
-        DataAccessException dataAccessException = null;
+        DataAccessException dataAccessException = completeWrappedTransactions(Transaction::close, "Failed closing transaction failed: ");
+
+        wrappedTransactions.clear();
+        resources.clear();
+        callbacks.runAfterCompletionActions();
+
+        if (dataAccessException != null) {
+            throw dataAccessException;
+        }
+    }
+
+    /**
+     * Commits, rolls back or closes the wrapped transactions. All wrapped transactions are handled, even if some fail.
+     * Without {@link TransactionSettings#completionExecutor} they are handled one after another and the exception
+     * of the last failing transaction is returned. With an executor they are handled concurrently and the exception
+     * of the first failing transaction in order of addition is returned, with the exceptions of the other failing
+     * transactions added as suppressed exceptions.
+     * @param action the action to perform on each wrapped transaction
+     * @param messagePrefix prefix of the message of the exception that wraps exceptions other than DataAccessException
+     * @return the exception or null if all wrapped transactions succeeded
+     */
+    private DataAccessException completeWrappedTransactions(TransactionAction action, String messagePrefix) {
+        Executor executor = TransactionSettings.completionExecutor;
+        if (executor == null || wrappedTransactions.size() < 2) {
+            DataAccessException dataAccessException = null;
+            for (Transaction t : wrappedTransactions) {
+                DataAccessException e = perform(action, t, messagePrefix);
+                if (e != null) {
+                    dataAccessException = e;
+                }
+            }
+            return dataAccessException;
+        }
+
+        List<CompletableFuture<DataAccessException>> futures = new ArrayList<>(wrappedTransactions.size());
         for (Transaction t : wrappedTransactions) {
+            CompletableFuture<DataAccessException> future;
             try {
-                t.close();
-            } catch (DataAccessException e) {
-                dataAccessException = e;
-            } catch (Exception e) {
-                dataAccessException = new DataAccessException("Failed closing transaction failed: " + e.getMessage(), e);
+                future = CompletableFuture.supplyAsync(() -> perform(action, t, messagePrefix), executor);
+            } catch (RejectedExecutionException e) {
+                future = CompletableFuture.completedFuture(perform(action, t, messagePrefix));
             }
+            futures.add(future);
         }
 
-        wrappedTransactions.clear();
+        DataAccessException dataAccessException = null;
+        for (CompletableFuture<DataAccessException> future : futures) {
+            DataAccessException e;
+            try {
+                e = future.join();
+            } catch (CompletionException | CancellationException completionException) {
+                e = new DataAccessException(messagePrefix + completionException.getMessage(), completionException);
+            }
+            if (e != null) {
+                if (dataAccessException == null) {
+                    dataAccessException = e;
+                } else {
+                    dataAccessException.addSuppressed(e);
+                }
+            }
+        }
+        return dataAccessException;
+    }
 
-        if (dataAccessException != null) {
-            throw dataAccessException;
+    private static DataAccessException perform(TransactionAction action, Transaction transaction, String messagePrefix) {
+        try {
+            action.perform(transaction);
+            return null;
+        } catch (DataAccessException e) {
+            return e;
+        } catch (Exception e) {
+            return new DataAccessException(messagePrefix + e.getMessage(), e);
         }
     }
 
+    private interface TransactionAction {
+        void perform(Transaction transaction) throws Exception;
+    }
+
     public String getCreationDetails() {
         if (creationStack != null) {
             return creationStack.toString();
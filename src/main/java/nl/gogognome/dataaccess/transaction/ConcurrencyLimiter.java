@@ -0,0 +1,252 @@
+package nl.gogognome.dataaccess.transaction;
+
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of connections of a data source that are in use at the same time. Register a limiter with
+ * {@link CompositeDatasourceTransaction#registerConcurrencyLimiter(String, ConcurrencyLimiter)}:
+ * <pre>
+ *     CompositeDatasourceTransaction.registerConcurrencyLimiter("bookstore",
+ *             new ConcurrencyLimiter(20).withMaxWait(2000).withAdaptiveLimit(4, 50, 100));
+ * </pre>
+ *
+ * <p>Threads that exceed the limit wait in first-in-first-out order. If a thread waits longer than the maximum
+ * wait time, getting the connection fails.
+ *
+ * <p>In adaptive mode the limit follows the additive-increase/multiplicative-decrease scheme, based on the
+ * latency of the statements that are executed with {@link nl.gogognome.dataaccess.dao.PreparedStatementWrapper}
+ * on connections of the data source. If the latency of a statement exceeds the target latency, the limit is decreased
+ * by 10% (at most once per target latency period). If the latency is below the target while all permits are in use,
+ * the limit is increased by 1. The limit stays between the minimum and maximum limit. The time that a transaction
+ * holds a connection does not influence the limit; it is available as a separate metric.
+ */
+public class ConcurrencyLimiter {
+
+    private final AdjustableSemaphore semaphore;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private long maxWaitMillis = 30 * 1000;
+    private boolean adaptive;
+    private int minLimit;
+    private int maxLimit;
+    private long targetLatencyNanos;
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(System.nanoTime());
+
+    private final LongAdder nrAcquired = new LongAdder();
+    private final LongAdder nrTimeouts = new LongAdder();
+    private final LongAdder totalHoldNanos = new LongAdder();
+    private final LongAdder nrStatements = new LongAdder();
+    private final LongAdder totalStatementNanos = new LongAdder();
+
+    /**
+     * Constructor.
+     * @param limit the maximum number of connections in use at the same time
+     */
+    public ConcurrencyLimiter(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("The limit must be at least 1");
+        }
+        this.limit = new AtomicInteger(limit);
+        this.semaphore = new AdjustableSemaphore(limit);
+    }
+
+    /**
+     * @param maxWaitMillis the maximum time to wait for a permit. Default 30 seconds.
+     * @return this limiter
+     */
+    public ConcurrencyLimiter withMaxWait(long maxWaitMillis) {
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     * Enables adaptive mode. The current limit is moved into the range of the minimum and maximum limit.
+     * @param minLimit the minimum limit
+     * @param maxLimit the maximum limit
+     * @param targetLatencyMillis the statement latency above which the limit is decreased
+     * @return this limiter
+     */
+    public ConcurrencyLimiter withAdaptiveLimit(int minLimit, int maxLimit, long targetLatencyMillis) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Invalid minimum limit " + minLimit + " and maximum limit " + maxLimit);
+        }
+        if (targetLatencyMillis < 0) {
+            throw new IllegalArgumentException("Target latency must not be negative");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatencyMillis);
+        while (true) {
+            int currentLimit = limit.get();
+            int newLimit = Math.max(minLimit, Math.min(maxLimit, currentLimit));
+            if (limit.compareAndSet(currentLimit, newLimit)) {
+                if (newLimit < currentLimit) {
+                    semaphore.reducePermits(currentLimit - newLimit);
+                } else if (newLimit > currentLimit) {
+                    semaphore.release(newLimit - currentLimit);
+                }
+                break;
+            }
+        }
+        this.adaptive = true;
+        return this;
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Waits for a permit.
+     * @return the permit, to be passed to {@link #release(Permit)}
+     * @throws SQLTransientConnectionException if no permit was available within the maximum wait time
+     */
+    Permit acquire() throws SQLTransientConnectionException {
+        try {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                nrTimeouts.increment();
+                throw new SQLTransientConnectionException("No connection available within " + maxWaitMillis
+                        + " ms; limit " + limit.get() + ", queue depth " + getQueueDepth());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        }
+        inFlight.incrementAndGet();
+        nrAcquired.increment();
+        return new Permit(System.nanoTime());
+    }
+
+    /**
+     * Returns a permit.
+     * @param permit the permit returned by {@link #acquire()}
+     */
+    void release(Permit permit) {
+        inFlight.decrementAndGet();
+        totalHoldNanos.add(System.nanoTime() - permit.acquiredNanos);
+        semaphore.release();
+    }
+
+    /**
+     * Records the latency of a statement executed on a connection of the data source. In adaptive mode
+     * the limit is adjusted.
+     * @param latencyNanos the execution time of the statement in nanoseconds
+     */
+    public void statementExecuted(long latencyNanos) {
+        nrStatements.increment();
+        totalStatementNanos.add(latencyNanos);
+        if (!adaptive) {
+            return;
+        }
+        if (latencyNanos > targetLatencyNanos) {
+            decreaseLimit();
+        } else if (inFlight.get() >= limit.get()) {
+            increaseLimit();
+        }
+    }
+
+    private void decreaseLimit() {
+        long now = System.nanoTime();
+        long lastDecrease = lastDecreaseNanos.get();
+        if (now - lastDecrease < targetLatencyNanos || !lastDecreaseNanos.compareAndSet(lastDecrease, now)) {
+            return;
+        }
+        while (true) {
+            int currentLimit = limit.get();
+            int newLimit = Math.max(minLimit, (int) (currentLimit * 0.9));
+            if (newLimit >= currentLimit) {
+                return;
+            }
+            if (limit.compareAndSet(currentLimit, newLimit)) {
+                semaphore.reducePermits(currentLimit - newLimit);
+                return;
+            }
+        }
+    }
+
+    private void increaseLimit() {
+        while (true) {
+            int currentLimit = limit.get();
+            if (currentLimit >= maxLimit) {
+                return;
+            }
+            if (limit.compareAndSet(currentLimit, currentLimit + 1)) {
+                semaphore.release();
+                return;
+            }
+        }
+    }
+
+    public int getLimit() {
+        return limit.get();
+    }
+
+    /**
+     * @return the number of connections that are in use
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return an estimate of the number of threads waiting for a permit
+     */
+    public int getQueueDepth() {
+        return semaphore.getQueueLength();
+    }
+
+    public long getNrAcquired() {
+        return nrAcquired.sum();
+    }
+
+    public long getNrTimeouts() {
+        return nrTimeouts.sum();
+    }
+
+    /**
+     * @return the total time that connections were held, from getting the connection until the end of the transaction
+     */
+    public long getTotalHoldTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalHoldNanos.sum());
+    }
+
+    /**
+     * @return the number of statements executed on connections of the data source
+     */
+    public long getNrStatements() {
+        return nrStatements.sum();
+    }
+
+    public long getTotalStatementTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalStatementNanos.sum());
+    }
+
+    static class Permit {
+
+        private final long acquiredNanos;
+
+        private Permit(long acquiredNanos) {
+            this.acquiredNanos = acquiredNanos;
+        }
+    }
+
+    private static class AdjustableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        private AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
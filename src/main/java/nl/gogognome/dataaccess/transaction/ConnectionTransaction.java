@@ -6,44 +6,104 @@ import nl.gogognome.dataaccess.util.CreationStack;
 import java.sql.Connection;
 import java.sql.SQLException;
 
-public class ConnectionTransaction implements Transaction {
+public class ConnectionTransaction implements CallbackTransaction {
 
     private final Connection connection;
+    private final boolean readOnly;
     private final CreationStack creationStack;
+    private final TransactionCallbacks callbacks = new TransactionCallbacks();
 
     public ConnectionTransaction(Connection connection) {
+        this(connection, false);
+    }
+
+    /**
+     * Constructor.
+     * @param connection the connection
+     * @param readOnly true if nothing has to be committed; a commit then only ends the database transaction
+     *                 by means of a rollback, which does not have to write anything
+     */
+    public ConnectionTransaction(Connection connection, boolean readOnly) {
         if (TransactionSettings.storeCreationStackForTransactions) {
             creationStack = new CreationStack();
         } else {
             creationStack = null;
         }
         this.connection = connection;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public void beforeCommit(RunnableWithoutReturnValue action) {
+        callbacks.beforeCommit(action);
+    }
+
+    @Override
+    public void afterCommit(RunnableWithoutReturnValue action, boolean async) {
+        callbacks.afterCommit(action, async);
+    }
+
+    @Override
+    public void afterRollback(RunnableWithoutReturnValue action) {
+        callbacks.afterRollback(action);
+    }
+
+    @Override
+    public void afterCompletion(TransactionCompletionAction action, boolean async) {
+        callbacks.afterCompletion(action, async);
     }
 
     @Override
     public void commit() throws DataAccessException {
         try {
-            connection.commit();
+            callbacks.runBeforeCommitActions();
+        } catch (Exception e) {
+            TransactionExceptionHandler.handleException(e);
+        }
+
+        try {
+            if (readOnly) {
+                connection.rollback();
+            } else {
+                connection.commit();
+            }
         } catch (SQLException e) {
             throw new DataAccessException("Failed to commit: " + e.getMessage(), e);
         }
+
+        callbacks.runAfterCommitActions();
     }
 
     @Override
     public void rollback() throws DataAccessException {
+        DataAccessException dataAccessException = null;
         try {
             connection.rollback();
         } catch (SQLException e) {
-            throw new DataAccessException("Failed to rollback: " + e.getMessage(), e);
+            dataAccessException = new DataAccessException("Failed to rollback: " + e.getMessage(), e);
+        }
+
+        DataAccessException callbackException = callbacks.runAfterRollbackActions();
+        if (dataAccessException == null) {
+            dataAccessException = callbackException;
+        }
+        if (dataAccessException != null) {
+            throw dataAccessException;
         }
     }
 
     @Override
     public void close() throws DataAccessException {
+        DataAccessException dataAccessException = null;
         try {
             connection.close();
         } catch (SQLException e) {
-            throw new DataAccessException("Failed to close: " + e.getMessage(), e);
+            dataAccessException = new DataAccessException("Failed to close: " + e.getMessage(), e);
+        }
+
+        callbacks.runAfterCompletionActions();
+        if (dataAccessException != null) {
+            throw dataAccessException;
         }
     }
 
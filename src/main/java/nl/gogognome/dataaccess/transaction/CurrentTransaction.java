@@ -4,80 +4,184 @@ import nl.gogognome.dataaccess.DataAccessException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.function.Supplier;
 
 public class CurrentTransaction {
 
-    private static final ThreadLocal<CurrentTransaction> threadLocal = new ThreadLocal<CurrentTransaction>() {
-        @Override
-        protected CurrentTransaction initialValue() {
-            return new CurrentTransaction();
-        }
-    };
-
     private static final Logger LOGGER = LoggerFactory.getLogger(CurrentTransaction.class);
 
     public static boolean detectOpenTransactions = false;
 
-    private CurrentTransaction() {}
+    /**
+     * Determines where the open transactions of the running thread or task are stored.
+     */
+    public static TransactionContextStrategy contextStrategy = new ThreadLocalTransactionContextStrategy();
 
-    private final List<Transaction> transactions = new ArrayList<>();
+    private CurrentTransaction() {}
 
-    /* visible for testing */ static CurrentTransaction getInstance() {
-        return threadLocal.get();
+    /* visible for testing */ static TransactionContext getContext() {
+        TransactionContext context = contextStrategy.get();
+        return context != null ? context : TransactionContext.EMPTY;
     }
 
     public static Supplier<Transaction> transactionCreator = CompositeDatasourceTransaction::new;
 
+    /**
+     * Creates the transactions that are started with {@link #createReadOnly()}.
+     */
+    public static Supplier<Transaction> readOnlyTransactionCreator = () -> new CompositeDatasourceTransaction(true);
+
     public static Transaction create() {
-        Transaction transaction = transactionCreator.get();
-        if (detectOpenTransactions && !getInstance().transactions.isEmpty()) {
-            LOGGER.warn("Previous transaction still open!");
-            getInstance().transactions.get(getInstance().transactions.size() - 1).getCreationDetails();
+        return push(transactionCreator.get());
+    }
+
+    /**
+     * Creates a read-only transaction. Its connections are read-only and may be obtained from replicas
+     * (see {@link CompositeDatasourceTransaction#registerReplicas(String, ReplicaSelector, javax.sql.DataSource...)}).
+     * @return the transaction
+     */
+    public static Transaction createReadOnly() {
+        return push(readOnlyTransactionCreator.get());
+    }
+
+    private static Transaction push(Transaction transaction) {
+        TransactionContext context = getContext();
+        if (detectOpenTransactions && !context.isEmpty()) {
+            LOGGER.warn("Previous transaction still open! It was created at:\n" + context.getTransaction().getCreationDetails());
         }
-        getInstance().transactions.add(transaction);
+        contextStrategy.set(context.push(transaction));
+        TransactionWatchdog.transactionCreated(transaction);
         return transaction;
     }
 
-    private void closeCurrentTransaction() throws DataAccessException {
-        int lastTransactionPoolIndex = transactions.size() - 1;
-        Transaction transaction = transactions.get(lastTransactionPoolIndex);
-        transactions.remove(lastTransactionPoolIndex);
-        transaction.close();
+    private static void closeCurrentTransaction() throws DataAccessException {
+        TransactionContext context = getContext();
+        Transaction transaction = context.getTransaction();
+        contextStrategy.set(context.pop());
+        try {
+            transaction.close();
+        } finally {
+            TransactionWatchdog.transactionClosed(transaction);
+        }
     }
 
     public static Transaction get() throws RuntimeException {
-        CurrentTransaction currentTransaction = getInstance();
-        try {
-            return currentTransaction.transactions.get(currentTransaction.transactions.size() - 1);
-        } catch (IndexOutOfBoundsException e) {
+        Transaction transaction = getContext().getTransaction();
+        if (transaction == null) {
             throw new IllegalStateException("Trying to get Transaction, but no Transaction has been created.");
         }
+        return transaction;
     }
 
+    /**
+     * Gets the current transaction to register callbacks on it.
+     * @return the current transaction
+     * @throws IllegalStateException if there is no current transaction or if it does not support callbacks
+     */
+    public static CallbackTransaction getWithCallbacks() {
+        Transaction transaction = get();
+        if (!(transaction instanceof CallbackTransaction)) {
+            throw new IllegalStateException(transaction.getClass().getSimpleName() + " does not support callbacks");
+        }
+        return (CallbackTransaction) transaction;
+    }
+
+    /**
+     * Commits or rolls back the current transaction and closes it. If the commit fails, the transaction is
+     * rolled back before it is closed.
+     * @param commit true to commit; false to roll back
+     * @throws DataAccessException if a problem occurs
+     */
     public static void close(boolean commit) throws DataAccessException {
         try {
             Transaction transaction = get();
             if (commit) {
-                transaction.commit();
+                try {
+                    transaction.commit();
+                } catch (DataAccessException e) {
+                    try {
+                        transaction.rollback();
+                    } catch (DataAccessException rollbackException) {
+                        e.addSuppressed(rollbackException);
+                    }
+                    throw e;
+                }
             } else {
                 transaction.rollback();
             }
         } finally {
-            getInstance().closeCurrentTransaction();
+            closeCurrentTransaction();
         }
     }
 
     public static boolean hasTransaction() {
-        return !getInstance().transactions.isEmpty();
+        return !getContext().isEmpty();
+    }
+
+    /**
+     * Captures the open transactions of the running thread or task, so that they can be used by another thread
+     * with {@link #runWith(TransactionContext, RunnableWithReturnValue)}.
+     * @return the captured context
+     */
+    public static TransactionContext capture() {
+        return getContext();
+    }
+
+    /**
+     * Runs code with the specified context as current context. Transactions that the code created but did not close
+     * are rolled back and closed. Afterwards the previous context is restored.
+     * @param context the context
+     * @param runnable the code to run
+     * @param <T> the type of the result
+     * @return the result of the runnable
+     * @throws Exception the exception thrown by the runnable
+     */
+    public static <T> T runWith(TransactionContext context, RunnableWithReturnValue<T> runnable) throws Exception {
+        TransactionContext previousContext = contextStrategy.get();
+        contextStrategy.set(context);
+        Exception exception = null;
+        try {
+            return runnable.run();
+        } catch (Exception e) {
+            exception = e;
+            throw e;
+        } finally {
+            try {
+                if (exception != null) {
+                    closeTransactionsCreatedAfter(context, exception);
+                } else {
+                    DataAccessException closeException = new DataAccessException("Failed to close transactions that were not closed");
+                    closeTransactionsCreatedAfter(context, closeException);
+                    if (closeException.getSuppressed().length > 0) {
+                        LOGGER.warn(closeException.getMessage(), closeException);
+                    }
+                }
+            } finally {
+                contextStrategy.set(previousContext);
+            }
+        }
+    }
+
+    /**
+     * Rolls back and closes transactions that were created after the specified context was captured and that
+     * have not been closed, for example because the code that created them did not close them in a finally block.
+     * @param context a context that was captured earlier in the same thread or task
+     * @param exception exceptions that occur while closing the transactions are added to this exception as suppressed exceptions
+     */
+    static void closeTransactionsCreatedAfter(TransactionContext context, Exception exception) {
+        while (getContext().getDepth() > context.getDepth()) {
+            try {
+                close(false);
+            } catch (RuntimeException e) {
+                exception.addSuppressed(e);
+            }
+        }
     }
 
     public static void logOpenTransactions() {
         LOGGER.info("Open connection pools (oldest first):");
-        for (Transaction transaction : getInstance().transactions) {
+        for (Transaction transaction : getContext().getTransactions()) {
             LOGGER.info("Next stack trace:" + transaction.getCreationDetails());
         }
     }
-}
\ No newline at end of file
+}
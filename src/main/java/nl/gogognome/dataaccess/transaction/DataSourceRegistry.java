@@ -0,0 +1,131 @@
+package nl.gogognome.dataaccess.transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registry of data sources by name. Looking up a data source does not take a lock. A registered data source
+ * can be replaced while transactions use it: transactions keep the connections they already have, while
+ * connections that are requested later come from the new data source. The replaced data source is drained:
+ * it is closed when the last connection obtained from it has been closed.
+ */
+class DataSourceRegistry {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(DataSourceRegistry.class);
+
+    private final ConcurrentMap<String, Registration> nameToRegistration = new ConcurrentHashMap<>();
+
+    DataSource get(String name) {
+        Registration registration = nameToRegistration.get(name);
+        return registration != null ? registration.dataSource : null;
+    }
+
+    /**
+     * Registers a data source. A data source that was registered under the same name is replaced,
+     * but not closed.
+     * @param name the name
+     * @param dataSource the data source
+     */
+    void register(String name, DataSource dataSource) {
+        Registration previousRegistration = nameToRegistration.put(name, new Registration(dataSource));
+        if (previousRegistration != null) {
+            previousRegistration.retire(false);
+        }
+    }
+
+    /**
+     * Replaces a data source. The replaced data source is closed, if it is {@link AutoCloseable},
+     * as soon as all connections obtained from it have been closed.
+     * @param name the name
+     * @param dataSource the new data source
+     * @return a future that is completed when the replaced data source has been drained, or immediately if there was none
+     */
+    CompletableFuture<Void> replace(String name, DataSource dataSource) {
+        Registration previousRegistration = nameToRegistration.put(name, new Registration(dataSource));
+        if (previousRegistration == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        previousRegistration.retire(true);
+        return previousRegistration.drained;
+    }
+
+    /**
+     * Acquires the data source that is currently registered under a name. The returned registration must be
+     * released when the connection obtained from it has been closed.
+     * @param name the name
+     * @return the registration or null if no data source has been registered under the name
+     */
+    Registration acquire(String name) {
+        while (true) {
+            Registration registration = nameToRegistration.get(name);
+            if (registration == null) {
+                return null;
+            }
+            if (registration.tryAcquire()) {
+                return registration;
+            }
+        }
+    }
+
+    static class Registration {
+
+        private final DataSource dataSource;
+        private volatile boolean closeWhenDrained;
+        private final AtomicInteger nrUsers = new AtomicInteger();
+        private final AtomicBoolean drainedFlag = new AtomicBoolean();
+        private final CompletableFuture<Void> drained = new CompletableFuture<>();
+        private volatile boolean retired;
+
+        private Registration(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        DataSource getDataSource() {
+            return dataSource;
+        }
+
+        private boolean tryAcquire() {
+            nrUsers.incrementAndGet();
+            if (retired) {
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        void release() {
+            if (nrUsers.decrementAndGet() == 0 && retired) {
+                onDrained();
+            }
+        }
+
+        private void retire(boolean closeWhenDrained) {
+            this.closeWhenDrained = closeWhenDrained;
+            retired = true;
+            if (nrUsers.get() == 0) {
+                onDrained();
+            }
+        }
+
+        private void onDrained() {
+            if (!drainedFlag.compareAndSet(false, true)) {
+                return;
+            }
+            if (closeWhenDrained && dataSource instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) dataSource).close();
+                } catch (Exception e) {
+                    LOGGER.warn("Ignored exception while closing replaced data source: " + e.getMessage(), e);
+                }
+            }
+            drained.complete(null);
+        }
+    }
+}
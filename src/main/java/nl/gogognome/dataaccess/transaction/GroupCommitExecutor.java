@@ -0,0 +1,286 @@
+package nl.gogognome.dataaccess.transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executes small units of work that are submitted concurrently in shared transactions, so that many units
+ * share one commit and thus one log flush of the database:
+ * <pre>
+ *     GroupCommitExecutor groupCommit = new GroupCommitExecutor().withMaxGroupSize(50).withMaxDelay(2);
+ *     ...
+ *     groupCommit.runs(() -&gt; eventDAO.create(event)).get();
+ * </pre>
+ *
+ * <p>A worker thread takes the first waiting unit and adds the units that arrive within the maximum delay,
+ * up to the maximum group size. The units of a group run one after another in one transaction. If all units
+ * succeed and the transaction is committed, the futures of the units are completed. If a unit fails or the commit
+ * fails, the transaction is rolled back and each unit of the group is run again in a transaction of its own,
+ * so that a failing unit does not cause other units to fail.
+ *
+ * <p>Units must therefore not depend on each other, must not have side effects outside the transaction and must
+ * not commit or close the transaction they run in. A unit waits at most the maximum delay before its group starts.
+ */
+public class GroupCommitExecutor implements AutoCloseable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(GroupCommitExecutor.class);
+
+    private final static AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
+
+    private int maxGroupSize = 100;
+    private long maxDelayMillis = 5;
+    private int nrThreads = 1;
+
+    private final BlockingQueue<Unit<?>> queue = new LinkedBlockingQueue<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final int instanceNumber = INSTANCE_COUNTER.incrementAndGet();
+    private volatile boolean closed;
+
+    private final LongAdder nrUnits = new LongAdder();
+    private final LongAdder nrGroups = new LongAdder();
+    private final LongAdder nrIndividuallyExecutedUnits = new LongAdder();
+
+    /**
+     * @param maxGroupSize the maximum number of units per transaction. Default 100.
+     * @return this executor
+     */
+    public GroupCommitExecutor withMaxGroupSize(int maxGroupSize) {
+        checkNotStarted();
+        if (maxGroupSize < 1) {
+            throw new IllegalArgumentException("maxGroupSize must be at least 1");
+        }
+        this.maxGroupSize = maxGroupSize;
+        return this;
+    }
+
+    /**
+     * @param maxDelayMillis the maximum time that is waited for more units after the first unit of a group has been
+     *                       taken. Default 5 milliseconds.
+     * @return this executor
+     */
+    public GroupCommitExecutor withMaxDelay(long maxDelayMillis) {
+        checkNotStarted();
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must not be negative");
+        }
+        this.maxDelayMillis = maxDelayMillis;
+        return this;
+    }
+
+    /**
+     * @param nrThreads the number of worker threads, each executing its own groups. Default 1.
+     * @return this executor
+     */
+    public GroupCommitExecutor withNrThreads(int nrThreads) {
+        checkNotStarted();
+        if (nrThreads < 1) {
+            throw new IllegalArgumentException("nrThreads must be at least 1");
+        }
+        this.nrThreads = nrThreads;
+        return this;
+    }
+
+    private void checkNotStarted() {
+        synchronized (workers) {
+            if (!workers.isEmpty()) {
+                throw new IllegalStateException("The executor cannot be configured after the first unit has been submitted");
+            }
+        }
+    }
+
+    private void ensureStarted() {
+        synchronized (workers) {
+            if (workers.isEmpty()) {
+                for (int i = 0; i < nrThreads; i++) {
+                    Thread worker = new Thread(this::processGroups, "group-commit-" + instanceNumber + "-" + (i + 1));
+                    worker.setDaemon(true);
+                    worker.start();
+                    workers.add(worker);
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits a unit of work.
+     * @param runnable the unit of work
+     * @return a future that is completed when the transaction of the unit has been committed, or completed
+     *         exceptionally if the unit failed
+     * @throws RejectedExecutionException if the executor has been closed
+     */
+    public CompletableFuture<Void> runs(RunnableWithoutReturnValue runnable) {
+        return returns(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Submits a unit of work.
+     * @param runnable the unit of work
+     * @param <T> the type of the result of the unit
+     * @return a future that is completed with the result of the unit when its transaction has been committed,
+     *         or completed exceptionally if the unit failed
+     * @throws RejectedExecutionException if the executor has been closed
+     */
+    public <T> CompletableFuture<T> returns(RunnableWithReturnValue<T> runnable) {
+        if (closed) {
+            throw new RejectedExecutionException("The group commit executor has been closed");
+        }
+        ensureStarted();
+        Unit<T> unit = new Unit<>(runnable);
+        queue.add(unit);
+        if (closed && queue.remove(unit)) {
+            // the executor was closed while the unit was added; the workers may have stopped already
+            throw new RejectedExecutionException("The group commit executor has been closed");
+        }
+        nrUnits.increment();
+        return unit.future;
+    }
+
+    /**
+     * Executes the units that have been submitted and stops the worker threads. Units that were added while
+     * the worker threads stopped are rejected: their futures are completed with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        List<Thread> threads;
+        synchronized (workers) {
+            threads = new ArrayList<>(workers);
+        }
+        for (Thread worker : threads) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        List<Unit<?>> leftOverUnits = new ArrayList<>();
+        queue.drainTo(leftOverUnits);
+        for (Unit<?> unit : leftOverUnits) {
+            unit.future.completeExceptionally(new RejectedExecutionException("The group commit executor has been closed"));
+        }
+    }
+
+    private void processGroups() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                Unit<?> firstUnit = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (firstUnit != null) {
+                    List<Unit<?>> group = collectGroup(firstUnit);
+                    try {
+                        execute(group);
+                    } catch (RuntimeException | Error e) {
+                        LOGGER.error("Group of " + group.size() + " units failed because of an unexpected exception: " + e.getMessage(), e);
+                        for (Unit<?> unit : group) {
+                            unit.future.completeExceptionally(e);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<Unit<?>> collectGroup(Unit<?> firstUnit) throws InterruptedException {
+        List<Unit<?>> group = new ArrayList<>(Math.min(maxGroupSize, 16));
+        group.add(firstUnit);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        while (group.size() < maxGroupSize) {
+            if (queue.drainTo(group, maxGroupSize - group.size()) > 0) {
+                continue;
+            }
+            long remainingNanos = deadline - System.nanoTime();
+            if (remainingNanos <= 0) {
+                break;
+            }
+            Unit<?> unit = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+            if (unit == null) {
+                break;
+            }
+            group.add(unit);
+        }
+        return group;
+    }
+
+    private void execute(List<Unit<?>> group) {
+        nrGroups.increment();
+        if (group.size() > 1) {
+            try {
+                NewTransaction.runs(() -> {
+                    for (Unit<?> unit : group) {
+                        unit.runInGroup();
+                    }
+                });
+                for (Unit<?> unit : group) {
+                    unit.complete();
+                }
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.debug("Group of " + group.size() + " units failed; the units are executed individually: " + e.getMessage());
+            }
+        }
+
+        for (Unit<?> unit : group) {
+            nrIndividuallyExecutedUnits.increment();
+            unit.runIndividually();
+        }
+    }
+
+    public long getNrUnits() {
+        return nrUnits.sum();
+    }
+
+    public long getNrGroups() {
+        return nrGroups.sum();
+    }
+
+    /**
+     * @return the number of units that were executed in a transaction of their own, because they formed a group
+     *         on their own or because their group failed
+     */
+    public long getNrIndividuallyExecutedUnits() {
+        return nrIndividuallyExecutedUnits.sum();
+    }
+
+    private static class Unit<T> {
+
+        private final RunnableWithReturnValue<T> runnable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+
+        private Unit(RunnableWithReturnValue<T> runnable) {
+            this.runnable = runnable;
+        }
+
+        private void runInGroup() throws Exception {
+            result = runnable.run();
+        }
+
+        private void complete() {
+            future.complete(result);
+        }
+
+        private void runIndividually() {
+            try {
+                future.complete(NewTransaction.returns(runnable));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
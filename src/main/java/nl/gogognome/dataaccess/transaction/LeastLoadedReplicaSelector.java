@@ -0,0 +1,48 @@
+package nl.gogognome.dataaccess.transaction;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the replica with the fewest connections that were selected by this selector and have not been closed yet.
+ * If several replicas are equally loaded, the first of them is selected.
+ */
+public class LeastLoadedReplicaSelector implements ReplicaSelector {
+
+    private final Map<DataSource, AtomicInteger> replicaToNrConnections = new ConcurrentHashMap<>();
+
+    @Override
+    public DataSource select(List<DataSource> replicas) {
+        DataSource selectedReplica = null;
+        AtomicInteger selectedNrConnections = null;
+        for (DataSource replica : replicas) {
+            AtomicInteger nrConnections = getNrConnections(replica);
+            if (selectedNrConnections == null || nrConnections.get() < selectedNrConnections.get()) {
+                selectedReplica = replica;
+                selectedNrConnections = nrConnections;
+            }
+        }
+        selectedNrConnections.incrementAndGet();
+        return selectedReplica;
+    }
+
+    @Override
+    public void released(DataSource replica) {
+        getNrConnections(replica).decrementAndGet();
+    }
+
+    /**
+     * @param replica a replica
+     * @return the number of connections of the replica that are in use
+     */
+    public int getNrConnectionsInUse(DataSource replica) {
+        return getNrConnections(replica).get();
+    }
+
+    private AtomicInteger getNrConnections(DataSource replica) {
+        return replicaToNrConnections.computeIfAbsent(replica, r -> new AtomicInteger());
+    }
+}
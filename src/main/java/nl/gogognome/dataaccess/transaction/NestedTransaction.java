@@ -0,0 +1,76 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+
+import java.sql.Savepoint;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs code in a nested transaction that uses the connections of the current transaction. Before the code runs,
+ * a savepoint is set on each connection of the current transaction. If the code throws an exception, the work
+ * done by the code is rolled back to the savepoints and the exception is rethrown; the current transaction
+ * can continue. If the code succeeds, the savepoints are released and the work is committed or rolled back
+ * together with the current transaction.
+ *
+ * <p>Resources of the current transaction that implement {@link NestedTransactionListener} are notified before
+ * the savepoints are set and after a rollback to the savepoints. This way statements queued by
+ * {@link nl.gogognome.dataaccess.dao.WriteBehind} before the nested transaction are executed before the savepoints
+ * are set, and statements queued by a failing nested transaction are discarded.
+ *
+ * <p>Contrary to {@link NewTransaction} no extra connections are needed and the code cannot block on rows that
+ * are locked by the current transaction.
+ *
+ * <p>If there is no current transaction, the current transaction does not support savepoints, or the driver of
+ * one of its connections does not support savepoints, the code runs in a new transaction as with
+ * {@link NewTransaction}.
+ */
+public class NestedTransaction {
+
+    private NestedTransaction() {
+    }
+
+    public static void runs(RunnableWithoutReturnValue runnable) throws DataAccessException {
+        returns(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    public static <T> T returns(RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        Transaction currentTransaction = CurrentTransaction.hasTransaction() ? CurrentTransaction.get() : null;
+        if (!(currentTransaction instanceof CompositeDatasourceTransaction)) {
+            return NewTransaction.returns(runnable);
+        }
+
+        CompositeDatasourceTransaction transaction = (CompositeDatasourceTransaction) currentTransaction;
+        List<NestedTransactionListener> listeners = transaction.getNestedTransactionListeners();
+        try {
+            for (NestedTransactionListener listener : listeners) {
+                listener.beforeNestedTransaction();
+            }
+        } catch (Exception e) {
+            TransactionExceptionHandler.handleException(e);
+        }
+        Map<String, Savepoint> savepoints = transaction.setSavepoints();
+        if (savepoints == null) {
+            return NewTransaction.returns(runnable);
+        }
+        T result = null;
+        try {
+            result = runnable.run();
+            transaction.releaseSavepoints(savepoints);
+        } catch (Exception e) {
+            try {
+                transaction.rollbackToSavepoints(savepoints);
+            } catch (DataAccessException rollbackException) {
+                e.addSuppressed(rollbackException);
+            }
+            for (NestedTransactionListener listener : listeners) {
+                listener.afterNestedTransactionRollback();
+            }
+            TransactionExceptionHandler.handleException(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,21 @@
+package nl.gogognome.dataaccess.transaction;
+
+/**
+ * A resource bound to a {@link CompositeTransaction} (see {@link CompositeTransaction#bindResource(Object, Object)})
+ * that must be notified when a {@link NestedTransaction} starts and when it is rolled back. For example,
+ * a resource that delays statements must execute them before the savepoints are set, so that a rollback
+ * of the nested transaction does not undo them.
+ */
+public interface NestedTransactionListener {
+
+    /**
+     * Called before the savepoints of a nested transaction are set.
+     * @throws Exception if a problem occurs. The nested transaction is not started.
+     */
+    void beforeNestedTransaction() throws Exception;
+
+    /**
+     * Called after a nested transaction has been rolled back to its savepoints.
+     */
+    void afterNestedTransactionRollback();
+}
@@ -2,6 +2,8 @@ package nl.gogognome.dataaccess.transaction;
 
 import nl.gogognome.dataaccess.DataAccessException;
 
+import java.util.function.Supplier;
+
 public abstract class NewTransaction {
 
     public static void runs(RunnableWithoutReturnValue runnable) throws DataAccessException {
@@ -12,10 +14,91 @@ public abstract class NewTransaction {
     }
 
     public static <T> T returns(RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        return returns(CurrentTransaction::create, runnable);
+    }
+
+    /**
+     * Runs code in a new read-only transaction. The connections of the transaction are read-only and are obtained
+     * from a replica if replicas have been registered for the data source. At the end nothing is committed.
+     * @param runnable the code
+     * @throws DataAccessException if a problem occurs
+     */
+    public static void runsReadOnly(RunnableWithoutReturnValue runnable) throws DataAccessException {
+        returnsReadOnly(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs code in a new read-only transaction. The connections of the transaction are read-only and are obtained
+     * from a replica if replicas have been registered for the data source. At the end nothing is committed.
+     * @param runnable the code
+     * @param <T> the type of the result
+     * @return the result of the code
+     * @throws DataAccessException if a problem occurs
+     */
+    public static <T> T returnsReadOnly(RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        return returns(CurrentTransaction::createReadOnly, runnable);
+    }
+
+    /**
+     * Runs code in a new transaction. If the transaction fails because of a deadlock or serialization failure,
+     * it is rolled back and the code is run again in a new transaction, as determined by the retry policy.
+     * The code must therefore not have side effects outside the transaction.
+     * @param retryPolicy the retry policy
+     * @param runnable the code
+     * @throws DataAccessException if a problem occurs that is not retryable or if all attempts failed
+     */
+    public static void runs(RetryPolicy retryPolicy, RunnableWithoutReturnValue runnable) throws DataAccessException {
+        returns(retryPolicy, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs code in a new transaction. If the transaction fails because of a deadlock or serialization failure,
+     * it is rolled back and the code is run again in a new transaction, as determined by the retry policy.
+     * The code must therefore not have side effects outside the transaction.
+     * @param retryPolicy the retry policy
+     * @param runnable the code
+     * @param <T> the type of the result
+     * @return the result of the code
+     * @throws DataAccessException if a problem occurs that is not retryable or if all attempts failed
+     */
+    public static <T> T returns(RetryPolicy retryPolicy, RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        TransactionContext initialContext = CurrentTransaction.capture();
+        for (int attempt = 1; ; attempt++) {
+            retryPolicy.recordAttempt(attempt);
+            try {
+                T result = returns(runnable);
+                retryPolicy.recordSuccess(attempt);
+                return result;
+            } catch (DataAccessException e) {
+                CurrentTransaction.closeTransactionsCreatedAfter(initialContext, e);
+                boolean retryable = retryPolicy.isRetryable(e);
+                if (!retryable || attempt >= retryPolicy.getMaxAttempts()) {
+                    retryPolicy.recordFailure(retryable);
+                    throw e;
+                }
+                try {
+                    Thread.sleep(retryPolicy.getBackoffMillis(attempt));
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    retryPolicy.recordFailure(false);
+                    e.addSuppressed(interruptedException);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static <T> T returns(Supplier<Transaction> transactionCreator, RunnableWithReturnValue<T> runnable) throws DataAccessException {
         T result = null;
         boolean commitOnClose = false;
         try {
-            CurrentTransaction.create();
+            transactionCreator.get();
             result = runnable.run();
             commitOnClose = true;
         } catch (Exception e) {
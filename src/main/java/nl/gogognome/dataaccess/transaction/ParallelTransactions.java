@@ -0,0 +1,196 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Processes a collection of items in parallel, using a bounded number of worker transactions:
+ * <pre>
+ *     List&lt;Balance&gt; balances = new ParallelTransactions().withParallelism(4).withChunkSize(10)
+ *             .map(accounts, account -&gt; balanceDAO.recompute(account));
+ * </pre>
+ *
+ * <p>The items are split in chunks. Each chunk is processed in a transaction of its own (see {@link NewTransaction})
+ * that is committed when all items of the chunk have been processed. A chunk size of 1 commits each item separately.
+ * At most {@link #withParallelism(int) parallelism} workers process chunks at the same time, each running its
+ * transactions one after another, so at most that many connections per data source are used.
+ *
+ * <p>When an item fails, its chunk is rolled back, no new items are started and chunks that are being processed
+ * are rolled back as well. When all workers have stopped, the first failure is thrown. Chunks that were committed
+ * before the failure stay committed.
+ */
+public class ParallelTransactions {
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int chunkSize = 1;
+    private ExecutorService executor;
+
+    /**
+     * Processes an item.
+     * @param <I> the type of the item
+     */
+    public interface ItemAction<I> {
+        void run(I item) throws Exception;
+    }
+
+    /**
+     * Processes an item and returns a result.
+     * @param <I> the type of the item
+     * @param <R> the type of the result
+     */
+    public interface ItemFunction<I, R> {
+        R apply(I item) throws Exception;
+    }
+
+    /**
+     * @param parallelism the maximum number of transactions that are open at the same time. Default the number of processors.
+     * @return this instance
+     */
+    public ParallelTransactions withParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * @param chunkSize the number of items that is processed per transaction. Default 1.
+     * @return this instance
+     */
+    public ParallelTransactions withChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be at least 1");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * @param executor the executor that runs the workers. It must be able to run the configured number of workers
+     *                 at the same time. By default a thread pool is created for each call and shut down afterwards.
+     * @return this instance
+     */
+    public ParallelTransactions withExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Processes items in parallel.
+     * @param items the items
+     * @param action the action that processes a single item
+     * @param <I> the type of the items
+     * @throws DataAccessException the first failure of an item
+     */
+    public <I> void forEach(Collection<? extends I> items, ItemAction<? super I> action) throws DataAccessException {
+        map(items, item -> {
+            action.run(item);
+            return null;
+        });
+    }
+
+    /**
+     * Processes items in parallel.
+     * @param items the items
+     * @param function the function that processes a single item
+     * @param <I> the type of the items
+     * @param <R> the type of the results
+     * @return the results in the order of the items
+     * @throws DataAccessException the first failure of an item
+     */
+    public <I, R> List<R> map(Collection<? extends I> items, ItemFunction<? super I, ? extends R> function) throws DataAccessException {
+        Object[] inputs = items.toArray();
+        Object[] results = new Object[inputs.length];
+        int nrChunks = (inputs.length + chunkSize - 1) / chunkSize;
+        int nrWorkers = Math.min(parallelism, nrChunks);
+        if (nrWorkers == 0) {
+            return new ArrayList<>();
+        }
+
+        AtomicInteger nextChunk = new AtomicInteger();
+        AtomicReference<Exception> firstFailure = new AtomicReference<>();
+        ExecutorService workerExecutor = executor != null ? executor : Executors.newFixedThreadPool(nrWorkers);
+        List<Future<Void>> workers = new ArrayList<>(nrWorkers);
+        try {
+            for (int i = 0; i < nrWorkers; i++) {
+                workers.add(workerExecutor.submit(() -> {
+                    processChunks(inputs, results, function, nextChunk, nrChunks, firstFailure);
+                    return null;
+                }));
+            }
+            waitForWorkers(workers, firstFailure);
+        } finally {
+            if (executor == null) {
+                workerExecutor.shutdownNow();
+            }
+        }
+
+        Exception failure = firstFailure.get();
+        if (failure != null) {
+            TransactionExceptionHandler.handleException(failure);
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> resultList = (List<R>) Arrays.asList(results);
+        return new ArrayList<>(resultList);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <I, R> void processChunks(Object[] inputs, Object[] results, ItemFunction<? super I, ? extends R> function,
+                                      AtomicInteger nextChunk, int nrChunks, AtomicReference<Exception> firstFailure) throws Exception {
+        CurrentTransaction.runWith(TransactionContext.EMPTY, () -> {
+            int chunk;
+            while (firstFailure.get() == null && (chunk = nextChunk.getAndIncrement()) < nrChunks) {
+                int start = chunk * chunkSize;
+                int end = Math.min(start + chunkSize, inputs.length);
+                Object[] chunkResults = new Object[end - start];
+                try {
+                    NewTransaction.runs(() -> {
+                        for (int index = start; index < end; index++) {
+                            if (firstFailure.get() != null) {
+                                throw new CancellationException("Cancelled because another item failed");
+                            }
+                            chunkResults[index - start] = function.apply((I) inputs[index]);
+                        }
+                    });
+                    System.arraycopy(chunkResults, 0, results, start, chunkResults.length);
+                } catch (DataAccessException e) {
+                    if (!(e.getCause() instanceof CancellationException)) {
+                        firstFailure.compareAndSet(null, e);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private void waitForWorkers(List<Future<Void>> workers, AtomicReference<Exception> firstFailure) {
+        for (Future<Void> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                firstFailure.compareAndSet(null, e);
+                for (Future<Void> w : workers) {
+                    w.cancel(true);
+                }
+                return;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                firstFailure.compareAndSet(null, cause instanceof Exception ? (Exception) cause : e);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package nl.gogognome.dataaccess.transaction;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Selects the replica from which a read-only transaction gets its connection.
+ * Implementations are used by many threads at the same time and must be thread safe.
+ */
+public interface ReplicaSelector {
+
+    /**
+     * Selects a replica.
+     * @param replicas the replicas; contains at least one replica
+     * @return the selected replica
+     */
+    DataSource select(List<DataSource> replicas);
+
+    /**
+     * Is called when the connection that was obtained from a selected replica has been closed.
+     * @param replica the replica
+     */
+    default void released(DataSource replica) {
+    }
+
+    static ReplicaSelector roundRobin() {
+        return new RoundRobinReplicaSelector();
+    }
+
+    static ReplicaSelector leastLoaded() {
+        return new LeastLoadedReplicaSelector();
+    }
+}
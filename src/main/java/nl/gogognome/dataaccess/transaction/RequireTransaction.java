@@ -3,6 +3,7 @@ package nl.gogognome.dataaccess.transaction;
 import nl.gogognome.dataaccess.DataAccessException;
 
 import java.sql.SQLException;
+import java.util.function.Supplier;
 
 public class RequireTransaction {
 
@@ -14,12 +15,41 @@ public class RequireTransaction {
     }
 
     public static <T> T returns(RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        return returns(CurrentTransaction::create, runnable);
+    }
+
+    /**
+     * Runs code in the current transaction or, if there is none, in a new read-only transaction
+     * (see {@link NewTransaction#runsReadOnly(RunnableWithoutReturnValue)}).
+     * @param runnable the code
+     * @throws DataAccessException if a problem occurs
+     */
+    public static void runsReadOnly(RunnableWithoutReturnValue runnable) throws DataAccessException {
+        returnsReadOnly(() -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs code in the current transaction or, if there is none, in a new read-only transaction
+     * (see {@link NewTransaction#returnsReadOnly(RunnableWithReturnValue)}).
+     * @param runnable the code
+     * @param <T> the type of the result
+     * @return the result of the code
+     * @throws DataAccessException if a problem occurs
+     */
+    public static <T> T returnsReadOnly(RunnableWithReturnValue<T> runnable) throws DataAccessException {
+        return returns(CurrentTransaction::createReadOnly, runnable);
+    }
+
+    private static <T> T returns(Supplier<Transaction> transactionCreator, RunnableWithReturnValue<T> runnable) throws DataAccessException {
         T result = null;
         boolean runInsideExistingTransaction = CurrentTransaction.hasTransaction();
         boolean commitOnClose = false;
         try {
             if (!runInsideExistingTransaction) {
-                CurrentTransaction.create();
+                transactionCreator.get();
             }
             result = runnable.run();
             commitOnClose = true;
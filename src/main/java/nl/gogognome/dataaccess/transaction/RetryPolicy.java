@@ -0,0 +1,192 @@
+package nl.gogognome.dataaccess.transaction;
+
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Arrays.asList;
+
+/**
+ * Determines whether and when a transaction that failed because of a deadlock or serialization failure is retried.
+ * Use it with {@link NewTransaction#runs(RetryPolicy, RunnableWithoutReturnValue)} and
+ * {@link NewTransaction#returns(RetryPolicy, RunnableWithReturnValue)}:
+ * <pre>
+ *     private final static RetryPolicy RETRY_POLICY = new RetryPolicy().withMaxAttempts(5);
+ *     ...
+ *     NewTransaction.runs(RETRY_POLICY, () -&gt; accountDAO.transfer(from, to, amount));
+ * </pre>
+ *
+ * <p>An exception is retryable if it or one of its causes is a {@link SQLTransactionRollbackException} or
+ * an SQLException with a retryable SQL state or vendor error code. Vendor error codes are matched regardless of
+ * the database that raised the exception, so a code that indicates a deadlock for one database may match an unrelated
+ * error of another database (for example Oracle's 60). If the application uses a database whose error codes overlap
+ * with the defaults, configure only the codes of that database with {@link #withRetryableErrorCodes(Integer...)}.
+ * Between attempts the thread sleeps for
+ * a random time between 0 and an exponentially growing maximum (full jitter), so that colliding transactions
+ * do not collide again.
+ *
+ * <p>A policy is thread safe and is typically shared. It counts the attempts and their outcomes.
+ */
+public class RetryPolicy {
+
+    /** SQL states of serialization failures and deadlocks (PostgreSQL, MySQL, SQL Server, H2). */
+    public final static Set<String> DEFAULT_RETRYABLE_SQL_STATES = Collections.unmodifiableSet(new HashSet<>(asList("40001", "40P01")));
+
+    /** Vendor codes of deadlocks and serialization failures (MySQL 1213, Oracle 60 and 8177, SQL Server 1205, H2 40001). */
+    public final static Set<Integer> DEFAULT_RETRYABLE_ERROR_CODES = Collections.unmodifiableSet(new HashSet<>(asList(1213, 60, 8177, 1205, 40001)));
+
+    private int maxAttempts = 3;
+    private long initialBackoffMillis = 10;
+    private long maxBackoffMillis = 1000;
+    private Set<String> retryableSqlStates = DEFAULT_RETRYABLE_SQL_STATES;
+    private Set<Integer> retryableErrorCodes = DEFAULT_RETRYABLE_ERROR_CODES;
+
+    private final LongAdder nrAttempts = new LongAdder();
+    private final LongAdder nrRetries = new LongAdder();
+    private final LongAdder nrSuccesses = new LongAdder();
+    private final LongAdder nrSuccessesAfterRetry = new LongAdder();
+    private final LongAdder nrFailures = new LongAdder();
+    private final LongAdder nrExhausted = new LongAdder();
+
+    /**
+     * @param maxAttempts the maximum number of attempts, including the first one. Default 3.
+     * @return this policy
+     */
+    public RetryPolicy withMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("The maximum number of attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * @param initialBackoffMillis the maximum wait time before the second attempt. It doubles for each next attempt. Default 10.
+     * @param maxBackoffMillis the upper bound of the maximum wait time. Default 1000.
+     * @return this policy
+     */
+    public RetryPolicy withBackoff(long initialBackoffMillis, long maxBackoffMillis) {
+        if (initialBackoffMillis < 0 || initialBackoffMillis > maxBackoffMillis) {
+            throw new IllegalArgumentException("Invalid initial backoff " + initialBackoffMillis + " and maximum backoff " + maxBackoffMillis);
+        }
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        return this;
+    }
+
+    /**
+     * @param sqlStates the SQL states that indicate a retryable failure. Replaces {@link #DEFAULT_RETRYABLE_SQL_STATES}.
+     * @return this policy
+     */
+    public RetryPolicy withRetryableSqlStates(String... sqlStates) {
+        this.retryableSqlStates = Collections.unmodifiableSet(new HashSet<>(asList(sqlStates)));
+        return this;
+    }
+
+    /**
+     * @param errorCodes the vendor error codes that indicate a retryable failure. Replaces {@link #DEFAULT_RETRYABLE_ERROR_CODES}.
+     * @return this policy
+     */
+    public RetryPolicy withRetryableErrorCodes(Integer... errorCodes) {
+        this.retryableErrorCodes = Collections.unmodifiableSet(new HashSet<>(asList(errorCodes)));
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Checks whether a failed attempt can be retried.
+     * @param throwable the exception that caused the attempt to fail
+     * @return true if the exception or one of its causes indicates a deadlock or serialization failure
+     */
+    public boolean isRetryable(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause() != t ? t.getCause() : null) {
+            if (t instanceof SQLException) {
+                for (SQLException e = (SQLException) t; e != null; e = e.getNextException()) {
+                    if (isRetryable(e)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isRetryable(SQLException e) {
+        return e instanceof SQLTransactionRollbackException
+                || (e.getSQLState() != null && retryableSqlStates.contains(e.getSQLState()))
+                || retryableErrorCodes.contains(e.getErrorCode());
+    }
+
+    /**
+     * Determines the time to wait before the next attempt.
+     * @param attempt the number of the attempt that failed, starting at 1
+     * @return the time in milliseconds
+     */
+    public long getBackoffMillis(int attempt) {
+        long bound = initialBackoffMillis;
+        for (int i = 1; i < attempt && bound < maxBackoffMillis; i++) {
+            bound *= 2;
+        }
+        bound = Math.min(bound, maxBackoffMillis);
+        return bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+    }
+
+    void recordAttempt(int attempt) {
+        nrAttempts.increment();
+        if (attempt > 1) {
+            nrRetries.increment();
+        }
+    }
+
+    void recordSuccess(int attempt) {
+        nrSuccesses.increment();
+        if (attempt > 1) {
+            nrSuccessesAfterRetry.increment();
+        }
+    }
+
+    void recordFailure(boolean retryable) {
+        nrFailures.increment();
+        if (retryable) {
+            nrExhausted.increment();
+        }
+    }
+
+    public long getNrAttempts() {
+        return nrAttempts.sum();
+    }
+
+    public long getNrRetries() {
+        return nrRetries.sum();
+    }
+
+    public long getNrSuccesses() {
+        return nrSuccesses.sum();
+    }
+
+    public long getNrSuccessesAfterRetry() {
+        return nrSuccessesAfterRetry.sum();
+    }
+
+    /**
+     * @return the number of transactions that failed in the end, either because of a non-retryable exception
+     *         or because all attempts failed
+     */
+    public long getNrFailures() {
+        return nrFailures.sum();
+    }
+
+    /**
+     * @return the number of transactions that failed because the maximum number of attempts was reached
+     */
+    public long getNrExhausted() {
+        return nrExhausted.sum();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.gogognome.dataaccess.transaction;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the replicas one after another.
+ */
+public class RoundRobinReplicaSelector implements ReplicaSelector {
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public DataSource select(List<DataSource> replicas) {
+        int index = counter.getAndIncrement() & Integer.MAX_VALUE;
+        return replicas.get(index % replicas.size());
+    }
+}
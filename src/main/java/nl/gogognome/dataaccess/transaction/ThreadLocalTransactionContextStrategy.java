@@ -0,0 +1,25 @@
+package nl.gogognome.dataaccess.transaction;
+
+/**
+ * Stores the {@link TransactionContext} in a thread local. The thread local entry is removed as soon as the
+ * last transaction of the thread is closed, so threads without open transactions, e.g. idle virtual threads,
+ * do not hold an entry.
+ */
+public class ThreadLocalTransactionContextStrategy implements TransactionContextStrategy {
+
+    private final ThreadLocal<TransactionContext> threadLocal = new ThreadLocal<>();
+
+    @Override
+    public TransactionContext get() {
+        return threadLocal.get();
+    }
+
+    @Override
+    public void set(TransactionContext context) {
+        if (context == null || context.isEmpty()) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(context);
+        }
+    }
+}
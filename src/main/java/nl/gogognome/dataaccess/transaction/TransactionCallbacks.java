@@ -0,0 +1,138 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The callbacks that are registered for a transaction. Callbacks of the same kind run in order of registration.
+ * Asynchronous callbacks are submitted to {@link TransactionSettings#callbackExecutor} in order of registration;
+ * whether they also run in that order depends on the executor.
+ *
+ * <p>Callbacks can be registered concurrently, because threads that joined the transaction (see
+ * {@link TransactionPropagation}) share its callbacks.
+ */
+class TransactionCallbacks {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(TransactionCallbacks.class);
+
+    private final List<RunnableWithoutReturnValue> beforeCommitActions = new CopyOnWriteArrayList<>();
+    private final List<Callback<RunnableWithoutReturnValue>> afterCommitActions = new CopyOnWriteArrayList<>();
+    private final List<RunnableWithoutReturnValue> afterRollbackActions = new CopyOnWriteArrayList<>();
+    private final List<Callback<TransactionCompletionAction>> afterCompletionActions = new CopyOnWriteArrayList<>();
+
+    private volatile boolean committed;
+
+    void beforeCommit(RunnableWithoutReturnValue action) {
+        beforeCommitActions.add(action);
+    }
+
+    void afterCommit(RunnableWithoutReturnValue action, boolean async) {
+        afterCommitActions.add(new Callback<>(action, async));
+    }
+
+    void afterRollback(RunnableWithoutReturnValue action) {
+        afterRollbackActions.add(action);
+    }
+
+    void afterCompletion(TransactionCompletionAction action, boolean async) {
+        afterCompletionActions.add(new Callback<>(action, async));
+    }
+
+    void runBeforeCommitActions() throws Exception {
+        for (RunnableWithoutReturnValue action : beforeCommitActions) {
+            action.run();
+        }
+    }
+
+    /**
+     * Runs the after commit actions. The transaction has been committed already, so failing actions are logged
+     * and do not prevent the other actions from running.
+     */
+    void runAfterCommitActions() {
+        committed = true;
+        for (Callback<RunnableWithoutReturnValue> callback : afterCommitActions) {
+            RunnableWithoutReturnValue action = callback.action;
+            logFailure(run(callback.async, action::run, "Action after commit failed: "));
+        }
+    }
+
+    /**
+     * Runs the after rollback actions. Failing actions do not prevent the other actions from running.
+     * @return the exception of the first action that failed or null if no action failed
+     */
+    DataAccessException runAfterRollbackActions() {
+        committed = false;
+        DataAccessException dataAccessException = null;
+        for (RunnableWithoutReturnValue action : afterRollbackActions) {
+            DataAccessException e = run(false, action, "Action after rollback failed: ");
+            if (dataAccessException == null) {
+                dataAccessException = e;
+            }
+        }
+        return dataAccessException;
+    }
+
+    /**
+     * Runs the after completion actions and clears all callbacks. The transaction has been completed already,
+     * so failing actions are logged and do not prevent the other actions from running.
+     */
+    void runAfterCompletionActions() {
+        boolean committed = this.committed;
+        for (Callback<TransactionCompletionAction> callback : afterCompletionActions) {
+            TransactionCompletionAction action = callback.action;
+            logFailure(run(callback.async, () -> action.run(committed), "Action after completion failed: "));
+        }
+        beforeCommitActions.clear();
+        afterCommitActions.clear();
+        afterRollbackActions.clear();
+        afterCompletionActions.clear();
+        this.committed = false;
+    }
+
+    private static void logFailure(DataAccessException e) {
+        if (e != null) {
+            LOGGER.warn(e.getMessage(), e.getCause());
+        }
+    }
+
+    private DataAccessException run(boolean async, RunnableWithoutReturnValue action, String messagePrefix) {
+        Executor executor = TransactionSettings.callbackExecutor;
+        if (async && executor != null) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        action.run();
+                    } catch (Exception e) {
+                        LOGGER.warn(messagePrefix + e.getMessage(), e);
+                    }
+                });
+                return null;
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Asynchronous action was rejected by the executor and is executed synchronously");
+            }
+        }
+        try {
+            action.run();
+            return null;
+        } catch (Exception e) {
+            return new DataAccessException(messagePrefix + e.getMessage(), e);
+        }
+    }
+
+    private static class Callback<A> {
+
+        private final A action;
+        private final boolean async;
+
+        private Callback(A action, boolean async) {
+            this.action = action;
+            this.async = async;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package nl.gogognome.dataaccess.transaction;
+
+/**
+ * An action that is executed when a transaction has been completed.
+ */
+public interface TransactionCompletionAction {
+
+    /**
+     * @param committed true if the transaction was committed; false if it was rolled back or closed without commit
+     * @throws Exception if a problem occurs
+     */
+    void run(boolean committed) throws Exception;
+}
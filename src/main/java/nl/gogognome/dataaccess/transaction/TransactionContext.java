@@ -0,0 +1,66 @@
+package nl.gogognome.dataaccess.transaction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable stack of the transactions that are open for a thread or task. Creating a transaction pushes a new
+ * context; the contexts of the enclosing transactions are never modified. Therefore a context can be captured
+ * and used by other threads, see {@link CurrentTransaction#capture()} and {@link TransactionPropagation}.
+ */
+public final class TransactionContext {
+
+    public final static TransactionContext EMPTY = new TransactionContext(null, null, 0);
+
+    private final Transaction transaction;
+    private final TransactionContext parent;
+    private final int depth;
+
+    private TransactionContext(Transaction transaction, TransactionContext parent, int depth) {
+        this.transaction = transaction;
+        this.parent = parent;
+        this.depth = depth;
+    }
+
+    TransactionContext push(Transaction transaction) {
+        return new TransactionContext(transaction, this, depth + 1);
+    }
+
+    TransactionContext pop() {
+        if (parent == null) {
+            throw new IllegalStateException("Trying to close Transaction, but no Transaction has been created.");
+        }
+        return parent;
+    }
+
+    /**
+     * @return the innermost transaction or null if this context is empty
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    public boolean isEmpty() {
+        return depth == 0;
+    }
+
+    /**
+     * @return the number of open transactions
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the open transactions, oldest first
+     */
+    public List<Transaction> getTransactions() {
+        List<Transaction> transactions = new ArrayList<>(depth);
+        for (TransactionContext context = this; context.parent != null; context = context.parent) {
+            transactions.add(context.transaction);
+        }
+        Collections.reverse(transactions);
+        return transactions;
+    }
+}
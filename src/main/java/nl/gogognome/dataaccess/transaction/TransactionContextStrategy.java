@@ -0,0 +1,19 @@
+package nl.gogognome.dataaccess.transaction;
+
+/**
+ * Determines where {@link CurrentTransaction} stores the {@link TransactionContext} of the running thread or task.
+ */
+public interface TransactionContextStrategy {
+
+    /**
+     * @return the current context or null if no transaction is open
+     */
+    TransactionContext get();
+
+    /**
+     * Sets the current context.
+     * @param context the context or null if no transaction is open. Implementations should release
+     *                any storage they use for the thread or task in that case.
+     */
+    void set(TransactionContext context);
+}
@@ -0,0 +1,76 @@
+package nl.gogognome.dataaccess.transaction;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Wraps code that is submitted to an executor, so that it runs in the transaction of the submitting thread
+ * or in a transaction of its own. The wrapped code does not leave transaction state behind in the thread
+ * that executes it.
+ *
+ * <p>Example:
+ * <pre>
+ *     NewTransaction.runs(() -&gt; {
+ *         Future&lt;Author&gt; author = executor.submit(TransactionPropagation.joinCurrent(() -&gt; authorDAO.get(id)));
+ *         executor.submit(TransactionPropagation.inNewTransaction(() -&gt; auditDAO.create(entry)));
+ *         ...
+ *     });
+ * </pre>
+ *
+ * <p>Code that joins the current transaction shares its connections with the submitting thread. Make sure
+ * the submitting thread waits for the code to finish before the transaction is closed, and that the JDBC driver
+ * supports using a connection from multiple threads, or that the threads do not use the connection at the same time.
+ */
+public class TransactionPropagation {
+
+    private TransactionPropagation() {
+    }
+
+    /**
+     * Wraps code so that it runs in the transaction that is current at the moment this method is called.
+     * The code must not commit or close that transaction; the submitting thread remains responsible for that.
+     * @param runnable the code
+     * @param <T> the type of the result
+     * @return a callable that can be submitted to an executor
+     */
+    public static <T> Callable<T> joinCurrent(RunnableWithReturnValue<T> runnable) {
+        TransactionContext context = CurrentTransaction.capture();
+        return () -> CurrentTransaction.runWith(context, runnable);
+    }
+
+    /**
+     * Wraps code so that it runs in the transaction that is current at the moment this method is called.
+     * @param runnable the code
+     * @return a callable that can be submitted to an executor
+     */
+    public static Callable<Void> joinCurrent(RunnableWithoutReturnValue runnable) {
+        return joinCurrent(toRunnableWithReturnValue(runnable));
+    }
+
+    /**
+     * Wraps code so that it runs in a new transaction, independent of the transaction of the submitting thread
+     * and of any transaction that is open in the thread that executes it.
+     * @param runnable the code
+     * @param <T> the type of the result
+     * @return a callable that can be submitted to an executor
+     */
+    public static <T> Callable<T> inNewTransaction(RunnableWithReturnValue<T> runnable) {
+        return () -> CurrentTransaction.runWith(TransactionContext.EMPTY, () -> NewTransaction.returns(runnable));
+    }
+
+    /**
+     * Wraps code so that it runs in a new transaction, independent of the transaction of the submitting thread
+     * and of any transaction that is open in the thread that executes it.
+     * @param runnable the code
+     * @return a callable that can be submitted to an executor
+     */
+    public static Callable<Void> inNewTransaction(RunnableWithoutReturnValue runnable) {
+        return inNewTransaction(toRunnableWithReturnValue(runnable));
+    }
+
+    private static RunnableWithReturnValue<Void> toRunnableWithReturnValue(RunnableWithoutReturnValue runnable) {
+        return () -> {
+            runnable.run();
+            return null;
+        };
+    }
+}
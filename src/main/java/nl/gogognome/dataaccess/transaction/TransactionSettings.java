@@ -1,8 +1,24 @@
 package nl.gogognome.dataaccess.transaction;
 
+import java.util.concurrent.Executor;
+
 public class TransactionSettings {
 
     public static boolean storeCreationStackForTransactions = false;
 
+    /**
+     * If not null, a {@link CompositeTransaction} that wraps multiple transactions commits, rolls back and closes them
+     * concurrently using this executor. Use a bounded executor, for example {@code Executors.newFixedThreadPool(8)},
+     * or an executor that starts a virtual thread per task. If null (the default) the wrapped transactions
+     * are handled one after another in the order in which they were added.
+     */
+    public static Executor completionExecutor = null;
+
+    /**
+     * Executes the callbacks that are registered as asynchronous, for example with
+     * {@link CallbackTransaction#afterCommit(RunnableWithoutReturnValue, boolean)}. If null (the default)
+     * these callbacks are executed synchronously.
+     */
+    public static Executor callbackExecutor = null;
 
 }
@@ -0,0 +1,295 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.util.CreationStack;
+import nl.gogognome.dataaccess.util.SqlFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Detects transactions that are open for a long time, for example because they wait for a slow statement
+ * or because the code that created them forgot to close them.
+ * <pre>
+ *     TransactionWatchdog watchdog = new TransactionWatchdog().withThreshold(60_000).start();
+ * </pre>
+ *
+ * <p>While the watchdog runs, open transactions, the data sources of their connections and their open statements
+ * are registered in concurrent maps. A daemon thread periodically logs the transactions that have been open
+ * longer than the threshold, including their age, the time their connections have been held, the fingerprints
+ * of their most recent statements and, if sampled, the location where the transaction was created.
+ * Optionally their open statements are cancelled.
+ *
+ * <p>The location where a transaction was created is only recorded for one in
+ * {@link #withStackSamplingRate(int) stack sampling rate} transactions. When no watchdog runs,
+ * the overhead is a single volatile read per transaction, connection and statement.
+ */
+public class TransactionWatchdog implements AutoCloseable {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(TransactionWatchdog.class);
+
+    private static volatile TransactionWatchdog activeWatchdog;
+
+    private long thresholdMillis = 30 * 1000;
+    private long checkIntervalMillis = 5 * 1000;
+    private int stackSamplingRate = 10;
+    private int nrRecentStatements = 5;
+    private boolean cancelStatements;
+
+    private final Map<Transaction, TransactionRecord> transactionToRecord = new ConcurrentHashMap<>();
+    private final Map<Statement, TransactionRecord> statementToRecord = new ConcurrentHashMap<>();
+    private final AtomicLong counter = new AtomicLong();
+    private ScheduledExecutorService checker;
+
+    /**
+     * @param thresholdMillis transactions that are open longer than this are reported. Default 30 seconds.
+     * @return this watchdog
+     */
+    public TransactionWatchdog withThreshold(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+        return this;
+    }
+
+    /**
+     * @param checkIntervalMillis the interval between checks for long running transactions. Default 5 seconds.
+     *                            Use 0 to only check when {@link #check()} is called.
+     * @return this watchdog
+     */
+    public TransactionWatchdog withCheckInterval(long checkIntervalMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param stackSamplingRate the creation location is recorded for one in this many transactions. Default 10.
+     *                          Use 0 to never record the creation location.
+     * @return this watchdog
+     */
+    public TransactionWatchdog withStackSamplingRate(int stackSamplingRate) {
+        this.stackSamplingRate = stackSamplingRate;
+        return this;
+    }
+
+    /**
+     * @param nrRecentStatements the number of most recent statements that is reported per transaction. Default 5.
+     * @return this watchdog
+     */
+    public TransactionWatchdog withRecentStatements(int nrRecentStatements) {
+        this.nrRecentStatements = nrRecentStatements;
+        return this;
+    }
+
+    /**
+     * @param cancelStatements indicates whether the open statements of a reported transaction are cancelled. Default false.
+     * @return this watchdog
+     */
+    public TransactionWatchdog withStatementCancellation(boolean cancelStatements) {
+        this.cancelStatements = cancelStatements;
+        return this;
+    }
+
+    /**
+     * Starts watching. Transactions that were created before are not watched. At most one watchdog is active;
+     * starting a watchdog stops the watchdog that was active.
+     * @return this watchdog
+     */
+    public TransactionWatchdog start() {
+        TransactionWatchdog previousWatchdog = activeWatchdog;
+        if (previousWatchdog != null) {
+            previousWatchdog.close();
+        }
+        if (checkIntervalMillis > 0) {
+            checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "transaction-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            checker.scheduleWithFixedDelay(this::checkIgnoringExceptions, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        activeWatchdog = this;
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if (activeWatchdog == this) {
+            activeWatchdog = null;
+        }
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        transactionToRecord.clear();
+        statementToRecord.clear();
+    }
+
+    /**
+     * @return the number of open transactions that are watched
+     */
+    public int getNrOpenTransactions() {
+        return transactionToRecord.size();
+    }
+
+    static void transactionCreated(Transaction transaction) {
+        TransactionWatchdog watchdog = activeWatchdog;
+        if (watchdog != null) {
+            CreationStack creationStack = null;
+            if (watchdog.stackSamplingRate > 0 && watchdog.counter.getAndIncrement() % watchdog.stackSamplingRate == 0) {
+                creationStack = new CreationStack(3); // skip this method and the methods of CurrentTransaction
+            }
+            watchdog.transactionToRecord.put(transaction, new TransactionRecord(creationStack));
+        }
+    }
+
+    static void transactionClosed(Transaction transaction) {
+        TransactionWatchdog watchdog = activeWatchdog;
+        if (watchdog != null) {
+            TransactionRecord record = watchdog.transactionToRecord.remove(transaction);
+            if (record != null) {
+                synchronized (record) {
+                    for (Statement statement : record.openStatements) {
+                        watchdog.statementToRecord.remove(statement);
+                    }
+                }
+            }
+        }
+    }
+
+    static void connectionObtained(Transaction transaction, String datasourceName) {
+        TransactionWatchdog watchdog = activeWatchdog;
+        if (watchdog != null) {
+            TransactionRecord record = watchdog.transactionToRecord.get(transaction);
+            if (record != null) {
+                record.dataSourceToObtainedNanos.putIfAbsent(datasourceName, System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Registers a statement for the current transaction. Is called when a statement has been prepared.
+     * @param statement the statement
+     * @param sql the SQL of the statement
+     */
+    public static void statementPrepared(Statement statement, String sql) {
+        TransactionWatchdog watchdog = activeWatchdog;
+        if (watchdog != null && CurrentTransaction.hasTransaction()) {
+            TransactionRecord record = watchdog.transactionToRecord.get(CurrentTransaction.get());
+            if (record != null) {
+                synchronized (record) {
+                    record.recentStatements.addLast(sql);
+                    while (record.recentStatements.size() > watchdog.nrRecentStatements) {
+                        record.recentStatements.removeFirst();
+                    }
+                    record.openStatements.add(statement);
+                }
+                watchdog.statementToRecord.put(statement, record);
+            }
+        }
+    }
+
+    /**
+     * Unregisters a statement. Is called when a statement has been closed.
+     * @param statement the statement
+     */
+    public static void statementClosed(Statement statement) {
+        TransactionWatchdog watchdog = activeWatchdog;
+        if (watchdog != null) {
+            TransactionRecord record = watchdog.statementToRecord.remove(statement);
+            if (record != null) {
+                synchronized (record) {
+                    record.openStatements.remove(statement);
+                }
+            }
+        }
+    }
+
+    private void checkIgnoringExceptions() {
+        try {
+            check();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Ignored exception while checking open transactions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reports transactions that have been open longer than the threshold and have not been reported before.
+     * @return the reports
+     */
+    public List<String> check() {
+        long now = System.nanoTime();
+        List<String> reports = new ArrayList<>();
+        for (TransactionRecord record : transactionToRecord.values()) {
+            long ageMillis = NANOSECONDS.toMillis(now - record.createdNanos);
+            if (ageMillis >= thresholdMillis && !record.reported) {
+                record.reported = true;
+                String report = buildReport(record, ageMillis, now);
+                LOGGER.warn(report);
+                reports.add(report);
+                if (cancelStatements) {
+                    cancelOpenStatements(record);
+                }
+            }
+        }
+        return reports;
+    }
+
+    private String buildReport(TransactionRecord record, long ageMillis, long now) {
+        StringBuilder sb = new StringBuilder(500);
+        sb.append("Transaction of thread ").append(record.threadName).append(" has been open for ").append(ageMillis).append(" ms.");
+        sb.append(" Data sources:");
+        for (Map.Entry<String, Long> entry : record.dataSourceToObtainedNanos.entrySet()) {
+            sb.append(' ').append(entry.getKey()).append(" (held for ").append(NANOSECONDS.toMillis(now - entry.getValue())).append(" ms)");
+        }
+        sb.append(". Recent statements:");
+        synchronized (record) {
+            for (String sql : record.recentStatements) {
+                sb.append("\n    ").append(SqlFingerprint.of(sql));
+            }
+        }
+        if (record.creationStack != null) {
+            sb.append("\nCreated at:\n").append(record.creationStack);
+        }
+        return sb.toString();
+    }
+
+    private void cancelOpenStatements(TransactionRecord record) {
+        List<Statement> statements;
+        synchronized (record) {
+            statements = new ArrayList<>(record.openStatements);
+        }
+        for (Statement statement : statements) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                LOGGER.warn("Ignored exception while cancelling statement: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static class TransactionRecord {
+
+        private final long createdNanos = System.nanoTime();
+        private final String threadName = Thread.currentThread().getName();
+        private final CreationStack creationStack;
+        private final Map<String, Long> dataSourceToObtainedNanos = new ConcurrentHashMap<>(4);
+        private final ArrayDeque<String> recentStatements = new ArrayDeque<>();
+        private final List<Statement> openStatements = new ArrayList<>();
+        private volatile boolean reported;
+
+        private TransactionRecord(CreationStack creationStack) {
+            this.creationStack = creationStack;
+        }
+    }
+}
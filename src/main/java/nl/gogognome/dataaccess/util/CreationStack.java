@@ -1,19 +1,35 @@
 package nl.gogognome.dataaccess.util;
 
+/**
+ * Stores the location where an object was created. Only the stack is recorded at construction time; the stack trace
+ * elements are created when {@link #toString()} is called, so constructing an instance is relatively cheap.
+ */
 public class CreationStack {
 
-    private StackTraceElement[] creationStack;
+    private final Throwable creationStack;
+    private final int nrFramesToSkip;
 
     public CreationStack() {
-        StackTraceElement[] stackTrace = Thread.currentThread().getStackTrace();
-        int startIndex = 2; // skip getStackTrace and this constructor
-        creationStack = new StackTraceElement[Math.min(10, stackTrace.length) - startIndex];
-        System.arraycopy(stackTrace, startIndex, creationStack, 0, creationStack.length);
+        this(1); // skip this constructor
+    }
+
+    /**
+     * Constructor.
+     * @param nrFramesToSkip the number of frames to skip on top of this constructor. Useful to skip the frames of
+     *                       the infrastructure that creates the instance.
+     */
+    public CreationStack(int nrFramesToSkip) {
+        this.creationStack = new Throwable();
+        this.nrFramesToSkip = nrFramesToSkip;
     }
 
     public String toString() {
+        StackTraceElement[] stackTrace = creationStack.getStackTrace();
+        int startIndex = Math.min(stackTrace.length, 1 + nrFramesToSkip); // skip this constructor
+        int endIndex = Math.min(9 + nrFramesToSkip, stackTrace.length);
         StringBuilder sb = new StringBuilder(1000);
-        for (StackTraceElement stackTraceElement : creationStack) {
+        for (int i = startIndex; i < endIndex; i++) {
+            StackTraceElement stackTraceElement = stackTrace[i];
             sb.append(stackTraceElement.getClassName()).append('.').append(stackTraceElement.getMethodName()).append(" (");
             sb.append(stackTraceElement.getLineNumber()).append(")").append('\n');
         }
@@ -98,7 +98,9 @@ public class ScriptRunner {
                 }
                 runScriptIgnoringAutoCommit(reader);
             } finally {
-                connection.setAutoCommit(originalAutoCommit);
+                if (originalAutoCommit != this.autoCommit) {
+                    connection.setAutoCommit(originalAutoCommit);
+                }
             }
         } catch (IOException | SQLException e) {
             throw e;
@@ -154,10 +156,6 @@ public class ScriptRunner {
                         }
                     }
 
-                    if (autoCommit && !connection.getAutoCommit()) {
-                        connection.commit();
-                    }
-
                     ResultSet rs = statement.getResultSet();
                     if (hasResults && rs != null) {
                         ResultSetMetaData md = rs.getMetaData();
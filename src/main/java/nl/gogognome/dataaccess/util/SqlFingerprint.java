@@ -0,0 +1,111 @@
+package nl.gogognome.dataaccess.util;
+
+/**
+ * Creates fingerprints of SQL statements. A fingerprint is the statement with literals replaced by question marks,
+ * pivot lists collapsed and white space normalized. Statements that only differ in their literal values
+ * have the same fingerprint, which makes fingerprints suitable for logging and grouping.
+ */
+public class SqlFingerprint {
+
+    private final static int MAX_LENGTH = 200;
+
+    private SqlFingerprint() {
+    }
+
+    /**
+     * Gets the fingerprint of a statement.
+     *
+     * @param sql the SQL statement
+     * @return the fingerprint
+     */
+    public static String of(String sql) {
+        if (sql == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(Math.min(sql.length(), MAX_LENGTH + 3));
+        int length = sql.length();
+        int i = 0;
+        while (i < length && sb.length() < MAX_LENGTH) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skipStringLiteral(sql, i);
+                appendPlaceholder(sb);
+            } else if (Character.isDigit(c) && !isPartOfIdentifier(sb)) {
+                while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                appendPlaceholder(sb);
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+            } else if (c == '?') {
+                appendPlaceholder(sb);
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        sb.setLength(end);
+        if (i < length) {
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
+    private static int skipStringLiteral(String sql, int start) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == '\'') {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == '\'') {
+                    i += 2; // escaped quote
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isPartOfIdentifier(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char previous = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_';
+    }
+
+    /**
+     * Appends a question mark, unless the question mark is part of a list of question marks like "(?, ?, ?)".
+     * Such lists are collapsed to "(?" so that pivot clauses of different lengths get the same fingerprint.
+     */
+    private static void appendPlaceholder(StringBuilder sb) {
+        int index = sb.length();
+        while (index > 0 && sb.charAt(index - 1) == ' ') {
+            index--;
+        }
+        if (index > 0 && sb.charAt(index - 1) == ',') {
+            index--;
+            while (index > 0 && sb.charAt(index - 1) == ' ') {
+                index--;
+            }
+            if (index > 0 && sb.charAt(index - 1) == '?') {
+                sb.setLength(index);
+                return;
+            }
+        }
+        sb.append('?');
+    }
+}
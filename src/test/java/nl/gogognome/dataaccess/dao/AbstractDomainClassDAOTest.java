@@ -1,12 +1,14 @@
 package nl.gogognome.dataaccess.dao;
 
 import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -14,11 +16,14 @@ import java.util.function.Function;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.*;
 
 public class AbstractDomainClassDAOTest extends BaseInMemTransactionTest {
 
+    private enum Pseudonym { ANONYMOUS }
+
     private AuthorDAO authorDAO;
     private BookDAO bookDAO;
 
@@ -280,6 +285,67 @@ public class AbstractDomainClassDAOTest extends BaseInMemTransactionTest {
         assertAuthorsEqual(asList(author2, author3), authorDAO.findAll());
     }
 
+    @Test
+    public void deleteWhereInChunksCommitsEachChunkAndReportsProgress() throws SQLException {
+        for (int i = 0; i < 5; i++) {
+            authorDAO.create(buildAuthor("Anonymous"));
+        }
+        Author author = authorDAO.create(buildAuthor("Terry Pratchett"));
+        CurrentTransaction.get().commit();
+        List<String> progress = new ArrayList<>();
+
+        long nrDeletedAuthors = authorDAO.deleteWhereInChunks(new NameValuePairs().add("name", "Anonymous"), new Chunking()
+                .withChunkSize(2)
+                .withProgressListener((nrRowsInChunk, totalNrRows) -> progress.add(nrRowsInChunk + "/" + totalNrRows)));
+
+        assertEquals(5, nrDeletedAuthors);
+        assertEquals(asList("2/2", "2/4", "1/5"), progress);
+        CurrentTransaction.get().rollback();
+        assertAuthorsEqual(singletonList(author), authorDAO.findAll());
+    }
+
+    @Test
+    public void updateWhereWithSetClauseUpdatesMatchingAuthors() throws SQLException {
+        Author author1 = authorDAO.create(buildAuthor("Terry"));
+        Author author2 = authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+
+        assertEquals(1, authorDAO.updateWhere("name = name || ?", new NameValuePairs().add("name", "Terry"), " Pratchett"));
+
+        author1.setName("Terry Pratchett");
+        assertAuthorsEqual(asList(author1, author2), authorDAO.findAll("id"));
+    }
+
+    @Test
+    public void updateWhereBindsParametersWithTypeBinders() throws SQLException {
+        Author author1 = authorDAO.create(buildAuthor("Terry Pratchett"));
+        Author author2 = authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+
+        assertEquals(1, authorDAO.updateWhere("name = ?", new NameValuePairs().add("id", author1.getId()), Pseudonym.ANONYMOUS));
+        assertEquals(1, authorDAO.updateWhere("name = ?", new NameValuePairs().add("id", author2.getId()), (Object) null));
+
+        author1.setName("ANONYMOUS");
+        author2.setName(null);
+        assertAuthorsEqual(asList(author1, author2), authorDAO.findAll("id"));
+    }
+
+    @Test
+    public void updateWhereInChunksWithoutWhereClauseUpdatesAllAuthors() throws SQLException {
+        for (int i = 0; i < 6; i++) {
+            authorDAO.create(buildAuthor("Author"));
+        }
+        CurrentTransaction.get().commit();
+        List<Integer> chunkSizes = new ArrayList<>();
+
+        long nrUpdatedAuthors = authorDAO.updateWhereInChunks("name = name || ?", null, new Chunking()
+                .withChunkSize(3)
+                .withPauseBetweenChunks(1)
+                .withProgressListener((nrRowsInChunk, totalNrRows) -> chunkSizes.add(nrRowsInChunk)), " X");
+
+        assertEquals(6, nrUpdatedAuthors);
+        assertEquals(asList(3, 3), chunkSizes);
+        assertEquals(6, authorDAO.count(new NameValuePairs().add("name", "Author X")));
+    }
+
     @Test(expected = NoRecordFoundException.class)
     public void whenNoAuthorsPresentDeleteThrowsException() throws SQLException {
         authorDAO.delete(1);
@@ -385,6 +451,17 @@ public class AbstractDomainClassDAOTest extends BaseInMemTransactionTest {
         assertEquals(lordOfTheRings.getAuthorId(), bookFromDatabas.getAuthorId());
     }
 
+    @Test
+    public void whenApplyGeneratedValuesIsOverriddenThenCreateReturnsOriginalObjectWithGeneratedId() throws SQLException {
+        Author author = buildAuthor("Terry Pratchett");
+
+        Author createdAuthor = new AuthorWithGeneratedIdDAO().create(author);
+
+        assertSame(author, createdAuthor);
+        assertTrue(author.getId() > 0);
+        assertAuthorEqual(author, authorDAO.get(author.getId()));
+    }
+
     private void assertAuthorEqual(Author author1, Author actualAuthor) {
         assertEquals(author1.getId(), actualAuthor.getId());
         assertEquals(author1.getName(), actualAuthor.getName());
@@ -441,6 +518,15 @@ public class AbstractDomainClassDAOTest extends BaseInMemTransactionTest {
         }
     }
 
+    private class AuthorWithGeneratedIdDAO extends AuthorDAO {
+
+        @Override
+        protected Author applyGeneratedValues(Author author, NameValuePairs nameValuePairs) throws SQLException {
+            author.setId((Long) nameValuePairs.getValue("id"));
+            return author;
+        }
+    }
+
     private class BookDAO extends AbstractDomainClassDAO<Book> {
 
         public BookDAO() throws DataAccessException {
@@ -0,0 +1,247 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.migrations.CreatePartitionsMigration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.NavigableMap;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class AbstractTimePartitionedDAOTest extends BaseInMemTransactionTest {
+
+    private final EventDAO eventDAO = new EventDAO();
+
+    @Before
+    public void createPartitions() throws SQLException {
+        eventDAO.createPartitions(LocalDateTime.of(2024, 1, 15, 10, 0), 3);
+    }
+
+    @Test
+    public void whenPartitionsAreCreatedThenExistingPartitionsAreSkipped() throws SQLException {
+        List<String> createdPartitions = eventDAO.createPartitions(LocalDateTime.of(2024, 3, 1, 0, 0), 2);
+
+        assertEquals(singletonList("event_202404"), createdPartitions);
+        assertEquals(asList("EVENT_202401", "EVENT_202402", "EVENT_202403", "EVENT_202404"),
+                new ArrayList<>(eventDAO.getPartitions().values()));
+    }
+
+    @Test
+    public void rowsAreInsertedInPartitionOfTheirTimestamp() throws SQLException {
+        eventDAO.create(new Event(1, LocalDateTime.of(2024, 1, 31, 23, 59), "a"));
+        eventDAO.create(new Event(2, LocalDateTime.of(2024, 2, 1, 0, 0), "b"));
+        eventDAO.create(new Event(3, LocalDateTime.of(2024, 2, 10, 12, 0), "c"));
+
+        assertEquals(1, countRows("event_202401"));
+        assertEquals(2, countRows("event_202402"));
+        assertEquals(0, countRows("event_202403"));
+    }
+
+    @Test
+    public void findBetweenOnlyReturnsRowsInRangeFromOverlappingPartitions() throws SQLException {
+        eventDAO.create(new Event(1, LocalDateTime.of(2024, 1, 10, 0, 0), "a"));
+        eventDAO.create(new Event(2, LocalDateTime.of(2024, 1, 20, 0, 0), "b"));
+        eventDAO.create(new Event(3, LocalDateTime.of(2024, 2, 10, 0, 0), "c"));
+        eventDAO.create(new Event(4, LocalDateTime.of(2024, 3, 1, 0, 0), "d"));
+        eventDAO.create(new Event(5, LocalDateTime.of(2024, 3, 20, 0, 0), "e"));
+
+        List<Event> events = eventDAO.findBetween(LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.of(2024, 3, 20, 0, 0), "id desc");
+
+        assertEquals(asList(4L, 3L, 2L), ids(events));
+        assertEquals(3, eventDAO.count(LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.of(2024, 3, 20, 0, 0)));
+        assertEquals(5, eventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0)));
+    }
+
+    @Test
+    public void whenRangeHasNoPartitionsThenNothingIsFound() throws SQLException {
+        assertEquals(emptyList(), eventDAO.findBetween(LocalDateTime.of(2025, 1, 1, 0, 0), LocalDateTime.of(2025, 6, 1, 0, 0)));
+        assertEquals(0, eventDAO.count(LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 0)));
+    }
+
+    @Test(expected = SQLException.class)
+    public void whenPartitionDoesNotExistThenInsertFails() throws SQLException {
+        eventDAO.create(new Event(1, LocalDateTime.of(2023, 12, 31, 0, 0), "a"));
+    }
+
+    @Test
+    public void dropPartitionsBeforeOnlyDropsPartitionsThatEndBeforeTimestamp() throws SQLException {
+        eventDAO.create(new Event(1, LocalDateTime.of(2024, 1, 10, 0, 0), "a"));
+        eventDAO.create(new Event(2, LocalDateTime.of(2024, 2, 10, 0, 0), "b"));
+
+        List<String> droppedPartitions = eventDAO.dropPartitionsBefore(LocalDateTime.of(2024, 2, 15, 0, 0));
+
+        assertEquals(singletonList("EVENT_202401"), droppedPartitions);
+        assertEquals(singletonList(2L), ids(eventDAO.findBetween(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0))));
+    }
+
+    @Test
+    public void migrationCreatesPartitionsForCurrentAndUpcomingPeriods() throws Exception {
+        DailyEventDAO dailyEventDAO = new DailyEventDAO();
+        new CreatePartitionsMigration(1, 2) {
+            @Override
+            protected AbstractTimePartitionedDAO<?> createDAO(Object... connectionParameters) {
+                return new DailyEventDAO();
+            }
+        }.applyChanges("test");
+
+        LocalDateTime today = LocalDateTime.now(StatementSettings.zoneId).toLocalDate().atStartOfDay();
+        assertEquals(asList(today, today.plusDays(1), today.plusDays(2)), new ArrayList<>(dailyEventDAO.getPartitions().keySet()));
+    }
+
+    @Test
+    public void rowsWithSqlDateAreInsertedInPartitionOfTheirDate() throws SQLException {
+        new SqlDateEventDAO().create(new Event(1, LocalDateTime.of(2024, 2, 1, 0, 0), "a"));
+
+        assertEquals(0, countRows("event_202401"));
+        assertEquals(1, countRows("event_202402"));
+    }
+
+    @Test
+    public void partitionTablesInOtherSchemasAreIgnored() throws SQLException {
+        eventDAO.execute("create schema other").ignoreResult();
+        eventDAO.execute("create table other.event_202406 (id bigint primary key)").ignoreResult();
+
+        assertEquals(asList("EVENT_202401", "EVENT_202402", "EVENT_202403"), new ArrayList<>(eventDAO.getPartitions().values()));
+    }
+
+    @Test
+    public void wildcardsInSearchStringAreEscaped() {
+        assertEquals("a//b/_c/%d", AbstractTimePartitionedDAO.escapeSearchString("a/b_c%d", "/"));
+        assertEquals("a_b", AbstractTimePartitionedDAO.escapeSearchString("a_b", ""));
+    }
+
+    @Test
+    public void partitionTableNamesOfOtherTablesAreIgnored() {
+        assertEquals(LocalDateTime.of(2024, 1, 31, 0, 0), PartitionPeriod.DAY.parsePartitionTableName("event", "EVENT_20240131"));
+        assertNull(PartitionPeriod.DAY.parsePartitionTableName("event", "event_202401"));
+        assertNull(PartitionPeriod.DAY.parsePartitionTableName("event", "event_log_20240131"));
+        assertNull(PartitionPeriod.MONTH.parsePartitionTableName("event", "event_2024ab"));
+    }
+
+    @Test
+    public void rangeQueriesReuseCachedPartitions() throws SQLException {
+        CountingEventDAO countingEventDAO = new CountingEventDAO();
+        countingEventDAO.findBetween(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0));
+        countingEventDAO.findBetween(LocalDateTime.of(2024, 2, 1, 0, 0), LocalDateTime.of(2024, 3, 1, 0, 0));
+        countingEventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0));
+
+        assertEquals(1, countingEventDAO.nrMetadataReads);
+
+        countingEventDAO.setPartitionCacheTime(0);
+        countingEventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0));
+        assertEquals(2, countingEventDAO.nrMetadataReads);
+    }
+
+    @Test
+    public void whenPartitionsAreCreatedThenRangeQueriesUseThem() throws SQLException {
+        assertEquals(0, eventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 6, 1, 0, 0)));
+
+        eventDAO.createPartitions(LocalDateTime.of(2024, 4, 1, 0, 0), 1);
+        eventDAO.create(new Event(1, LocalDateTime.of(2024, 4, 10, 0, 0), "a"));
+
+        assertEquals(1, eventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 6, 1, 0, 0)));
+    }
+
+    @Test
+    public void whenCachedPartitionHasBeenDroppedElsewhereThenQueryIsRetried() throws SQLException {
+        eventDAO.create(new Event(1, LocalDateTime.of(2024, 1, 10, 0, 0), "a"));
+        eventDAO.create(new Event(2, LocalDateTime.of(2024, 2, 10, 0, 0), "b"));
+        assertEquals(2, eventDAO.count(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0)));
+
+        new EventDAO().dropPartitionsBefore(LocalDateTime.of(2024, 2, 1, 0, 0));
+
+        assertEquals(singletonList(2L), ids(eventDAO.findBetween(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 4, 1, 0, 0))));
+    }
+
+    private int countRows(String table) throws SQLException {
+        return eventDAO.execute("select count(*) from " + table).getFirst(r -> r.getInt(1));
+    }
+
+    private static List<Long> ids(List<Event> events) {
+        List<Long> ids = new ArrayList<>();
+        for (Event event : events) {
+            ids.add(event.id);
+        }
+        return ids;
+    }
+
+    private static class Event {
+        private final long id;
+        private final LocalDateTime occurredAt;
+        private final String message;
+
+        Event(long id, LocalDateTime occurredAt, String message) {
+            this.id = id;
+            this.occurredAt = occurredAt;
+            this.message = message;
+        }
+    }
+
+    private static class EventDAO extends AbstractTimePartitionedDAO<Event> {
+
+        EventDAO() {
+            this("event", PartitionPeriod.MONTH);
+        }
+
+        EventDAO(String tableName, PartitionPeriod period) {
+            super(tableName, "occurred_at", period, "test");
+        }
+
+        @Override
+        protected List<String> getCreatePartitionStatements(String partitionTableName) {
+            return asList(
+                    "create table " + partitionTableName + " (id bigint primary key, occurred_at timestamp, message varchar(100))",
+                    "create index " + partitionTableName + "_occurred_at on " + partitionTableName + " (occurred_at)");
+        }
+
+        @Override
+        protected Event getObjectFromResultSet(ResultSetWrapper result) throws SQLException {
+            return new Event(result.getLong("id"), result.getLocalDateTime("occurred_at"), result.getString("message"));
+        }
+
+        @Override
+        protected NameValuePairs getNameValuePairs(Event event) {
+            return new NameValuePairs()
+                    .add("id", event.id)
+                    .add("occurred_at", event.occurredAt)
+                    .add("message", event.message);
+        }
+    }
+
+    private static class SqlDateEventDAO extends EventDAO {
+
+        @Override
+        protected NameValuePairs getNameValuePairs(Event event) {
+            return new NameValuePairs()
+                    .add("id", event.id)
+                    .add("occurred_at", Date.class, java.sql.Date.valueOf(event.occurredAt.toLocalDate()))
+                    .add("message", event.message);
+        }
+    }
+
+    private static class CountingEventDAO extends EventDAO {
+
+        private int nrMetadataReads;
+
+        @Override
+        public NavigableMap<LocalDateTime, String> getPartitions() throws SQLException {
+            nrMetadataReads++;
+            return super.getPartitions();
+        }
+    }
+
+    private static class DailyEventDAO extends EventDAO {
+
+        DailyEventDAO() {
+            super("daily_event", PartitionPeriod.DAY);
+        }
+    }
+}
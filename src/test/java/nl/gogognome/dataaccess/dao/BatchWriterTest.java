@@ -0,0 +1,98 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Types;
+
+import static org.junit.Assert.*;
+
+public class BatchWriterTest extends BaseInMemTransactionTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Before
+    public void createTable() throws SQLException {
+        testDAO.execute("create table test (id int primary key, name varchar(100))").ignoreResult();
+    }
+
+    @Test
+    public void whenMoreRowsThanMaxRowsAreAddedThenAllRowsAreWritten() throws SQLException {
+        BatchWriter writer = testDAO.prepareBatchWriter("insert into test (id, name) values (?, ?)").withMaxRows(10);
+        for (int i = 0; i < 25; i++) {
+            writer.addRow(i, "name " + i);
+        }
+        assertEquals(20, testDAO.count());
+
+        writer.close();
+
+        assertEquals(25, testDAO.count());
+        assertEquals(25, writer.getNrRowsAdded());
+        assertEquals(25, writer.getNrUpdatedRows());
+    }
+
+    @Test
+    public void whenMaxBytesIsReachedThenBatchIsExecuted() throws SQLException {
+        try (BatchWriter writer = testDAO.prepareBatchWriter("insert into test (id, name) values (?, ?)").withMaxBytes(100)) {
+            writer.addRow(new NameValuePairs().add("id", 1).add("name", "this name is longer than fifty characters, so it is flushed"));
+            assertEquals(1, testDAO.count());
+
+            writer.addRow(new NameValuePairs().add("id", 2).add("name", "short"));
+            assertEquals(1, testDAO.count());
+        }
+        assertEquals(2, testDAO.count());
+    }
+
+    @Test
+    public void whenRowFailsThenExceptionContainsIndexOfRow() throws SQLException {
+        try (BatchWriter writer = testDAO.prepareBatchWriter("insert into test (id, name) values (?, ?)").withMaxRows(10)) {
+            for (int i = 0; i < 25; i++) {
+                writer.addRow(i == 13 ? 2 : i, "name " + i);
+            }
+            fail("Expected exception was not thrown");
+        } catch (BatchFailedException e) {
+            assertEquals(13, e.getRowIndex());
+        }
+    }
+
+    @Test
+    public void valuesAreBoundWithRegisteredTypeBinders() throws SQLException {
+        TypeBinders.register(Name.class, TypeBinders.of(Types.VARCHAR,
+                (statement, index, value) -> statement.setString(index, value.value),
+                (resultSet, columnLabel) -> new Name(resultSet.getString(columnLabel)),
+                (resultSet, columnIndex) -> new Name(resultSet.getString(columnIndex))));
+        try {
+            try (BatchWriter writer = testDAO.prepareBatchWriter("insert into test (id, name) values (?, ?)")) {
+                writer.addRow(1, new Name("Terry Pratchett"));
+                writer.addRow(2, null);
+            }
+
+            assertEquals("Terry Pratchett", testDAO.execute("select name from test where id=1").getFirst(r -> r.getString(1)));
+            assertNull(testDAO.execute("select name from test where id=2").getFirst(r -> r.getString(1)));
+        } finally {
+            TypeBinders.unregister(Name.class);
+        }
+    }
+
+    private static class Name {
+
+        private final String value;
+
+        Name(String value) {
+            this.value = value;
+        }
+    }
+
+    private static class TestDAO extends AbstractDAO {
+
+        public TestDAO() throws DataAccessException {
+            super("test");
+        }
+
+        public long count() throws SQLException {
+            return execute("select count(*) from test").getFirst(r -> r.getLong(1));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class IndexedNameValuePairsTest extends BaseInMemTransactionTest {
+
+    private final static ColumnSchema SCHEMA = ColumnSchema.of("id", "name", "amount", "ratio", "price");
+
+    @Test
+    public void valuesOfSchemaColumnsAndOtherColumnsCanBeRetrieved() {
+        NameValuePairs nvps = new IndexedNameValuePairs(SCHEMA)
+                .add("id", 12L)
+                .add("name", "Pete")
+                .add("ratio", 0.5)
+                .add("amount", 3)
+                .add("other", "value");
+
+        assertEquals(12L, nvps.getValue("id"));
+        assertEquals("Pete", nvps.getValue("name"));
+        assertEquals(3, nvps.getValue("amount"));
+        assertEquals(0.5, nvps.getValue("ratio"));
+        assertEquals("value", nvps.getValue("other"));
+        assertNull(nvps.getValue("price"));
+        assertEquals(Integer.class, nvps.getNameValuePair("amount").getType());
+        assertEquals(5, nvps.size());
+    }
+
+    @Test
+    public void iterationReturnsValuesInOrderOfAddition() {
+        NameValuePairs nvps = new IndexedNameValuePairs(SCHEMA)
+                .add("other", "value")
+                .add("name", "Pete")
+                .add("id", 12L);
+
+        assertEquals(asList("other", "name", "id"), nvps.getNames());
+        assertEquals("other=value,name=Pete,id=12", nvps.toString());
+    }
+
+    @Test
+    public void iterationOrderIsSameAsForNameValuePairs() {
+        NameValuePairs indexed = new IndexedNameValuePairs(SCHEMA);
+        NameValuePairs plain = new NameValuePairs();
+        for (NameValuePairs nvps : asList(indexed, plain)) {
+            nvps.add("price", new BigDecimal("1.25"))
+                    .add("other", "value")
+                    .add("id", 12L)
+                    .add("extra", 1)
+                    .add("name", "Pete")
+                    .add("id", 14L);
+            nvps.replace("price", BigDecimal.class, new BigDecimal("2.50"));
+            nvps.remove("other");
+            nvps.add("other", "again");
+        }
+
+        assertEquals(plain.toString(), indexed.toString());
+        assertEquals(asList("id", "extra", "name", "id", "price", "other"), indexed.getNames());
+    }
+
+    @Test
+    public void replaceAndRemoveUpdateSlots() {
+        NameValuePairs nvps = new IndexedNameValuePairs(SCHEMA)
+                .add("id", 12L)
+                .add("price", new BigDecimal("1.25"));
+
+        nvps.replace("id", Long.class, 13L);
+        nvps.remove("price");
+
+        assertEquals(13L, nvps.getValue("id"));
+        assertNull(nvps.getNameValuePair("price"));
+        assertEquals(1, nvps.size());
+        assertFalse(nvps.isEmpty());
+    }
+
+    @Test
+    public void subsetContainsOnlySpecifiedNames() {
+        NameValuePairs nvps = new IndexedNameValuePairs(SCHEMA)
+                .add("id", 12L)
+                .add("name", "Pete")
+                .add("amount", 3);
+
+        List<String> names = nvps.getSubset(asList("amount", "id")).getNames();
+
+        assertEquals(asList("id", "amount"), names);
+    }
+
+    @Test
+    public void valuesCanBeInserted() throws SQLException {
+        TestDAO testDAO = new TestDAO();
+        testDAO.execute("create table test (id bigint primary key, name varchar(100), amount int, ratio double, price decimal(10,2))").ignoreResult();
+
+        testDAO.insert("test", new IndexedNameValuePairs(SCHEMA)
+                .add("id", 1L)
+                .add("name", "Pete")
+                .add("amount", 3)
+                .add("ratio", 0.25)
+                .add("price", (BigDecimal) null));
+
+        assertEquals("Pete 3 0.25 null", testDAO.execute("select * from test where id=1")
+                .getFirst(r -> r.getString("name") + ' ' + r.getInt("amount") + ' ' + r.getDouble("ratio") + ' ' + r.getBigDecimal("price")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenSchemaContainsDuplicateColumnThenExceptionIsThrown() {
+        ColumnSchema.of("id", "name", "id");
+    }
+
+    private static class TestDAO extends AbstractDAO {
+
+        public TestDAO() throws DataAccessException {
+            super("test");
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class JavaTimeSupportTest extends BaseInMemTransactionTest {
+
+    private final TestDAO testDAO = new TestDAO();
+    private final LocalDateTime localDateTime = LocalDateTime.of(2016, 2, 29, 13, 14, 15, 123_456_000);
+
+    @Before
+    public void createTable() throws SQLException {
+        testDAO.execute("create table test (id int primary key, ts timestamp, tstz timestamp with time zone)").ignoreResult();
+    }
+
+    @After
+    public void restoreSettings() {
+        StatementSettings.useJavaTimeTypes = true;
+    }
+
+    @Test
+    public void whenLocalDateTimeIsStoredThenSameLocalDateTimeIsRead() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("ts", localDateTime));
+
+        assertEquals(localDateTime, testDAO.execute("select ts from test").getFirst(r -> r.getLocalDateTime("ts")));
+        assertEquals(localDateTime, testDAO.execute("select ts from test").getFirst(r -> r.getLocalDateTime(1)));
+    }
+
+    @Test
+    public void whenJavaTimeTypesAreNotUsedThenValuesAreConvertedToTimestamps() throws SQLException {
+        StatementSettings.useJavaTimeTypes = false;
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("ts", localDateTime));
+
+        assertEquals(localDateTime, testDAO.execute("select ts from test").getFirst(r -> r.getLocalDateTime("ts")));
+        assertEquals(Timestamp.valueOf(localDateTime), testDAO.execute("select ts from test").getFirst(r -> r.getTimestamp("ts")));
+    }
+
+    @Test
+    public void whenInstantIsStoredThenSameInstantIsRead() throws SQLException {
+        Instant instant = localDateTime.atZone(StatementSettings.zoneId).toInstant();
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("ts", instant));
+
+        assertEquals(instant, testDAO.execute("select ts from test").getFirst(r -> r.getInstant("ts")));
+        assertEquals(localDateTime, testDAO.execute("select ts from test").getFirst(r -> r.getLocalDateTime("ts")));
+    }
+
+    @Test
+    public void whenOffsetDateTimeIsStoredThenSameOffsetDateTimeIsRead() throws SQLException {
+        OffsetDateTime offsetDateTime = localDateTime.atOffset(ZoneOffset.ofHours(5));
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("tstz", offsetDateTime));
+
+        assertEquals(offsetDateTime, testDAO.execute("select tstz from test").getFirst(r -> r.getOffsetDateTime("tstz")));
+    }
+
+    @Test
+    public void whenNullValuesAreStoredThenNullIsRead() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("ts", (Instant) null).add("tstz", (OffsetDateTime) null));
+
+        assertNull(testDAO.execute("select ts from test").getFirst(r -> r.getInstant("ts")));
+        assertNull(testDAO.execute("select tstz from test").getFirst(r -> r.getOffsetDateTime("tstz")));
+    }
+
+    @Test
+    public void whenNameValuePairsContainJavaTimeValuesThenTheyCanBeReadAsTimestampOrLocalDateTime() throws SQLException {
+        NameValuePairs nameValuePairs = new NameValuePairs().add("ts", localDateTime);
+        ResultSetWrapper resultSet = new ResultSetWrapper(new NameValuePairsResultSet(nameValuePairs));
+
+        assertEquals(localDateTime, resultSet.getLocalDateTime("ts"));
+        assertEquals(Timestamp.valueOf(localDateTime), resultSet.getTimestamp("ts"));
+    }
+
+    @Test
+    public void whenColumnLabelIsUnknownThenExceptionIsThrownAndJavaTimeTypesRemainSupported() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("ts", localDateTime));
+
+        testDAO.execute("select ts from test").forEach(r -> {
+            try {
+                r.getLocalDateTime("unknown");
+                fail("Expected SQLException");
+            } catch (SQLException e) {
+                assertTrue(JavaTimeSupport.isSupported(r.unwrap(ResultSet.class)));
+            }
+        });
+    }
+
+    @Test
+    public void whenParameterIndexIsInvalidThenExceptionIsThrownAndJavaTimeTypesRemainSupported() throws SQLException {
+        try (PreparedStatementWrapper statement = testDAO.prepareStatement("select ts from test where ts=?")) {
+            try {
+                statement.setLocalDateTime(5, localDateTime);
+                fail("Expected SQLException");
+            } catch (SQLException e) {
+                try (PreparedStatement otherStatement = statement.getConnection().prepareStatement("select 1")) {
+                    assertTrue(JavaTimeSupport.isSupported(otherStatement));
+                }
+            }
+        }
+    }
+
+    private static class TestDAO extends AbstractDAO {
+
+        public TestDAO() throws DataAccessException {
+            super("test");
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.JdbcTransaction;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LobSourceTest extends BaseInMemTransactionTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final TestDAO testDAO = new TestDAO();
+    private final byte[] contents = createContents(100_000);
+
+    @Before
+    public void createTable() throws SQLException {
+        testDAO.execute("create table test (id int primary key, data blob, text clob)").ignoreResult();
+    }
+
+    @Test
+    public void whenBlobIsInsertedFromFileThenItCanBeTransferredToFile() throws Exception {
+        Path source = temporaryFolder.newFile().toPath();
+        Files.write(source, contents);
+        testDAO.insert("test", new NameValuePairs().add("id", 1).addFile("data", source));
+
+        Path target = temporaryFolder.newFile().toPath();
+        long nrBytes = testDAO.execute("select data from test where id=1").getFirst(r -> r.transferBinaryStream("data", target));
+
+        assertEquals(contents.length, nrBytes);
+        assertArrayEquals(contents, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void whenBlobIsInsertedFromStreamThenItCanBeTransferredToChannel() throws Exception {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("data", new ByteArrayInputStream(contents), contents.length));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        long nrBytes = testDAO.execute("select data from test where id=1").getFirst(r -> r.transferBinaryStream(1, Channels.newChannel(outputStream)));
+
+        assertEquals(contents.length, nrBytes);
+        assertArrayEquals(contents, outputStream.toByteArray());
+    }
+
+    @Test
+    public void whenBlobIsInsertedFromByteBufferThenOnlyRemainingBytesAreStored() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(contents);
+        buffer.position(10);
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("data", buffer));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        testDAO.execute("select data from test where id=1").getFirst(r -> r.transferBinaryStream("data", Channels.newChannel(outputStream)));
+
+        assertEquals(contents.length - 10, outputStream.size());
+        assertEquals(10, buffer.position());
+    }
+
+    @Test
+    public void whenClobIsInsertedFromReaderThenItCanBeTransferredToWriter() throws Exception {
+        String text = new String(contents, "ISO-8859-1");
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("text", new StringReader(text), text.length()));
+
+        StringWriter writer = new StringWriter();
+        long nrChars = testDAO.execute("select text from test where id=1").getFirst(r -> r.transferCharacterStream("text", writer));
+
+        assertEquals(text.length(), nrChars);
+        assertEquals(text, writer.toString());
+    }
+
+    @Test
+    public void whenLobIsNullThenTransferReturnsMinusOne() throws Exception {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("data", (LobSource) null));
+
+        Path target = temporaryFolder.getRoot().toPath().resolve("not-created");
+        long nrBytes = testDAO.execute("select data from test where id=1").getFirst(r -> r.transferBinaryStream("data", target));
+
+        assertEquals(-1, nrBytes);
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    public void whenBatchIsExecutedThenStreamsOfAllRowsAreClosed() throws Exception {
+        List<CloseTrackingInputStream> streams = new ArrayList<>();
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(
+                ((JdbcTransaction) CurrentTransaction.get()).getConnection("test"), "insert into test (id, data) values (?, ?)")) {
+            for (int id = 1; id <= 3; id++) {
+                CloseTrackingInputStream stream = new CloseTrackingInputStream(contents);
+                streams.add(stream);
+                statement.setInt(1, id);
+                statement.setLob(2, LobSource.of(stream, contents.length));
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+
+            for (CloseTrackingInputStream stream : streams) {
+                assertTrue(stream.closed);
+            }
+        }
+        assertEquals(3, (int) testDAO.execute("select count(*) from test").getFirst(r -> r.getInt(1)));
+    }
+
+    private static byte[] createContents(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + i % 26);
+        }
+        return bytes;
+    }
+
+    private static class CloseTrackingInputStream extends ByteArrayInputStream {
+
+        private boolean closed;
+
+        CloseTrackingInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static class TestDAO extends AbstractDAO {
+
+        public TestDAO() throws DataAccessException {
+            super("test");
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package nl.gogognome.dataaccess.dao;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class NameValuePairsResultSetTest {
+
+    private final NameValuePairsResultSet resultSet = new NameValuePairsResultSet(new NameValuePairs()
+            .add("id", 12L)
+            .add("name", "Pete")
+            .add("amount", 3)
+            .add("active", true)
+            .add("price", (BigDecimal) null));
+
+    @Test
+    public void valuesCanBeRetrievedByLabelAndByIndex() throws SQLException {
+        assertEquals(12L, resultSet.getLong("id"));
+        assertEquals(12L, resultSet.getLong(1));
+        assertEquals("Pete", resultSet.getString("name"));
+        assertEquals("Pete", resultSet.getString(2));
+        assertEquals(3, resultSet.getInt(3));
+        assertTrue(resultSet.getBoolean(4));
+        assertEquals(new BigDecimal(3), resultSet.getBigDecimal("amount"));
+    }
+
+    @Test
+    public void findColumnReturnsIndexOfLabelIgnoringCase() throws SQLException {
+        assertEquals(2, resultSet.findColumn("name"));
+        assertEquals(3, resultSet.findColumn("AMOUNT"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void whenColumnDoesNotExistThenFindColumnThrowsException() throws SQLException {
+        resultSet.findColumn("unknown");
+    }
+
+    @Test
+    public void wasNullIndicatesWhetherLastValueWasNull() throws SQLException {
+        assertEquals(0, resultSet.getInt("price"));
+        assertTrue(resultSet.wasNull());
+
+        assertEquals(3, resultSet.getInt("amount"));
+        assertFalse(resultSet.wasNull());
+    }
+
+    @Test
+    public void numbersAreConvertedToRequestedNumberType() throws SQLException {
+        assertEquals(Long.valueOf(3), resultSet.getObject("amount", Long.class));
+        assertEquals(Integer.valueOf(12), resultSet.getObject("id", Integer.class));
+        assertEquals(Short.valueOf((short) 3), resultSet.getObject("amount", Short.class));
+        assertEquals(Double.valueOf(3), resultSet.getObject("amount", Double.class));
+        assertEquals(new BigDecimal(12), resultSet.getObject(1, BigDecimal.class));
+        assertEquals(BigInteger.valueOf(12), resultSet.getObject(1, BigInteger.class));
+        assertEquals(Boolean.TRUE, resultSet.getObject("amount", Boolean.class));
+        assertNull(resultSet.getObject("price", Long.class));
+    }
+
+    @Test(expected = SQLException.class)
+    public void whenValueCannotBeConvertedThenExceptionIsThrown() throws SQLException {
+        resultSet.getObject("name", Long.class);
+    }
+
+    @Test(expected = SQLException.class)
+    public void whenIndexIsOutOfRangeThenExceptionIsThrown() throws SQLException {
+        resultSet.getObject(6);
+    }
+}
@@ -0,0 +1,108 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.JdbcTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+public class PreparedStatementWrapperTest extends BaseInMemTransactionTest {
+
+    private ParameterCapture oldParameterCapture;
+    private int oldMaxCapturedBatchRows;
+
+    @Before
+    public void createTable() throws SQLException {
+        oldParameterCapture = StatementSettings.parameterCapture;
+        oldMaxCapturedBatchRows = StatementSettings.maxCapturedBatchRows;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "create table test (id int primary key, name varchar(100))")) {
+            statement.execute();
+        }
+    }
+
+    @After
+    public void restoreSettings() {
+        StatementSettings.parameterCapture = oldParameterCapture;
+        StatementSettings.maxCapturedBatchRows = oldMaxCapturedBatchRows;
+    }
+
+    @Test
+    public void whenParametersAreNotCapturedThenToStringShowsQuestionMarks() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.OFF;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "select * from test where id=? and name=?", 1, "a")) {
+            assertEquals("select * from test where id=? and name=?", statement.toString());
+        }
+    }
+
+    @Test
+    public void whenParametersAreCapturedThenToStringShowsParameters() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.FULL;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "select * from test where id=? and name=?", 1, "a")) {
+            assertEquals("select * from test where id=1 and name='a'", statement.toString());
+        }
+    }
+
+    @Test
+    public void whenBatchParametersAreNotCapturedThenToStringShowsNumberOfRows() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.OFF;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "insert into test (id, name) values (?, ?)")) {
+            addRows(statement, 3);
+            assertEquals("insert into test (id, name) values (?, ?) [batch of 3 rows]", statement.toString());
+        }
+    }
+
+    @Test
+    public void whenAllBatchParametersAreCapturedThenToStringShowsAllRows() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.FULL;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "insert into test (id, name) values (?, ?)")) {
+            addRows(statement, 3);
+            assertEquals("insert into test (id, name) values (1, 'name 1'); insert into test (id, name) values (2, 'name 2'); " +
+                    "insert into test (id, name) values (3, 'name 3')", statement.toString());
+        }
+    }
+
+    @Test
+    public void whenLastBatchRowsAreCapturedThenToStringShowsLastRowsOnly() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.LAST_BATCH_ROWS;
+        StatementSettings.maxCapturedBatchRows = 2;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "insert into test (id, name) values (?, ?)")) {
+            addRows(statement, 5);
+            assertEquals("[3 batch rows omitted] insert into test (id, name) values (4, 'name 4'); insert into test (id, name) values (5, 'name 5')",
+                    statement.toString());
+        }
+    }
+
+    @Test
+    public void whenBatchFailsThenExceptionShowsCapturedParameters() throws SQLException {
+        StatementSettings.parameterCapture = ParameterCapture.LAST_BATCH_ROWS;
+        StatementSettings.maxCapturedBatchRows = 1;
+        try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "insert into test (id, name) values (?, ?)")) {
+            addRows(statement, 2);
+            statement.setInt(1, 2);
+            statement.setString(2, "duplicate");
+            statement.addBatch();
+
+            statement.executeBatch();
+            fail("Expected exception was not thrown");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("values (2, 'duplicate')"));
+        }
+    }
+
+    private void addRows(PreparedStatementWrapper statement, int nrRows) throws SQLException {
+        for (int i = 1; i <= nrRows; i++) {
+            statement.setInt(1, i);
+            statement.setString(2, "name " + i);
+            statement.addBatch();
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        return ((JdbcTransaction) CurrentTransaction.get()).getConnection("test");
+    }
+}
@@ -0,0 +1,154 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.CompositeDatasourceTransaction;
+import nl.gogognome.dataaccess.transaction.NewTransaction;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.*;
+
+public class ShardedDAOTest {
+
+    private static int uniqueId = 0;
+
+    private ShardedDAO<Long, TenantDAO> tenantDAO;
+
+    @Before
+    public void createShards() {
+        for (String shard : asList("shard1", "shard2", "shard3")) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:ShardedDAOTest_" + shard + "_" + uniqueId + ";DB_CLOSE_DELAY=-1");
+            CompositeDatasourceTransaction.registerDataSource(shard, dataSource);
+        }
+        uniqueId++;
+        tenantDAO = new ShardedDAO<>(new HashShardRouter<>("shard1", "shard2", "shard3"), TenantDAO::new);
+        NewTransaction.runs(() -> tenantDAO.scatter(TenantDAO::createTable));
+    }
+
+    @Test
+    public void rowsAreStoredInShardOfTheirKey() {
+        NewTransaction.runs(() -> {
+            for (long id = 1; id <= 20; id++) {
+                tenantDAO.forKey(id).create(id, "tenant " + id);
+            }
+        });
+
+        NewTransaction.runs(() -> {
+            for (long id = 1; id <= 20; id++) {
+                assertEquals("tenant " + id, tenantDAO.forKey(id).findName(id));
+            }
+            List<Integer> counts = tenantDAO.scatter(TenantDAO::count);
+            assertEquals(20, counts.get(0) + counts.get(1) + counts.get(2));
+            assertFalse("Expected the tenants to be spread over the shards", counts.contains(20));
+        });
+    }
+
+    @Test
+    public void sortedResultsOfAllShardsAreMerged() {
+        NewTransaction.runs(() -> {
+            for (long id = 1; id <= 20; id++) {
+                tenantDAO.forKey(id).create(id, String.format("tenant %02d", 21 - id));
+            }
+        });
+
+        List<String> names = NewTransaction.returns(() ->
+                tenantDAO.onAllShardsSorted(TenantDAO::findAllNamesSorted, Comparator.naturalOrder()));
+
+        List<String> expectedNames = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            expectedNames.add(String.format("tenant %02d", i));
+        }
+        assertEquals(expectedNames, names);
+        assertEquals(20, NewTransaction.returns(() -> tenantDAO.onAllShards(TenantDAO::findAllNamesSorted)).size());
+    }
+
+    @Test
+    public void whenShardFailsThenExceptionIsThrown() {
+        try {
+            NewTransaction.runs(() -> tenantDAO.scatter(dao -> dao.execute("select * from nonexisting").toList(r -> r.getString(1))));
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+    }
+
+    @Test
+    public void queuedStatementsAreExecutedBeforeShardsAreCalled() {
+        List<Integer> counts = NewTransaction.returns(() -> {
+            WriteBehind.enable();
+            for (long id = 1; id <= 3; id++) {
+                WriteBehind.getForCurrentTransaction().queue(new Object[] { "shard" + id }, "tenant",
+                        "insert into tenant (id, name) values (?, ?)",
+                        asList(new NameValuePair("id", Long.class, id), new NameValuePair("name", String.class, "tenant " + id)),
+                        false, Long.toString(id));
+            }
+            return tenantDAO.scatter(dao -> dao.execute("select count(*) from tenant").getFirst(r -> r.getInt(1)));
+        });
+
+        assertEquals(asList(1, 1, 1), counts);
+    }
+
+    @Test
+    public void rangeRouterMapsKeysToRanges() {
+        RangeShardRouter<Long> router = new RangeShardRouter<Long>()
+                .withRange(0L, "shard1")
+                .withRange(100L, "shard2")
+                .withRange(200L, "shard1");
+
+        assertEquals("shard1", router.getShard(0L));
+        assertEquals("shard1", router.getShard(99L));
+        assertEquals("shard2", router.getShard(100L));
+        assertEquals("shard1", router.getShard(1000L));
+        assertEquals(asList("shard1", "shard2"), router.getShards());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenKeyIsBelowLowestRangeThenExceptionIsThrown() {
+        new RangeShardRouter<Long>().withRange(0L, "shard1").getShard(-1L);
+    }
+
+    @Test
+    public void mergeSortedKeepsOrderOfListsForEqualElements() {
+        List<String> merged = ShardedDAO.mergeSorted(asList(asList("a1", "c1"), emptyList(), asList("a2", "b2")),
+                Comparator.comparing(s -> s.charAt(0)));
+
+        assertEquals(asList("a1", "a2", "b2", "c1"), merged);
+    }
+
+    private static class TenantDAO extends AbstractDAO {
+
+        private TenantDAO(String shard) {
+            super(shard);
+        }
+
+        private Void createTable() throws SQLException {
+            execute("create table tenant (id bigint primary key, name varchar(100))").ignoreResult();
+            return null;
+        }
+
+        private void create(long id, String name) throws SQLException {
+            insert("tenant", new NameValuePairs().add("id", id).add("name", name));
+        }
+
+        private String findName(long id) throws SQLException {
+            return execute("select name from tenant where id=?", id).getFirst(r -> r.getString(1));
+        }
+
+        private int count() throws SQLException {
+            return execute("select count(*) from tenant").getFirst(r -> r.getInt(1));
+        }
+
+        private List<String> findAllNamesSorted() throws SQLException {
+            return execute("select name from tenant order by name").toList(r -> r.getString(1));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.JdbcTransaction;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+
+public class StatementLeakDetectorTest extends BaseInMemTransactionTest {
+
+    private int oldSamplingRate;
+
+    @Before
+    public void storeSamplingRate() {
+        oldSamplingRate = StatementSettings.leakDetectionSamplingRate;
+    }
+
+    @After
+    public void restoreSamplingRate() {
+        StatementSettings.leakDetectionSamplingRate = oldSamplingRate;
+    }
+
+    @Test
+    public void whenLeakDetectionIsDisabledThenStatementsAreNotTracked() throws SQLException {
+        StatementSettings.leakDetectionSamplingRate = 0;
+        int nrTrackedStatements = StatementLeakDetector.getNrTrackedStatements();
+
+        PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "select 1");
+
+        assertEquals(nrTrackedStatements, StatementLeakDetector.getNrTrackedStatements());
+        statement.close();
+    }
+
+    @Test
+    public void whenStatementIsSampledThenItIsTrackedUntilItIsClosed() throws SQLException {
+        StatementSettings.leakDetectionSamplingRate = 1;
+        int nrTrackedStatements = StatementLeakDetector.getNrTrackedStatements();
+
+        PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(getConnection(), "select 1");
+        assertEquals(nrTrackedStatements + 1, StatementLeakDetector.getNrTrackedStatements());
+
+        statement.close();
+        assertEquals(nrTrackedStatements, StatementLeakDetector.getNrTrackedStatements());
+    }
+
+    private Connection getConnection() throws SQLException {
+        return ((JdbcTransaction) CurrentTransaction.get()).getConnection("test");
+    }
+}
@@ -0,0 +1,158 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class TypeBindersTest extends BaseInMemTransactionTest {
+
+    private enum Color { RED, GREEN }
+
+    private enum Shape {
+        CIRCLE,
+        SQUARE {
+            @Override
+            public String toString() {
+                return "square";
+            }
+        }
+    }
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Before
+    public void createTable() throws SQLException {
+        testDAO.execute("create table test (id int primary key, name varchar(100), amount int, flag int)").ignoreResult();
+    }
+
+    @After
+    public void unregisterBinders() {
+        TypeBinders.unregister(UUID.class);
+        TypeBinders.unregister(Color.class);
+        TypeBinders.unregister(Shape.class);
+    }
+
+    @Test
+    public void whenBinderIsRegisteredThenValuesOfThatTypeCanBeStoredAndRead() throws SQLException {
+        registerUUIDBinder();
+        UUID uuid = UUID.randomUUID();
+
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", UUID.class, uuid));
+
+        assertEquals(uuid, testDAO.execute("select name from test").getFirst(r -> r.get(UUID.class, "name")));
+        assertEquals(uuid, testDAO.execute("select name from test").getFirst(r -> r.get(UUID.class, 1)));
+    }
+
+    @Test
+    public void whenNullValueIsStoredThenSqlTypeOfBinderIsUsed() throws SQLException {
+        registerUUIDBinder();
+
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", UUID.class, null));
+
+        assertNull(testDAO.execute("select name from test").getFirst(r -> r.get(UUID.class, "name")));
+    }
+
+    @Test
+    public void enumsAreStoredByName() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", Color.class, Color.GREEN));
+
+        assertEquals("GREEN", testDAO.execute("select name from test").getFirst(r -> r.getString("name")));
+        assertEquals(Color.GREEN, testDAO.execute("select name from test").getFirst(r -> r.get(Color.class, "name")));
+    }
+
+    @Test
+    public void enumConstantsWithBodyAreStoredByName() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", Shape.SQUARE.getClass(), Shape.SQUARE));
+
+        assertEquals("SQUARE", testDAO.execute("select name from test").getFirst(r -> r.getString("name")));
+        assertEquals(Shape.SQUARE, testDAO.execute("select name from test").getFirst(r -> r.get(Shape.class, "name")));
+    }
+
+    @Test
+    public void whenBinderIsRegisteredForEnumThenEnumsAddedByValueUseIt() throws SQLException {
+        TypeBinders.register(Color.class, TypeBinders.of(Types.VARCHAR,
+                (statement, index, value) -> statement.setString(index, value.name().toLowerCase()),
+                (resultSet, columnLabel) -> Color.valueOf(resultSet.getString(columnLabel).toUpperCase()),
+                (resultSet, columnIndex) -> Color.valueOf(resultSet.getString(columnIndex).toUpperCase())));
+
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", Color.GREEN));
+
+        assertEquals("green", testDAO.execute("select name from test").getFirst(r -> r.getString("name")));
+        assertEquals(Color.GREEN, testDAO.execute("select name from test").getFirst(r -> r.get(Color.class, "name")));
+    }
+
+    @Test
+    public void whenBinderIsRegisteredForEnumAfterUseThenConstantsWithBodyUseIt() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", Shape.SQUARE.getClass(), Shape.SQUARE));
+
+        TypeBinders.register(Shape.class, TypeBinders.of(Types.VARCHAR,
+                (statement, index, value) -> statement.setString(index, value.name().toLowerCase()),
+                (resultSet, columnLabel) -> Shape.valueOf(resultSet.getString(columnLabel).toUpperCase()),
+                (resultSet, columnIndex) -> Shape.valueOf(resultSet.getString(columnIndex).toUpperCase())));
+        testDAO.insert("test", new NameValuePairs().add("id", 2).add("name", Shape.SQUARE.getClass(), Shape.SQUARE));
+
+        assertEquals("SQUARE", testDAO.execute("select name from test where id=1").getFirst(r -> r.getString("name")));
+        assertEquals("square", testDAO.execute("select name from test where id=2").getFirst(r -> r.getString("name")));
+    }
+
+    @Test
+    public void whenNullEnumIsAddedThenNullIsStored() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", (Color) null));
+
+        assertNull(testDAO.execute("select name from test").getFirst(r -> r.get(Color.class, "name")));
+    }
+
+    @Test
+    public void booleansAreStoredAsZeroOrOne() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("flag", true));
+
+        assertEquals(1, (int) testDAO.execute("select flag from test").getFirst(r -> r.getInt("flag")));
+        assertEquals(Boolean.TRUE, testDAO.execute("select flag from test").getFirst(r -> r.get(Boolean.class, "flag")));
+    }
+
+    @Test
+    public void whenNullNumberIsReadThenNullIsReturned() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1));
+
+        assertNull(testDAO.execute("select amount from test").getFirst(r -> r.get(Integer.class, "amount")));
+    }
+
+    @Test
+    public void valuesCanBeReadFromNameValuePairs() throws SQLException {
+        NameValuePairs nameValuePairs = new NameValuePairs().add("id", 3).add("color", Color.class, Color.RED);
+        ResultSetWrapper resultSet = new ResultSetWrapper(new NameValuePairsResultSet(nameValuePairs));
+
+        assertEquals(Integer.valueOf(3), resultSet.get(Integer.class, "id"));
+        assertEquals(Color.RED, resultSet.get(Color.class, "color"));
+    }
+
+    @Test(expected = SQLException.class)
+    public void whenNoBinderExistsForTypeThenExceptionIsThrown() throws SQLException {
+        testDAO.insert("test", new NameValuePairs().add("id", 1).add("name", StringBuilder.class, new StringBuilder("x")));
+    }
+
+    private void registerUUIDBinder() {
+        TypeBinders.register(UUID.class, TypeBinders.of(Types.VARCHAR,
+                (statement, index, value) -> statement.setString(index, value.toString()),
+                (resultSet, columnLabel) -> toUUID(resultSet.getString(columnLabel)),
+                (resultSet, columnIndex) -> toUUID(resultSet.getString(columnIndex))));
+    }
+
+    private static UUID toUUID(String value) {
+        return value != null ? UUID.fromString(value) : null;
+    }
+
+    private static class TestDAO extends AbstractDAO {
+
+        public TestDAO() throws DataAccessException {
+            super("test");
+        }
+    }
+}
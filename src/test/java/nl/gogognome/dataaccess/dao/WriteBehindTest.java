@@ -0,0 +1,330 @@
+package nl.gogognome.dataaccess.dao;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.transaction.CompositeDatasourceTransaction;
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.NestedTransaction;
+import nl.gogognome.dataaccess.transaction.NewTransaction;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class WriteBehindTest extends BaseInMemTransactionTest {
+
+    private AuthorDAO authorDAO;
+
+    @Before
+    public void initDatabase() throws DataAccessException, SQLException, IOException {
+        new TableDAO().createTablesAndSequences();
+        authorDAO = new AuthorDAO();
+    }
+
+    @Test
+    public void whenWriteBehindIsNotEnabledThenItIsNotEnabled() {
+        assertFalse(WriteBehind.isEnabled());
+    }
+
+    @Test
+    public void createdAuthorsAreNotVisibleForOtherTransactionsBeforeCommit() throws SQLException {
+        WriteBehind.enable();
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+        authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+
+        assertEquals(0, countAuthorsUsingOtherConnection());
+
+        CurrentTransaction.get().commit();
+
+        assertEquals(2, countAuthorsUsingOtherConnection());
+    }
+
+    @Test
+    public void queuedStatementsAreExecutedBeforeReadingTheSameTable() throws SQLException {
+        WriteBehind.enable();
+        Author author = authorDAO.create(buildAuthor("Terry Pratchett"));
+        author.setName("Sir Terry Pratchett");
+        authorDAO.update(author);
+        authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+
+        assertEquals(asList("J.R.R. Tolkien", "Sir Terry Pratchett"), authorDAO.findAll("name").stream().map(Author::getName).collect(toList()));
+    }
+
+    @Test
+    public void queuedStatementsAreExecutedWhenMaximumNumberOfRowsIsReached() throws SQLException {
+        WriteBehind.enable(2);
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+        assertEquals(0, countAuthorsUsingOtherConnection());
+
+        authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+        CurrentTransaction.get().commit();
+        authorDAO.create(buildAuthor("Joanne Rowling"));
+
+        assertEquals(2, countAuthorsUsingOtherConnection());
+    }
+
+    @Test
+    public void whenUpdatedRecordDoesNotExistThenNoRecordFoundExceptionIsThrownWhenStatementsAreExecuted() throws SQLException {
+        WriteBehind.enable();
+        Author author = buildAuthor("Terry Pratchett");
+        author.setId(123);
+        authorDAO.update(author);
+
+        try {
+            WriteBehind.flushCurrentTransaction();
+            fail("Expected exception was not thrown");
+        } catch (NoRecordFoundException e) {
+            // expected exception
+        }
+    }
+
+    @Test
+    public void whenDeletedRecordDoesNotExistThenCommitFails() throws SQLException {
+        WriteBehind.enable();
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+        authorDAO.delete(123L);
+
+        try {
+            CurrentTransaction.get().commit();
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals(NoRecordFoundException.class, e.getCause().getClass());
+            assertEquals(e.getCause().getMessage(), e.getMessage());
+        }
+        assertEquals(0, countAuthorsUsingOtherConnection());
+    }
+
+    @Test
+    public void whenDeletedRecordDoesNotExistThenSameExceptionIsThrownAsWithoutWriteBehind() {
+        DataAccessException writeThroughException = deleteNonExistingAuthorInNewTransaction(false);
+        DataAccessException writeBehindException = deleteNonExistingAuthorInNewTransaction(true);
+
+        assertEquals(writeThroughException.getClass(), writeBehindException.getClass());
+        assertEquals(NoRecordFoundException.class, writeThroughException.getCause().getClass());
+        assertEquals(NoRecordFoundException.class, writeBehindException.getCause().getClass());
+        assertEquals(writeThroughException.getMessage(), writeBehindException.getMessage());
+    }
+
+    private DataAccessException deleteNonExistingAuthorInNewTransaction(boolean writeBehind) {
+        try {
+            NewTransaction.runs(() -> {
+                if (writeBehind) {
+                    WriteBehind.enable();
+                }
+                authorDAO.delete(123L);
+            });
+            fail("Expected exception was not thrown");
+            return null;
+        } catch (DataAccessException e) {
+            return e;
+        }
+    }
+
+    @Test
+    public void whenBatchFailsThenLaterBatchesRemainQueued() throws SQLException {
+        WriteBehind.enable();
+        Author author = buildAuthor("Terry Pratchett");
+        author.setId(123);
+        authorDAO.update(author);
+        authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+
+        try {
+            WriteBehind.flushCurrentTransaction();
+            fail("Expected exception was not thrown");
+        } catch (NoRecordFoundException e) {
+            // expected exception
+        }
+        WriteBehind.flushCurrentTransaction();
+
+        assertEquals(1, countAuthorsInCurrentTransaction());
+    }
+
+    @Test
+    public void queuedStatementsAreExecutedBeforeScriptIsRun() throws SQLException, IOException {
+        WriteBehind.enable();
+        Author author = authorDAO.create(buildAuthor("Terry Pratchett"));
+
+        new TableDAO().runScript("insert into book (id, title, author_id) values (1, 'Mort', " + author.getId() + ");");
+
+        assertEquals(1, countAuthorsInCurrentTransaction());
+    }
+
+    @Test
+    public void queuedStatementsAreDiscardedOnRollback() throws SQLException {
+        WriteBehind.enable();
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+
+        CurrentTransaction.get().rollback();
+
+        assertEquals(0, authorDAO.findAll().size());
+    }
+
+    @Test
+    public void statementsQueuedBeforeFailingNestedTransactionAreNotRolledBack() throws SQLException {
+        WriteBehind.enable();
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+
+        try {
+            NestedTransaction.runs(() -> {
+                authorDAO.findAll();
+                throw new SQLException("nested transaction failed");
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals("nested transaction failed", e.getMessage());
+        }
+        CurrentTransaction.get().commit();
+
+        assertEquals(1, countAuthorsUsingOtherConnection());
+    }
+
+    @Test
+    public void statementsQueuedByFailingNestedTransactionAreDiscarded() throws SQLException {
+        WriteBehind.enable();
+        authorDAO.create(buildAuthor("Terry Pratchett"));
+
+        try {
+            NestedTransaction.runs(() -> {
+                authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+                throw new SQLException("nested transaction failed");
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals("nested transaction failed", e.getMessage());
+        }
+        authorDAO.create(buildAuthor("Joanne Rowling"));
+        CurrentTransaction.get().commit();
+
+        assertEquals(asList("Joanne Rowling", "Terry Pratchett"), authorDAO.findAll("name").stream().map(Author::getName).collect(toList()));
+    }
+
+    @Test
+    public void whenDriverDoesNotReportBatchUpdateCountsThenMissingRecordIsStillDetected() throws SQLException {
+        DataSource dataSource = CompositeDatasourceTransaction.getDataSource("test");
+        CompositeDatasourceTransaction.registerDataSource("test", withoutBatchUpdateCounts(dataSource));
+        try {
+            // the first batch is rolled back to a savepoint; later batches are executed row by row immediately
+            for (int i = 0; i < 2; i++) {
+                DataAccessException exception = deleteNonExistingAuthorInNewTransaction(true);
+                assertEquals(NoRecordFoundException.class, exception.getCause().getClass());
+            }
+
+            NewTransaction.runs(() -> {
+                WriteBehind.enable();
+                Author author = authorDAO.create(buildAuthor("Terry Pratchett"));
+                author.setName("Sir Terry Pratchett");
+                authorDAO.update(author);
+                authorDAO.create(buildAuthor("J.R.R. Tolkien"));
+            });
+            assertEquals(2, countAuthorsUsingOtherConnection());
+        } finally {
+            CompositeDatasourceTransaction.registerDataSource("test", dataSource);
+        }
+    }
+
+    private static DataSource withoutBatchUpdateCounts(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(dataSource, method, args);
+                    return result instanceof Connection ? withoutBatchUpdateCounts((Connection) result) : result;
+                });
+    }
+
+    private static Connection withoutBatchUpdateCounts(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    return result instanceof PreparedStatement ? withoutBatchUpdateCounts((PreparedStatement) result) : result;
+                });
+    }
+
+    private static PreparedStatement withoutBatchUpdateCounts(PreparedStatement statement) {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(statement, method, args);
+                    if (method.getName().equals("executeBatch")) {
+                        Arrays.fill((int[]) result, Statement.SUCCESS_NO_INFO);
+                    }
+                    return result;
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private int countAuthorsInCurrentTransaction() throws SQLException {
+        return authorDAO.count(null);
+    }
+
+    private int countAuthorsUsingOtherConnection() throws SQLException {
+        try (Connection connection = CompositeDatasourceTransaction.getDataSource("test").getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from author")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private Author buildAuthor(String name) {
+        Author author = new Author();
+        author.setName(name);
+        return author;
+    }
+
+    private class TableDAO extends AbstractDAO {
+        public TableDAO() throws DataAccessException {
+            super("test");
+        }
+
+        public void createTablesAndSequences() throws SQLException, IOException {
+            runScript(new InputStreamReader(getClass().getResourceAsStream("create_author_and_book.sql")), true);
+        }
+
+        public void runScript(String script) throws SQLException, IOException {
+            runScript(new StringReader(script), false);
+        }
+    }
+
+    private class AuthorDAO extends AbstractDomainClassDAO<Author> {
+
+        public AuthorDAO() throws DataAccessException {
+            super("author", "author_sequence", "test");
+        }
+
+        @Override
+        protected Author getObjectFromResultSet(ResultSetWrapper result) throws SQLException {
+            Author author = new Author();
+            author.setId(result.getLong("id"));
+            author.setName(result.getString("name"));
+            return author;
+        }
+
+        @Override
+        protected NameValuePairs getNameValuePairs(Author domainObject) throws SQLException {
+            return new NameValuePairs()
+                    .add("id", domainObject.getId())
+                    .add("name", domainObject.getName());
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package nl.gogognome.dataaccess.pool;
+
+import nl.gogognome.dataaccess.transaction.CompositeDatasourceTransaction;
+import nl.gogognome.dataaccess.transaction.CurrentTransaction;
+import nl.gogognome.dataaccess.transaction.NewTransaction;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ConnectionPoolTest {
+
+    private static int uniqueId = 0;
+
+    private JdbcDataSource dataSource;
+    private ConnectionPool pool;
+
+    @Before
+    public void createDataSource() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ConnectionPoolTest_" + uniqueId + ";DB_CLOSE_DELAY=-1");
+        uniqueId++;
+    }
+
+    @After
+    public void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void whenConnectionIsReturnedThenItIsReusedBySameThread() throws SQLException {
+        pool = new ConnectionPool(dataSource);
+
+        Connection physicalConnection;
+        try (Connection connection = pool.getConnection()) {
+            physicalConnection = connection.unwrap(JdbcConnection.class);
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertSame(physicalConnection, connection.unwrap(JdbcConnection.class));
+        }
+
+        assertEquals(1, pool.getNrCreatedConnections());
+        assertEquals(2, pool.getNrBorrows());
+        assertEquals(1, pool.getNrAffinityHits());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void whenAllConnectionsAreInUseThenGetConnectionTimesOut() throws SQLException {
+        pool = new ConnectionPool(dataSource).withMaxSize(2).withMaxWait(50);
+        Connection connection1 = pool.getConnection();
+        Connection connection2 = pool.getConnection();
+
+        try {
+            pool.getConnection();
+            fail("Expected exception was not thrown");
+        } catch (SQLTransientConnectionException e) {
+            assertEquals(1, pool.getNrTimeouts());
+        }
+
+        connection1.close();
+        connection2.close();
+        assertEquals(2, pool.getTotalConnections());
+    }
+
+    @Test
+    public void whenConnectionIsReturnedThenWaitingThreadGetsIt() throws Exception {
+        pool = new ConnectionPool(dataSource).withMaxSize(1);
+        Connection connection = pool.getConnection();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> future = executor.submit(() -> {
+                try (Connection c = pool.getConnection()) {
+                    return c.isValid(1);
+                }
+            });
+            while (pool.getNrThreadsAwaitingConnection() == 0) {
+                Thread.sleep(1);
+            }
+
+            connection.close();
+
+            assertTrue(future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void whenConnectionIsClosedThenItCannotBeUsedAnymore() throws SQLException {
+        pool = new ConnectionPool(dataSource);
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        try {
+            connection.createStatement();
+            fail("Expected exception was not thrown");
+        } catch (SQLException e) {
+            assertEquals("Connection is closed", e.getMessage());
+        }
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void idleConnectionsAreEvictedUntilMinimumSizeIsReached() throws Exception {
+        pool = new ConnectionPool(dataSource).withMinSize(1).withIdleTimeout(1);
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            connections.add(pool.getConnection());
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        Thread.sleep(10);
+
+        pool.evictIdleConnections();
+
+        assertEquals(1, pool.getTotalConnections());
+        assertEquals(2, pool.getNrEvictedConnections());
+    }
+
+    @Test
+    public void whenIdleConnectionIsInvalidThenItIsReplaced() throws SQLException {
+        pool = new ConnectionPool(dataSource).withValidation(0, 1);
+        try (Connection connection = pool.getConnection()) {
+            connection.unwrap(JdbcConnection.class).close();
+        }
+        assertEquals(0, pool.getTotalConnections());
+
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.isValid(1));
+        }
+        assertEquals(1, pool.getTotalConnections());
+        assertEquals(2, pool.getNrCreatedConnections());
+    }
+
+    @Test
+    public void whenPhysicalConnectionFailsValidationThenItIsRemoved() throws SQLException {
+        pool = new ConnectionPool(dataSource).withValidation(0, 1).withThreadAffinity(false);
+        Connection connection = pool.getConnection();
+        JdbcConnection physicalConnection = connection.unwrap(JdbcConnection.class);
+        connection.close();
+        physicalConnection.close();
+
+        try (Connection newConnection = pool.getConnection()) {
+            assertNotSame(physicalConnection, newConnection.unwrap(JdbcConnection.class));
+        }
+        assertEquals(1, pool.getNrValidationFailures());
+    }
+
+    @Test
+    public void manyThreadsShareLimitedNumberOfConnections() throws Exception {
+        pool = new ConnectionPool(dataSource).withMaxSize(3);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        try (Connection connection = pool.getConnection()) {
+                            assertTrue(pool.getActiveConnections() <= 3);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(pool.getTotalConnections() <= 3);
+        assertEquals(1600, pool.getNrBorrows());
+        assertEquals(0, pool.getActiveConnections());
+    }
+
+    @Test
+    public void poolCanBeRegisteredAsDataSourceOfTransactions() {
+        pool = new ConnectionPool(dataSource);
+        CompositeDatasourceTransaction.registerDataSource("pooled", pool);
+
+        for (int i = 0; i < 3; i++) {
+            NewTransaction.runs(() -> ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("pooled"));
+        }
+
+        assertEquals(1, pool.getNrCreatedConnections());
+        assertEquals(3, pool.getNrBorrows());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void whenStateIsSetToCurrentValueThenDriverIsNotCalled() throws SQLException {
+        pool = new ConnectionPool(dataSource).withDefaultAutoCommit(false);
+
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.getAutoCommit());
+            connection.setAutoCommit(false);
+            connection.setReadOnly(false);
+            connection.setTransactionIsolation(connection.getTransactionIsolation());
+        }
+
+        assertEquals(3, pool.getNrSkippedStateChanges());
+    }
+
+    @Test
+    public void whenConnectionIsReturnedThenStateIsRestored() throws SQLException {
+        pool = new ConnectionPool(dataSource).withDefaultAutoCommit(false);
+
+        int defaultIsolation;
+        try (Connection connection = pool.getConnection()) {
+            defaultIsolation = connection.getTransactionIsolation();
+            connection.setAutoCommit(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+        }
+
+        try (Connection connection = pool.getConnection()) {
+            JdbcConnection physicalConnection = connection.unwrap(JdbcConnection.class);
+            assertFalse(physicalConnection.getAutoCommit());
+            assertEquals(defaultIsolation, physicalConnection.getTransactionIsolation());
+        }
+        assertEquals(1, pool.getNrCreatedConnections());
+    }
+
+    @Test
+    public void whenConnectionWithPendingTransactionIsReturnedThenTransactionIsRolledBack() throws SQLException {
+        pool = new ConnectionPool(dataSource).withDefaultAutoCommit(false);
+        try (Connection connection = pool.getConnection()) {
+            connection.createStatement().execute("create table test (id int)");
+            connection.commit();
+            connection.createStatement().execute("insert into test values (1)");
+        }
+
+        try (Connection connection = pool.getConnection();
+             ResultSet resultSet = connection.createStatement().executeQuery("select count(*) from test")) {
+            resultSet.next();
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void whenConnectionIsReturnedThenOpenStatementsAreClosed() throws SQLException {
+        pool = new ConnectionPool(dataSource);
+
+        Statement openStatement;
+        Statement closedStatement;
+        try (Connection connection = pool.getConnection()) {
+            openStatement = connection.createStatement();
+            closedStatement = connection.prepareStatement("select 1");
+            closedStatement.close();
+        }
+
+        assertTrue(openStatement.isClosed());
+        assertTrue(closedStatement.isClosed());
+        assertEquals(1, pool.getIdleConnections());
+    }
+
+    @Test
+    public void whenMinimumSizeExceedsMaximumSizeThenPoolCanStillBeConfigured() throws SQLException {
+        pool = new ConnectionPool(dataSource).withMinSize(5).withMaxSize(2);
+
+        try {
+            pool.getConnection();
+            fail("Expected exception was not thrown");
+        } catch (SQLException e) {
+            assertEquals("The minimum size 5 exceeds the maximum size 2", e.getMessage());
+        }
+
+        pool.withMaxSize(5);
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenMaximumSizeIsZeroThenConfigurationFails() {
+        new ConnectionPool(dataSource).withMaxSize(0);
+    }
+}
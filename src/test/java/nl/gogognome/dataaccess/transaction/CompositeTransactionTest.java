@@ -0,0 +1,303 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class CompositeTransactionTest {
+
+    private final CompositeTransaction compositeTransaction = new CompositeTransaction();
+    private final List<String> calledMethods = new CopyOnWriteArrayList<>();
+    private ExecutorService executor;
+
+    @After
+    public void resetSettings() {
+        TransactionSettings.completionExecutor = null;
+        TransactionSettings.callbackExecutor = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void withoutExecutorTransactionsAreCommittedInOrder() {
+        for (int i = 0; i < 3; i++) {
+            compositeTransaction.addTransaction(new TestTransaction("t" + i, null, null));
+        }
+
+        compositeTransaction.commit();
+        compositeTransaction.close();
+
+        assertEquals(asList("commit t0", "commit t1", "commit t2", "close t0", "close t1", "close t2"), calledMethods);
+    }
+
+    @Test
+    public void withExecutorTransactionsAreCommittedConcurrently() {
+        executor = Executors.newFixedThreadPool(4);
+        TransactionSettings.completionExecutor = executor;
+        CountDownLatch allCommitsStarted = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            compositeTransaction.addTransaction(new TestTransaction("t" + i, allCommitsStarted, null));
+        }
+
+        compositeTransaction.commit();
+
+        assertEquals(4, calledMethods.size());
+    }
+
+    @Test
+    public void withExecutorFirstFailingTransactionDeterminesException() {
+        executor = Executors.newFixedThreadPool(4);
+        TransactionSettings.completionExecutor = executor;
+        DataAccessException exception1 = new DataAccessException("first");
+        DataAccessException exception3 = new DataAccessException("second");
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+        compositeTransaction.addTransaction(new TestTransaction("t1", null, exception1));
+        compositeTransaction.addTransaction(new TestTransaction("t2", null, null));
+        compositeTransaction.addTransaction(new TestTransaction("t3", null, exception3));
+
+        try {
+            compositeTransaction.rollback();
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertSame(exception1, e);
+            assertArrayEquals(new Throwable[] { exception3 }, e.getSuppressed());
+        }
+        assertEquals(4, calledMethods.size());
+    }
+
+    @Test
+    public void callbacksAreExecutedInOrderAroundCommitAndClose() {
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+        compositeTransaction.beforeCommit(() -> calledMethods.add("before commit"));
+        compositeTransaction.afterCommit(() -> calledMethods.add("after commit 1"));
+        compositeTransaction.afterCommit(() -> calledMethods.add("after commit 2"));
+        compositeTransaction.afterRollback(() -> calledMethods.add("after rollback"));
+        compositeTransaction.afterCompletion(committed -> calledMethods.add("after completion " + committed));
+
+        compositeTransaction.commit();
+        compositeTransaction.close();
+
+        assertEquals(asList("before commit", "commit t0", "after commit 1", "after commit 2", "close t0", "after completion true"),
+                calledMethods);
+    }
+
+    @Test
+    public void callbacksCanBeRegisteredConcurrently() throws Exception {
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+        AtomicInteger nrCallbacks = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    compositeTransaction.beforeCommit(nrCallbacks::incrementAndGet);
+                    compositeTransaction.afterCommit(nrCallbacks::incrementAndGet);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        compositeTransaction.commit();
+
+        assertEquals(8000, nrCallbacks.get());
+    }
+
+    @Test
+    public void afterCommitCallbacksAreNotExecutedOnRollback() {
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+        compositeTransaction.afterCommit(() -> calledMethods.add("after commit"));
+        compositeTransaction.afterRollback(() -> calledMethods.add("after rollback"));
+        compositeTransaction.afterCompletion(committed -> calledMethods.add("after completion " + committed));
+
+        compositeTransaction.rollback();
+        compositeTransaction.close();
+
+        assertEquals(asList("rollback t0", "after rollback", "close t0", "after completion false"), calledMethods);
+    }
+
+    @Test
+    public void whenCommitFailsThenAfterCommitCallbacksAreNotExecuted() {
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, new DataAccessException("failure")));
+        compositeTransaction.afterCommit(() -> calledMethods.add("after commit"));
+
+        try {
+            compositeTransaction.commit();
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals(asList("commit t0"), calledMethods);
+        }
+    }
+
+    @Test
+    public void whenAfterCommitOrAfterCompletionCallbackFailsThenOtherCallbacksAreExecutedAndNoExceptionIsThrown() {
+        compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+        compositeTransaction.afterCommit(() -> {
+            throw new IllegalStateException("after commit failed");
+        });
+        compositeTransaction.afterCommit(() -> calledMethods.add("after commit"));
+        compositeTransaction.afterCompletion(committed -> {
+            throw new IllegalStateException("after completion failed");
+        });
+        compositeTransaction.afterCompletion(committed -> calledMethods.add("after completion " + committed));
+
+        compositeTransaction.commit();
+        compositeTransaction.close();
+
+        assertEquals(asList("commit t0", "after commit", "close t0", "after completion true"), calledMethods);
+    }
+
+    @Test
+    public void whenBeforeCommitCallbackFailsThenTransactionIsRolledBackOnce() {
+        Supplier<Transaction> originalTransactionCreator = CurrentTransaction.transactionCreator;
+        CurrentTransaction.transactionCreator = () -> compositeTransaction;
+        try {
+            NewTransaction.runs(() -> {
+                compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+                compositeTransaction.beforeCommit(() -> {
+                    throw new IllegalStateException("before commit failed");
+                });
+                compositeTransaction.afterRollback(() -> calledMethods.add("after rollback"));
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals("before commit failed", e.getMessage());
+        } finally {
+            CurrentTransaction.transactionCreator = originalTransactionCreator;
+        }
+
+        assertEquals(asList("rollback t0", "after rollback", "close t0"), calledMethods);
+    }
+
+    @Test
+    public void whenExplicitCommitFailsInBeforeCommitCallbackThenTransactionIsRolledBackOnce() {
+        Supplier<Transaction> originalTransactionCreator = CurrentTransaction.transactionCreator;
+        CurrentTransaction.transactionCreator = () -> compositeTransaction;
+        try {
+            NewTransaction.runs(() -> {
+                compositeTransaction.addTransaction(new TestTransaction("t0", null, null));
+                compositeTransaction.beforeCommit(() -> {
+                    throw new IllegalStateException("before commit failed");
+                });
+                compositeTransaction.afterRollback(() -> calledMethods.add("after rollback"));
+                CurrentTransaction.get().commit();
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertEquals("before commit failed", e.getMessage());
+        } finally {
+            CurrentTransaction.transactionCreator = originalTransactionCreator;
+        }
+
+        assertEquals(asList("rollback t0", "after rollback", "close t0"), calledMethods);
+    }
+
+    @Test
+    public void whenCurrentTransactionDoesNotSupportCallbacksThenGetWithCallbacksFails() {
+        Supplier<Transaction> originalTransactionCreator = CurrentTransaction.transactionCreator;
+        CurrentTransaction.transactionCreator = () -> new TestTransaction("t0", null, null);
+        try {
+            NewTransaction.runs(CurrentTransaction::getWithCallbacks);
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            CurrentTransaction.transactionCreator = originalTransactionCreator;
+        }
+    }
+
+    @Test
+    public void asynchronousCallbacksAreExecutedByCallbackExecutor() throws Exception {
+        executor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "callback-thread"));
+        TransactionSettings.callbackExecutor = executor;
+        CountDownLatch callbackExecuted = new CountDownLatch(1);
+        compositeTransaction.afterCommit(() -> {
+            calledMethods.add("after commit in " + Thread.currentThread().getName());
+            callbackExecuted.countDown();
+        }, true);
+
+        compositeTransaction.commit();
+
+        assertTrue(callbackExecuted.await(10, TimeUnit.SECONDS));
+        assertEquals(asList("after commit in callback-thread"), calledMethods);
+    }
+
+    @Test
+    public void connectionTransactionSupportsCallbacks() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:CompositeTransactionTest");
+        ConnectionTransaction transaction = new ConnectionTransaction(dataSource.getConnection());
+        transaction.afterCommit(() -> calledMethods.add("after commit"));
+        transaction.afterCompletion(committed -> calledMethods.add("after completion " + committed));
+
+        transaction.commit();
+        transaction.close();
+
+        assertEquals(asList("after commit", "after completion true"), calledMethods);
+    }
+
+    private class TestTransaction implements Transaction {
+
+        private final String name;
+        private final CountDownLatch latch;
+        private final DataAccessException exception;
+
+        private TestTransaction(String name, CountDownLatch latch, DataAccessException exception) {
+            this.name = name;
+            this.latch = latch;
+            this.exception = exception;
+        }
+
+        @Override
+        public void commit() {
+            perform("commit");
+        }
+
+        @Override
+        public void rollback() {
+            perform("rollback");
+        }
+
+        @Override
+        public void close() {
+            perform("close");
+        }
+
+        private void perform(String action) {
+            calledMethods.add(action + ' ' + name);
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    assertTrue("Transactions were not completed concurrently", latch.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new DataAccessException(e);
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+
+        @Override
+        public String getCreationDetails() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.dao.PreparedStatementWrapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+
+    @After
+    public void removeLimiter() {
+        CompositeDatasourceTransaction.registerConcurrencyLimiter("limited", null);
+    }
+
+    @Test
+    public void whenLimitIsReachedThenGettingConnectionTimesOut() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ConcurrencyLimiterTest");
+        CompositeDatasourceTransaction.registerDataSource("limited", dataSource);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1).withMaxWait(50);
+        CompositeDatasourceTransaction.registerConcurrencyLimiter("limited", limiter);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            NewTransaction.runs(() -> {
+                getConnection();
+                assertEquals(1, limiter.getInFlight());
+                Future<?> future = executor.submit(TransactionPropagation.inNewTransaction(this::getConnection));
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("Expected exception was not thrown");
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof DataAccessException);
+                    assertTrue(e.getCause().getCause() instanceof SQLTransientConnectionException);
+                }
+            });
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(1, limiter.getNrTimeouts());
+        assertEquals(1, limiter.getNrAcquired());
+        NewTransaction.runs(this::getConnection);
+        assertEquals(2, limiter.getNrAcquired());
+    }
+
+    @Test
+    public void whenLatencyExceedsTargetThenLimitIsDecreased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10).withAdaptiveLimit(2, 20, 0);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.statementExecuted(1_000_000);
+        }
+
+        assertEquals(2, limiter.getLimit());
+        assertEquals(20, limiter.getNrStatements());
+    }
+
+    @Test
+    public void whenLimitIsReachedWithLowLatencyThenLimitIsIncreased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2).withAdaptiveLimit(1, 3, 60_000);
+
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        permits.add(limiter.acquire());
+        permits.add(limiter.acquire());
+        limiter.statementExecuted(1_000);
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            limiter.release(permit);
+        }
+
+        assertEquals(3, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void whenConnectionIsHeldLongerThanTargetLatencyThenLimitIsNotDecreased() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10).withAdaptiveLimit(2, 20, 0);
+
+        for (int i = 0; i < 5; i++) {
+            ConcurrencyLimiter.Permit permit = limiter.acquire();
+            Thread.sleep(1);
+            limiter.release(permit);
+        }
+
+        assertEquals(10, limiter.getLimit());
+        assertTrue(limiter.getTotalHoldTimeMillis() >= 5);
+    }
+
+    @Test
+    public void whenAdaptiveLimitIsEnabledThenLimitIsMovedIntoRange() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(100).withAdaptiveLimit(4, 50, 100).withMaxWait(0);
+
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            permits.add(limiter.acquire());
+        }
+        try {
+            limiter.acquire();
+            fail("Expected exception was not thrown");
+        } catch (SQLTransientConnectionException e) {
+            assertEquals(50, limiter.getLimit());
+        }
+        for (ConcurrencyLimiter.Permit permit : permits) {
+            limiter.release(permit);
+        }
+
+        assertEquals(4, new ConcurrencyLimiter(1).withAdaptiveLimit(4, 50, 100).getLimit());
+    }
+
+    @Test
+    public void statementsExecutedOnLimitedConnectionAreReportedToLimiter() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ConcurrencyLimiterTest_statements");
+        CompositeDatasourceTransaction.registerDataSource("limited", dataSource);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(5).withAdaptiveLimit(1, 10, 60_000);
+        CompositeDatasourceTransaction.registerConcurrencyLimiter("limited", limiter);
+
+        NewTransaction.runs(() -> {
+            Connection connection = ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("limited");
+            assertSame(limiter, CompositeDatasourceTransaction.getConcurrencyLimiter(connection));
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(connection, "select 1")) {
+                    statement.executeQuery().close();
+                }
+            }
+        });
+
+        assertEquals(3, limiter.getNrStatements());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void whileTaskWaitsForPermitThenOtherThreadsOfTransactionCanGetConnections() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ConcurrencyLimiterTest_waiting;DB_CLOSE_DELAY=-1");
+        CompositeDatasourceTransaction.registerDataSource("limited", dataSource);
+        CompositeDatasourceTransaction.registerDataSource("unlimited", dataSource);
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1).withMaxWait(10_000);
+        CompositeDatasourceTransaction.registerConcurrencyLimiter("limited", limiter);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch permitTaken = new CountDownLatch(1);
+        CountDownLatch releasePermit = new CountDownLatch(1);
+        try {
+            Future<?> otherTransaction = executor.submit(TransactionPropagation.inNewTransaction(() -> {
+                getConnection();
+                permitTaken.countDown();
+                releasePermit.await(10, TimeUnit.SECONDS);
+            }));
+            assertTrue(permitTaken.await(10, TimeUnit.SECONDS));
+
+            NewTransaction.runs(() -> {
+                Future<?> waitingTask = executor.submit(TransactionPropagation.joinCurrent(this::getConnection));
+                while (limiter.getQueueDepth() == 0) {
+                    Thread.sleep(1);
+                }
+
+                long start = System.currentTimeMillis();
+                ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("unlimited");
+                assertTrue(System.currentTimeMillis() - start < 5_000);
+
+                releasePermit.countDown();
+                waitingTask.get(10, TimeUnit.SECONDS);
+            });
+            otherTransaction.get(10, TimeUnit.SECONDS);
+        } finally {
+            releasePermit.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private void getConnection() {
+        ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("limited");
+    }
+}
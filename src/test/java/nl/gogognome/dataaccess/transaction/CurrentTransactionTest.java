@@ -76,14 +76,12 @@ class CurrentTransactionCheckThread extends Thread {
     @Override
     public void run() {
         try {
-            CurrentTransaction.create();
-            CurrentTransaction currentTransactionPool = CurrentTransaction.getInstance();
-            CurrentTransaction.close(false);
             while (System.currentTimeMillis() < endTime) {
                 for (int i = 0; i < 1000; i++) {
-                    CurrentTransaction.create();
-                    assertSame(currentTransactionPool, CurrentTransaction.getInstance());
+                    Transaction transaction = CurrentTransaction.create();
+                    assertSame(transaction, CurrentTransaction.get());
                     CurrentTransaction.close(false);
+                    assertTrue(CurrentTransaction.getContext().isEmpty());
                 }
             }
         } catch (Throwable e) {
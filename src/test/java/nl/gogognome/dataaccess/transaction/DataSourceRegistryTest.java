@@ -0,0 +1,68 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.pool.ConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class DataSourceRegistryTest {
+
+    @Test
+    public void whenDataSourceIsReplacedThenRunningTransactionKeepsItsConnection() throws Exception {
+        ConnectionPool oldPool = new ConnectionPool(createDataSource("old"));
+        ConnectionPool newPool = new ConnectionPool(createDataSource("new"));
+        CompositeDatasourceTransaction.registerDataSource("swapped", oldPool);
+
+        CompletableFuture<Void> drained = NewTransaction.returns(() -> {
+            Connection connection = getConnection();
+            CompletableFuture<Void> future = CompositeDatasourceTransaction.replaceDataSource("swapped", newPool);
+
+            assertSame(connection, getConnection());
+            assertEquals(1, oldPool.getActiveConnections());
+            NewTransaction.runs(() -> getConnection());
+            assertEquals(1, newPool.getNrBorrows());
+            assertFalse(future.isDone());
+            return future;
+        });
+
+        assertTrue(drained.isDone());
+        try {
+            oldPool.getConnection();
+            fail("Expected exception was not thrown");
+        } catch (SQLException e) {
+            // expected: the old pool has been closed
+        }
+        newPool.close();
+    }
+
+    @Test
+    public void whenUnusedDataSourceIsReplacedThenItIsClosedImmediately() {
+        ConnectionPool oldPool = new ConnectionPool(createDataSource("unused"));
+        CompositeDatasourceTransaction.registerDataSource("swapped", oldPool);
+
+        CompletableFuture<Void> drained = CompositeDatasourceTransaction.replaceDataSource("swapped", createDataSource("other"));
+
+        assertTrue(drained.isDone());
+    }
+
+    @Test(expected = DataAccessException.class)
+    public void whenNoDataSourceIsRegisteredThenGettingConnectionFails() {
+        NewTransaction.runs(() -> ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("nonexisting"));
+    }
+
+    private JdbcDataSource createDataSource(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:DataSourceRegistryTest_" + name);
+        return dataSource;
+    }
+
+    private Connection getConnection() {
+        return ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection("swapped");
+    }
+}
@@ -0,0 +1,182 @@
+package nl.gogognome.dataaccess.transaction;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GroupCommitExecutorTest {
+
+    private static int uniqueId = 0;
+
+    private GroupCommitExecutor groupCommitExecutor;
+
+    @Before
+    public void createDatabase() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:GroupCommitExecutorTest_" + uniqueId++ + ";DB_CLOSE_DELAY=-1");
+        CompositeDatasourceTransaction.registerDataSource("groupcommit", dataSource);
+        NewTransaction.runs(() -> execute("create table test (id int primary key)"));
+    }
+
+    @After
+    public void closeExecutor() {
+        if (groupCommitExecutor != null) {
+            groupCommitExecutor.close();
+        }
+    }
+
+    @Test
+    public void unitsSubmittedConcurrentlyShareTransactions() throws Exception {
+        groupCommitExecutor = new GroupCommitExecutor().withMaxGroupSize(20).withMaxDelay(50);
+
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            int id = i;
+            futures.add(groupCommitExecutor.returns(() -> {
+                execute("insert into test values (" + id + ")");
+                return id;
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, futures.get(i).get(10, TimeUnit.SECONDS).intValue());
+        }
+
+        assertEquals(100, count());
+        assertEquals(100, groupCommitExecutor.getNrUnits());
+        assertTrue("Expected fewer groups than units", groupCommitExecutor.getNrGroups() < 100);
+    }
+
+    @Test
+    public void failingUnitDoesNotCauseOtherUnitsOfGroupToFail() throws Exception {
+        groupCommitExecutor = new GroupCommitExecutor().withMaxGroupSize(10).withMaxDelay(200);
+
+        CompletableFuture<Void> future1 = groupCommitExecutor.runs(() -> execute("insert into test values (1)"));
+        CompletableFuture<Void> failingFuture = groupCommitExecutor.runs(() -> execute("insert into nonexisting values (2)"));
+        CompletableFuture<Void> future3 = groupCommitExecutor.runs(() -> execute("insert into test values (3)"));
+
+        future1.get(10, TimeUnit.SECONDS);
+        future3.get(10, TimeUnit.SECONDS);
+        try {
+            failingFuture.get(10, TimeUnit.SECONDS);
+            fail("Expected exception was not thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof SQLException);
+        }
+        assertEquals(2, count());
+        assertEquals(3, groupCommitExecutor.getNrIndividuallyExecutedUnits());
+    }
+
+    @Test
+    public void whenUnitThrowsErrorThenItsFutureFailsAndWorkerContinues() throws Exception {
+        groupCommitExecutor = new GroupCommitExecutor();
+
+        CompletableFuture<Void> failingFuture = groupCommitExecutor.runs(() -> {
+            throw new AssertionError("unexpected error");
+        });
+        try {
+            failingFuture.get(10, TimeUnit.SECONDS);
+            fail("Expected exception was not thrown");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof AssertionError);
+        }
+
+        groupCommitExecutor.runs(() -> execute("insert into test values (1)")).get(10, TimeUnit.SECONDS);
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void unitsSubmittedWhileExecutorIsClosedAreExecutedOrRejected() throws Exception {
+        groupCommitExecutor = new GroupCommitExecutor().withMaxDelay(1);
+        Queue<CompletableFuture<Void>> futures = new ConcurrentLinkedQueue<>();
+        CountDownLatch submittersStarted = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread submitter = new Thread(() -> {
+                submittersStarted.countDown();
+                try {
+                    while (true) {
+                        futures.add(groupCommitExecutor.runs(() -> {}));
+                    }
+                } catch (RejectedExecutionException e) {
+                    // expected after the executor has been closed
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+
+        assertTrue(submittersStarted.await(10, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        groupCommitExecutor.close();
+        for (Thread submitter : submitters) {
+            submitter.join(10_000);
+        }
+
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+        }
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void whenExecutorIsClosedThenUnitsAreRejected() {
+        groupCommitExecutor = new GroupCommitExecutor();
+        groupCommitExecutor.close();
+
+        groupCommitExecutor.runs(() -> execute("insert into test values (1)"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenNrThreadsIsZeroThenConfigurationFails() {
+        new GroupCommitExecutor().withNrThreads(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenMaxGroupSizeIsZeroThenConfigurationFails() {
+        new GroupCommitExecutor().withMaxGroupSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenMaxDelayIsNegativeThenConfigurationFails() {
+        new GroupCommitExecutor().withMaxDelay(-1);
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = getTransaction().getConnection("groupcommit").createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int count() {
+        return NewTransaction.returns(() -> {
+            try (Statement statement = getTransaction().getConnection("groupcommit").createStatement();
+                 ResultSet resultSet = statement.executeQuery("select count(*) from test")) {
+                resultSet.next();
+                return resultSet.getInt(1);
+            }
+        });
+    }
+
+    private CompositeDatasourceTransaction getTransaction() {
+        return (CompositeDatasourceTransaction) CurrentTransaction.get();
+    }
+}
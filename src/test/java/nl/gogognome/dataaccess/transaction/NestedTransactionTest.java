@@ -0,0 +1,165 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.dao.BaseInMemTransactionTest;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+
+import static org.junit.Assert.*;
+
+public class NestedTransactionTest extends BaseInMemTransactionTest {
+
+    @Before
+    public void createTable() throws SQLException {
+        execute("create table test (id int primary key)");
+    }
+
+    @Test
+    public void whenNestedTransactionSucceedsThenItsWorkIsPartOfCurrentTransaction() throws SQLException {
+        Connection connection = getConnection();
+        execute("insert into test values (1)");
+
+        NestedTransaction.runs(() -> {
+            assertSame(connection, getConnection());
+            execute("insert into test values (2)");
+        });
+
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void whenNestedTransactionFailsThenOnlyItsWorkIsRolledBack() throws SQLException {
+        execute("insert into test values (1)");
+
+        try {
+            NestedTransaction.runs(() -> {
+                execute("insert into test values (2)");
+                execute("insert into test values (1)");
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertTrue(e.getCause() instanceof SQLException);
+        }
+
+        assertEquals(1, count());
+        execute("insert into test values (3)");
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void whenNestedTransactionsAreNestedThenInnerFailureKeepsOuterWork() throws SQLException {
+        NestedTransaction.runs(() -> {
+            execute("insert into test values (1)");
+            try {
+                NestedTransaction.runs(() -> {
+                    execute("insert into test values (2)");
+                    throw new IllegalStateException("inner failure");
+                });
+            } catch (DataAccessException e) {
+                // expected
+            }
+        });
+
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void whenConnectionIsObtainedInFailingNestedTransactionThenItIsRolledBackCompletely() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:NestedTransactionTest_other;DB_CLOSE_DELAY=-1");
+        CompositeDatasourceTransaction.registerDataSource("other", dataSource);
+        try (Connection setupConnection = dataSource.getConnection(); Statement statement = setupConnection.createStatement()) {
+            statement.execute("create table if not exists other (id int)");
+            statement.execute("delete from other");
+        }
+
+        try {
+            NestedTransaction.runs(() -> {
+                try (Statement statement = getTransaction().getConnection("other").createStatement()) {
+                    statement.execute("insert into other values (1)");
+                }
+                throw new IllegalStateException("failure");
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            // expected
+        }
+
+        try (Statement statement = getTransaction().getConnection("other").createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from other")) {
+            resultSet.next();
+            assertEquals(0, resultSet.getInt(1));
+        }
+    }
+
+    @Test
+    public void whenDriverDoesNotSupportSavepointsThenCodeRunsInNewTransaction() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:NestedTransactionTest_noSavepoints;DB_CLOSE_DELAY=-1");
+        CompositeDatasourceTransaction.registerDataSource("other", withoutSavepoints(dataSource));
+        Connection connection = getTransaction().getConnection("other");
+
+        NestedTransaction.runs(() -> assertNotSame(connection, getTransaction().getConnection("other")));
+
+        assertSame(connection, getTransaction().getConnection("other"));
+    }
+
+    private static DataSource withoutSavepoints(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] { DataSource.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(dataSource, method, args);
+                    return result instanceof Connection ? withoutSavepoints((Connection) result) : result;
+                });
+    }
+
+    private static Connection withoutSavepoints(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("setSavepoint")) {
+                        throw new SQLFeatureNotSupportedException("Savepoints are not supported");
+                    }
+                    return invoke(connection, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private CompositeDatasourceTransaction getTransaction() {
+        return (CompositeDatasourceTransaction) CurrentTransaction.get();
+    }
+
+    private Connection getConnection() {
+        return getTransaction().getConnection("test");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement statement = getConnection().createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int count() throws SQLException {
+        try (Statement statement = getConnection().createStatement();
+             ResultSet resultSet = statement.executeQuery("select count(*) from test")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+}
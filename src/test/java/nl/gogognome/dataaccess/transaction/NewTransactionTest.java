@@ -5,10 +5,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
 import java.util.function.Supplier;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 public class NewTransactionTest {
 
@@ -94,6 +95,82 @@ public class NewTransactionTest {
         assertEquals("transaction creation;throw exception;rollback;close;", calledMethods.toString());
     }
 
+    @Test
+    public void whenDeadlockOccursThenTransactionIsRetried() {
+        RetryPolicy retryPolicy = new RetryPolicy().withMaxAttempts(3).withBackoff(1, 2);
+        int[] nrAttempts = new int[1];
+
+        String result = NewTransaction.returns(retryPolicy, () -> {
+            calledMethods.append("runs;");
+            if (++nrAttempts[0] < 3) {
+                throw new SQLTransactionRollbackException("Deadlock detected", "40001");
+            }
+            return "test";
+        });
+
+        assertEquals("test", result);
+        assertEquals("transaction creation;runs;rollback;close;transaction creation;runs;rollback;close;" +
+                "transaction creation;runs;commit;close;", calledMethods.toString());
+        assertEquals(3, retryPolicy.getNrAttempts());
+        assertEquals(2, retryPolicy.getNrRetries());
+        assertEquals(1, retryPolicy.getNrSuccessesAfterRetry());
+        assertFalse(CurrentTransaction.hasTransaction());
+    }
+
+    @Test
+    public void whenNonRetryableExceptionOccursThenTransactionIsNotRetried() {
+        RetryPolicy retryPolicy = new RetryPolicy().withBackoff(1, 2);
+
+        try {
+            NewTransaction.runs(retryPolicy, () -> {
+                calledMethods.append("runs;");
+                throw new SQLException("Syntax error", "42000");
+            });
+            fail("Expected exception was not thrown!");
+        } catch (DataAccessException e) {
+            assertEquals("transaction creation;runs;rollback;close;", calledMethods.toString());
+        }
+        assertEquals(1, retryPolicy.getNrFailures());
+        assertEquals(0, retryPolicy.getNrExhausted());
+    }
+
+    @Test
+    public void whenAllAttemptsFailThenLastExceptionIsThrownAndLeakedTransactionsAreClosed() {
+        RetryPolicy retryPolicy = new RetryPolicy().withMaxAttempts(2).withBackoff(1, 2);
+
+        try {
+            NewTransaction.runs(retryPolicy, () -> {
+                CurrentTransaction.create();
+                throw new SQLException("Serialization failure", "40001");
+            });
+            fail("Expected exception was not thrown!");
+        } catch (DataAccessException e) {
+            assertTrue(retryPolicy.isRetryable(e));
+        }
+        assertEquals(2, retryPolicy.getNrAttempts());
+        assertEquals(1, retryPolicy.getNrExhausted());
+        assertFalse(CurrentTransaction.hasTransaction());
+    }
+
+    @Test
+    public void vendorErrorCodesAreRetryable() {
+        RetryPolicy retryPolicy = new RetryPolicy();
+
+        assertTrue(retryPolicy.isRetryable(new DataAccessException(new SQLException("Deadlock found", "HY000", 1213))));
+        assertTrue(retryPolicy.isRetryable(new DataAccessException(new SQLException("Chosen as deadlock victim", "S0001", 1205))));
+        assertFalse(retryPolicy.isRetryable(new DataAccessException(new SQLException("Duplicate key", "23000", 1062))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenInitialBackoffExceedsMaximumThenConfigurationFails() {
+        new RetryPolicy().withBackoff(100, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenBackoffIsNegativeThenConfigurationFails() {
+        new RetryPolicy().withBackoff(-1, 10);
+    }
+
     class TransactionMock implements Transaction {
 
         public TransactionMock() {
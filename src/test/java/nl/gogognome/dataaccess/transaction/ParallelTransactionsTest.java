@@ -0,0 +1,90 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.DataAccessException;
+import nl.gogognome.dataaccess.pool.ConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelTransactionsTest {
+
+    private static int uniqueId = 0;
+
+    private ConnectionPool pool;
+
+    @Before
+    public void createDatabase() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ParallelTransactionsTest_" + uniqueId++ + ";DB_CLOSE_DELAY=-1");
+        pool = new ConnectionPool(dataSource).withMaxSize(10);
+        CompositeDatasourceTransaction.registerDataSource("parallel", pool);
+    }
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    @Test
+    public void resultsAreReturnedInOrderOfItems() {
+        List<Integer> items = range(50);
+
+        List<Integer> results = new ParallelTransactions().withParallelism(3).withChunkSize(5)
+                .map(items, item -> item * 2 + queryOne());
+
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(i * 2 + 1, results.get(i).intValue());
+        }
+        assertTrue(pool.getTotalConnections() <= 3);
+    }
+
+    @Test
+    public void whenItemFailsThenFirstFailureIsThrownAndRemainingItemsAreNotStarted() {
+        AtomicInteger nrProcessedItems = new AtomicInteger();
+        DataAccessException failure = new DataAccessException("item 3 failed");
+
+        try {
+            new ParallelTransactions().withParallelism(1).forEach(range(10), item -> {
+                nrProcessedItems.incrementAndGet();
+                if (item == 3) {
+                    throw failure;
+                }
+            });
+            fail("Expected exception was not thrown");
+        } catch (DataAccessException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(4, nrProcessedItems.get());
+    }
+
+    @Test
+    public void emptyCollectionResultsInEmptyList() {
+        assertTrue(new ParallelTransactions().map(new ArrayList<Integer>(), item -> item).isEmpty());
+    }
+
+    private int queryOne() throws Exception {
+        CompositeDatasourceTransaction transaction = (CompositeDatasourceTransaction) CurrentTransaction.get();
+        try (Statement statement = transaction.getConnection("parallel").createStatement();
+             ResultSet resultSet = statement.executeQuery("select 1")) {
+            resultSet.next();
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static List<Integer> range(int size) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,125 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.pool.ConnectionPool;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class ReadOnlyTransactionTest {
+
+    private static int uniqueId = 0;
+
+    private final List<Connection> connectionsToKeepDatabasesAlive = new ArrayList<>();
+    private ConnectionPool pool;
+
+    @Before
+    public void registerDataSources() throws SQLException {
+        CompositeDatasourceTransaction.registerDataSource("primary", createDatabase("primary"));
+        CompositeDatasourceTransaction.registerDataSource("replica1", createDatabase("replica1"));
+        CompositeDatasourceTransaction.registerDataSource("replica2", createDatabase("replica2"));
+    }
+
+    @After
+    public void closeDatabases() throws SQLException {
+        CompositeDatasourceTransaction.registerReplicas("primary", ReplicaSelector.roundRobin());
+        if (pool != null) {
+            pool.close();
+        }
+        for (Connection connection : connectionsToKeepDatabasesAlive) {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void readOnlyTransactionGetsReadOnlyConnection() {
+        // H2 ignores the read-only flag, but the pool keeps track of it
+        pool = new ConnectionPool(CompositeDatasourceTransaction.getDataSource("primary"));
+        CompositeDatasourceTransaction.registerDataSource("primary", pool);
+
+        boolean readOnly = NewTransaction.returnsReadOnly(() -> getConnection("primary").isReadOnly());
+
+        assertTrue(readOnly);
+        assertFalse(NewTransaction.returns(() -> getConnection("primary").isReadOnly()));
+    }
+
+    @Test
+    public void withoutReplicasReadOnlyTransactionUsesPrimary() {
+        assertEquals("primary", NewTransaction.returnsReadOnly(() -> getDatabaseName("primary")));
+    }
+
+    @Test
+    public void withReplicasReadOnlyTransactionsUseReplicasRoundRobin() {
+        CompositeDatasourceTransaction.registerReplicas("primary", ReplicaSelector.roundRobin(),
+                CompositeDatasourceTransaction.getDataSource("replica1"), CompositeDatasourceTransaction.getDataSource("replica2"));
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            names.add(NewTransaction.returnsReadOnly(() -> getDatabaseName("primary")));
+        }
+
+        assertEquals(asList("replica1", "replica2", "replica1"), names);
+        assertEquals("primary", NewTransaction.returns(() -> getDatabaseName("primary")));
+    }
+
+    @Test
+    public void leastLoadedSelectorSelectsReplicaWithFewestOpenConnections() {
+        DataSource replica1 = CompositeDatasourceTransaction.getDataSource("replica1");
+        DataSource replica2 = CompositeDatasourceTransaction.getDataSource("replica2");
+        LeastLoadedReplicaSelector selector = new LeastLoadedReplicaSelector();
+        CompositeDatasourceTransaction.registerReplicas("primary", selector, replica1, replica2);
+
+        List<String> names = NewTransaction.returnsReadOnly(() -> {
+            String outerName = getDatabaseName("primary");
+            String innerName = NewTransaction.returnsReadOnly(() -> getDatabaseName("primary"));
+            return asList(outerName, innerName);
+        });
+
+        assertEquals(asList("replica1", "replica2"), names);
+        assertEquals(0, selector.getNrConnectionsInUse(replica1));
+        assertEquals(0, selector.getNrConnectionsInUse(replica2));
+    }
+
+    @Test
+    public void requireTransactionJoinsExistingReadWriteTransaction() {
+        boolean readOnly = NewTransaction.returns(() ->
+                RequireTransaction.returnsReadOnly(() -> getConnection("primary").isReadOnly()));
+
+        assertFalse(readOnly);
+    }
+
+    private DataSource createDatabase(String name) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:ReadOnlyTransactionTest_" + name + "_" + uniqueId++);
+        Connection connection = dataSource.getConnection();
+        connectionsToKeepDatabasesAlive.add(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table name (name varchar(20))");
+            statement.execute("insert into name values ('" + name + "')");
+        }
+        return dataSource;
+    }
+
+    private Connection getConnection(String datasourceName) {
+        return ((CompositeDatasourceTransaction) CurrentTransaction.get()).getConnection(datasourceName);
+    }
+
+    private String getDatabaseName(String datasourceName) throws SQLException {
+        try (Statement statement = getConnection(datasourceName).createStatement();
+             ResultSet resultSet = statement.executeQuery("select name from name")) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package nl.gogognome.dataaccess.transaction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class TransactionPropagationTest {
+
+    private Supplier<Transaction> oldTransactionCreator;
+    private final StringBuffer calledMethods = new StringBuffer();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setup() {
+        oldTransactionCreator = CurrentTransaction.transactionCreator;
+        CurrentTransaction.transactionCreator = TransactionMock::new;
+    }
+
+    @After
+    public void teardown() {
+        CurrentTransaction.transactionCreator = oldTransactionCreator;
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void whenTaskJoinsCurrentTransactionThenItUsesTransactionOfSubmittingThread() {
+        NewTransaction.runs(() -> {
+            Transaction transaction = CurrentTransaction.get();
+            Transaction transactionOfTask = executor.submit(TransactionPropagation.joinCurrent(CurrentTransaction::get)).get();
+            assertSame(transaction, transactionOfTask);
+        });
+
+        assertEquals("transaction creation;commit;close;", calledMethods.toString());
+        assertFalse(hasTransactionInExecutorThread());
+    }
+
+    @Test
+    public void whenTaskRunsInNewTransactionThenItUsesTransactionOfItsOwn() {
+        NewTransaction.runs(() -> {
+            Transaction transaction = CurrentTransaction.get();
+            Transaction transactionOfTask = executor.submit(TransactionPropagation.inNewTransaction(CurrentTransaction::get)).get();
+            assertNotSame(transaction, transactionOfTask);
+            assertEquals(1, CurrentTransaction.getContext().getDepth());
+        });
+
+        assertEquals("transaction creation;transaction creation;commit;close;commit;close;", calledMethods.toString());
+        assertFalse(hasTransactionInExecutorThread());
+    }
+
+    @Test
+    public void whenTaskCreatesTransactionWhileJoiningThenSubmittingThreadIsNotAffected() {
+        NewTransaction.runs(() -> {
+            Transaction transaction = CurrentTransaction.get();
+            executor.submit(TransactionPropagation.joinCurrent(() -> {
+                CurrentTransaction.create();
+            })).get();
+            assertSame(transaction, CurrentTransaction.get());
+        });
+
+        assertFalse(hasTransactionInExecutorThread());
+    }
+
+    @Test
+    public void whenTaskDoesNotCloseTransactionItCreatedThenItIsRolledBackAndClosed() {
+        NewTransaction.runs(() -> {
+            executor.submit(TransactionPropagation.joinCurrent(() -> {
+                CurrentTransaction.create();
+            })).get();
+        });
+
+        assertEquals("transaction creation;transaction creation;rollback;close;commit;close;", calledMethods.toString());
+        assertFalse(hasTransactionInExecutorThread());
+    }
+
+    @Test
+    public void whenContextIsEmptyThenThreadLocalEntryIsRemoved() throws Exception {
+        ThreadLocalTransactionContextStrategy strategy = new ThreadLocalTransactionContextStrategy();
+        strategy.set(TransactionContext.EMPTY.push(new TransactionMock()));
+        assertEquals(1, strategy.get().getDepth());
+
+        strategy.set(TransactionContext.EMPTY);
+
+        assertNull(strategy.get());
+    }
+
+    private boolean hasTransactionInExecutorThread() {
+        try {
+            return executor.submit(CurrentTransaction::hasTransaction).get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    class TransactionMock implements Transaction {
+
+        public TransactionMock() {
+            calledMethods.append("transaction creation;");
+        }
+
+        @Override
+        public void commit() {
+            calledMethods.append("commit;");
+        }
+
+        @Override
+        public void rollback() {
+            calledMethods.append("rollback;");
+        }
+
+        @Override
+        public void close() {
+            calledMethods.append("close;");
+        }
+
+        @Override
+        public String getCreationDetails() {
+            return null;
+        }
+    }
+}
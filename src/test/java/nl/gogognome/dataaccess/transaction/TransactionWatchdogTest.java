@@ -0,0 +1,69 @@
+package nl.gogognome.dataaccess.transaction;
+
+import nl.gogognome.dataaccess.dao.PreparedStatementWrapper;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TransactionWatchdogTest {
+
+    private TransactionWatchdog watchdog;
+
+    @Before
+    public void registerDataSource() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:TransactionWatchdogTest");
+        CompositeDatasourceTransaction.registerDataSource("watched", dataSource);
+    }
+
+    @After
+    public void closeWatchdog() {
+        if (watchdog != null) {
+            watchdog.close();
+        }
+    }
+
+    @Test
+    public void transactionOpenLongerThanThresholdIsReportedOnce() {
+        watchdog = new TransactionWatchdog().withThreshold(0).withCheckInterval(0).withStackSamplingRate(1).start();
+
+        List<String> reports = NewTransaction.returns(() -> {
+            CompositeDatasourceTransaction transaction = (CompositeDatasourceTransaction) CurrentTransaction.get();
+            try (PreparedStatementWrapper statement = PreparedStatementWrapper.preparedStatement(
+                    transaction.getConnection("watched"), "select 1 from dual where 1 = ?", 1)) {
+                statement.executeQuery().close();
+            }
+            List<String> result = watchdog.check();
+            assertTrue(watchdog.check().isEmpty());
+            return result;
+        });
+
+        assertEquals(1, reports.size());
+        String report = reports.get(0);
+        assertTrue(report, report.contains("watched (held for"));
+        assertTrue(report, report.contains("select ? from dual where ? = ?"));
+        assertTrue(report, report.contains(getClass().getName() + ".transactionOpenLongerThanThresholdIsReportedOnce"));
+    }
+
+    @Test
+    public void closedTransactionsAreNotWatched() {
+        watchdog = new TransactionWatchdog().withThreshold(0).withCheckInterval(0).start();
+
+        NewTransaction.runs(() -> assertEquals(1, watchdog.getNrOpenTransactions()));
+
+        assertEquals(0, watchdog.getNrOpenTransactions());
+        assertTrue(watchdog.check().isEmpty());
+    }
+
+    @Test
+    public void transactionsYoungerThanThresholdAreNotReported() {
+        watchdog = new TransactionWatchdog().withThreshold(60_000).withCheckInterval(0).start();
+
+        NewTransaction.runs(() -> assertTrue(watchdog.check().isEmpty()));
+    }
+}
@@ -0,0 +1,49 @@
+package nl.gogognome.dataaccess.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void whenStatementIsNullThenFingerprintIsNull() {
+        assertNull(SqlFingerprint.of(null));
+    }
+
+    @Test
+    public void literalsShouldBeReplacedByQuestionMarks() {
+        assertEquals("select * from author where name=? and id=?", SqlFingerprint.of("select * from author where name='O''Brien' and id=12"));
+    }
+
+    @Test
+    public void digitsInIdentifiersShouldBeKept() {
+        assertEquals("select col1 from table_2", SqlFingerprint.of("select col1 from table_2"));
+    }
+
+    @Test
+    public void whiteSpaceShouldBeNormalized() {
+        assertEquals("select * from author where id=?", SqlFingerprint.of("  select *\n   from author\twhere id=?  "));
+    }
+
+    @Test
+    public void pivotClausesShouldBeCollapsed() {
+        assertEquals("select * from author where id in (?)", SqlFingerprint.of("select * from author where id in ('1','2','3')"));
+        assertEquals("select * from author where id in (?)", SqlFingerprint.of("select * from author where id in (?, ?)"));
+    }
+
+    @Test
+    public void longStatementsShouldBeTruncated() {
+        StringBuilder sb = new StringBuilder("select ");
+        for (int i = 0; i < 100; i++) {
+            sb.append("column").append(i).append(", ");
+        }
+        sb.append("x from y");
+
+        String fingerprint = SqlFingerprint.of(sb.toString());
+
+        assertEquals(203, fingerprint.length());
+        assertEquals("...", fingerprint.substring(200));
+    }
+}